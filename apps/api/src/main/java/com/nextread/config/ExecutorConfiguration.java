@@ -0,0 +1,106 @@
+package com.nextread.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pools de hilos acotados para el trabajo que se ejecuta fuera del hilo de la
+ * petición.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    /**
+     * Llamadas a Google Books lanzadas en paralelo a la consulta local. Si el
+     * pool y su cola están llenos, la llamada se rechaza y la búsqueda responde
+     * solo con los resultados locales (partial): ejecutarla en el hilo de la
+     * petición saltaría el plazo de la búsqueda.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor googleBooksExecutor(
+            @Value("${app.executors.google-books.max-threads:16}") int maxThreads) {
+        return boundedExecutor("google-books-", maxThreads, 100, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Enriquecimiento en paralelo de los candidatos devueltos por el LLM (BD
+     * local + Google Books por cada título).
+     */
+    @Bean
+    public ThreadPoolTaskExecutor enrichmentExecutor(
+            @Value("${app.executors.enrichment.max-threads:8}") int maxThreads) {
+        return boundedExecutor("enrichment-", maxThreads, 50);
+    }
+
+    /**
+     * Llamadas a OpenAI de una generación con hedging (la principal y las de
+     * respaldo). No tiene cola: una llamada de respaldo esperando en cola ya no
+     * recortaría la latencia, así que con el pool lleno se rechaza.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor openAiExecutor(
+            @Value("${app.executors.openai.max-threads:8}") int maxThreads) {
+        return boundedExecutor("openai-", maxThreads, 0, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Trabajos asíncronos de generación de recomendaciones. A diferencia de los
+     * anteriores, si la cola está llena el trabajo se rechaza (el controlador
+     * responde 503) en lugar de ejecutarse en el hilo de la petición.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor recommendationJobExecutor(
+            @Value("${app.executors.recommendation-jobs.max-threads:4}") int maxThreads,
+            @Value("${app.executors.recommendation-jobs.queue-capacity:50}") int queueCapacity) {
+        return boundedExecutor("recommendation-job-", maxThreads, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Pre-generación de recomendaciones tras cambios en la encuesta o la
+     * biblioteca. Si la cola está llena la pre-generación se descarta: el
+     * usuario genera al pedirlas.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor recommendationPrefetchExecutor(
+            @Value("${app.executors.recommendation-prefetch.max-threads:2}") int maxThreads,
+            @Value("${app.executors.recommendation-prefetch.queue-capacity:100}") int queueCapacity) {
+        return boundedExecutor("recommendation-prefetch-", maxThreads, queueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Reposiciones del inventario de recomendaciones tras servir desde él. Son
+     * best-effort: van en su propio pool para no ocupar el de los trabajos de
+     * generación y, si está lleno, la reposición se descarta sin error.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor inventoryRefillExecutor(
+            @Value("${app.executors.inventory-refill.max-threads:2}") int maxThreads,
+            @Value("${app.executors.inventory-refill.queue-capacity:20}") int queueCapacity) {
+        return boundedExecutor("inventory-refill-", maxThreads, queueCapacity,
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private ThreadPoolTaskExecutor boundedExecutor(String threadPrefix, int maxThreads, int queueCapacity) {
+        return boundedExecutor(threadPrefix, maxThreads, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private ThreadPoolTaskExecutor boundedExecutor(String threadPrefix, int maxThreads, int queueCapacity,
+            RejectedExecutionHandler rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadPrefix);
+        executor.setCorePoolSize(Math.max(1, maxThreads / 2));
+        executor.setMaxPoolSize(maxThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectionPolicy);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,107 @@
+package com.nextread.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+
+/**
+ * Clientes HTTP salientes. Cada destino (Google Books y OpenAI) tiene su propio
+ * pool de conexiones keep-alive y su propio perfil de timeouts, de forma que una
+ * respuesta lenta de uno no bloquee indefinidamente un hilo de Tomcat ni agote
+ * las conexiones del otro.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+    // Tiempo máximo que una conexión puede reutilizarse antes de renovarla
+    private static final TimeValue CONNECTION_TIME_TO_LIVE = TimeValue.ofMinutes(5);
+
+    // Conexiones ociosas más antiguas que esto se cierran en segundo plano
+    private static final TimeValue IDLE_EVICTION = TimeValue.ofSeconds(30);
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public HttpClientConfiguration(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Cliente para Google Books: búsquedas interactivas, timeouts cortos.
+     */
+    @Bean
+    CloseableHttpClient googleBooksHttpClient(
+            @Value("${app.http.google-books.connect-timeout-ms:2000}") long connectTimeoutMs,
+            @Value("${app.http.google-books.read-timeout-ms:4000}") long readTimeoutMs,
+            @Value("${app.http.google-books.pool-timeout-ms:1000}") long poolTimeoutMs,
+            @Value("${app.http.google-books.max-connections:20}") int maxConnections) {
+        return pooledClient("googleBooks", connectTimeoutMs, readTimeoutMs, poolTimeoutMs, maxConnections);
+    }
+
+    /**
+     * Cliente para OpenAI: las completions pueden tardar decenas de segundos.
+     */
+    @Bean
+    CloseableHttpClient openAiHttpClient(
+            @Value("${app.http.openai.connect-timeout-ms:3000}") long connectTimeoutMs,
+            @Value("${app.http.openai.read-timeout-ms:60000}") long readTimeoutMs,
+            @Value("${app.http.openai.pool-timeout-ms:2000}") long poolTimeoutMs,
+            @Value("${app.http.openai.max-connections:20}") int maxConnections) {
+        return pooledClient("openAi", connectTimeoutMs, readTimeoutMs, poolTimeoutMs, maxConnections);
+    }
+
+    @Bean
+    public RestTemplate googleBooksRestTemplate(@Qualifier("googleBooksHttpClient") CloseableHttpClient httpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    @Bean
+    public RestTemplate openAiRestTemplate(@Qualifier("openAiHttpClient") CloseableHttpClient httpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    private CloseableHttpClient pooledClient(String name, long connectTimeoutMs, long readTimeoutMs,
+            long poolTimeoutMs, int maxConnections) {
+
+        // Cada cliente habla con un único host, así que el límite por ruta es el
+        // límite del destino
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(CONNECTION_TIME_TO_LIVE)
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .build();
+
+        // Expone httpcomponents.httpclient.pool.* con el tag httpclient=<name>
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_EVICTION)
+                .build();
+    }
+}
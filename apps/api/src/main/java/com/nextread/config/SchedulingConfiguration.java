@@ -5,21 +5,39 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import com.nextread.services.ProvisionalCatalogService;
 import com.nextread.services.RateLimitService;
+import com.nextread.services.RecommendationInventoryService;
 
 @Configuration
 @EnableScheduling
 public class SchedulingConfiguration {
 
     private final RateLimitService rateLimitService;
+    private final ProvisionalCatalogService provisionalCatalogService;
+    private final RecommendationInventoryService recommendationInventoryService;
 
     @Autowired
-    public SchedulingConfiguration(RateLimitService rateLimitService) {
+    public SchedulingConfiguration(RateLimitService rateLimitService,
+            ProvisionalCatalogService provisionalCatalogService,
+            RecommendationInventoryService recommendationInventoryService) {
         this.rateLimitService = rateLimitService;
+        this.provisionalCatalogService = provisionalCatalogService;
+        this.recommendationInventoryService = recommendationInventoryService;
     }
 
     @Scheduled(cron = "0 0 2 * * ?") // Every day at 2 AM
     public void cleanOldRateLimitRequests() {
         rateLimitService.cleanOldRequests();
     }
-}
\ No newline at end of file
+
+    @Scheduled(cron = "0 30 2 * * ?") // Every day at 2:30 AM
+    public void cleanExpiredRecommendationInventory() {
+        recommendationInventoryService.cleanExpired();
+    }
+
+    @Scheduled(fixedDelayString = "${app.books.provisional.flush-interval-ms:10000}")
+    public void flushProvisionalBooks() {
+        provisionalCatalogService.flush();
+    }
+}
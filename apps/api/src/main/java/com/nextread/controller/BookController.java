@@ -3,28 +3,36 @@ package com.nextread.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import com.nextread.dto.BookSearchResultDTO;
 import com.nextread.entities.Book;
 import com.nextread.entities.User;
+import com.nextread.services.BookSearchStreamService;
 import com.nextread.services.BookService;
 
 @RequestMapping("/books")
 @RestController
 public class BookController {
 
+    public static final String PARTIAL_RESULTS_HEADER = "X-Partial-Results";
+
     private final BookService bookService;
+    private final BookSearchStreamService bookSearchStreamService;
 
     @Autowired
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService, BookSearchStreamService bookSearchStreamService) {
         this.bookService = bookService;
+        this.bookSearchStreamService = bookSearchStreamService;
     }
 
     // TODO: Debemos restringir este método a rol admin. Queda por ver si hay que
@@ -42,8 +50,22 @@ public class BookController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Book>> findBooksByTitle(@RequestParam String title) {
-        return ResponseEntity.ok(bookService.findBooks(title));
+    public ResponseEntity<List<Book>> findBooksByTitle(@RequestParam String title,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        BookSearchResultDTO result = bookService.searchBooks(title, page, size);
+
+        // Si Google Books no respondió a tiempo se avisa al cliente por cabecera
+        return ResponseEntity.ok()
+                .header(PARTIAL_RESULTS_HEADER, String.valueOf(result.isPartial()))
+                .body(result.getBooks());
+    }
+
+    @GetMapping(value = "/search/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBooksByTitle(@RequestParam String title,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size) {
+        return bookSearchStreamService.streamBooks(title, page, size);
     }
 
     @GetMapping("/search/survey")
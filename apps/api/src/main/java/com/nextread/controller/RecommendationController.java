@@ -2,24 +2,36 @@ package com.nextread.controller;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.dto.RecommendationJobDTO;
 import com.nextread.dto.RecommendationRequestDTO;
+import com.nextread.dto.TokenUsageDTO;
 import com.nextread.entities.Recommendation;
 import com.nextread.entities.User;
+import com.nextread.services.RecommendationJobService;
 import com.nextread.services.RecommendationService;
+import com.nextread.services.RecommendationStreamService;
 import com.nextread.services.RateLimitService;
 
 import jakarta.validation.Valid;
@@ -30,34 +42,45 @@ public class RecommendationController {
 
     private final RecommendationService recommendationService;
     private final RateLimitService rateLimitService;
+    private final RecommendationJobService recommendationJobService;
+    private final RecommendationStreamService recommendationStreamService;
+
+    // Usuarios que pueden consultar el consumo de todos (aún no hay roles)
+    @Value("${app.admin.emails:}")
+    private Set<String> adminEmails = Set.of();
 
     @Autowired
     public RecommendationController(RecommendationService recommendationService,
-                                   RateLimitService rateLimitService) {
+                                   RateLimitService rateLimitService,
+                                   RecommendationJobService recommendationJobService,
+                                   RecommendationStreamService recommendationStreamService) {
         this.recommendationService = recommendationService;
         this.rateLimitService = rateLimitService;
+        this.recommendationJobService = recommendationJobService;
+        this.recommendationStreamService = recommendationStreamService;
     }
 
     /**
      * Genera recomendaciones usando ChatGPT basadas en la encuesta del usuario.
+     * Con async=true no espera al LLM: encola un trabajo y responde 202 con su
+     * ID, que se consulta en GET /recommendations/jobs/{jobId}.
      * 
-     * @return Lista de recomendaciones generadas (no guardadas)
+     * @param async Si es true, la generación se ejecuta en segundo plano
+     * @return Lista de recomendaciones generadas (no guardadas) o el trabajo
+     *         encolado
      */
     @PostMapping("/generate")
-    public ResponseEntity<?> generateRecommendations() {
+    public ResponseEntity<?> generateRecommendations(@RequestParam(defaultValue = "false") boolean async) {
         try {
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             User currentUser = (User) authentication.getPrincipal();
 
             if (!rateLimitService.canMakeRequest(currentUser)) {
-                int remainingRequests = rateLimitService.getRemainingRequests(currentUser);
-                return ResponseEntity.status(429)
-                        .body(Map.of(
-                                "error", "Límite de recomendaciones diarias alcanzado",
-                                "message", "Has alcanzado el límite de recomendaciones para hoy. Inténtalo mañana.",
-                                "remainingRequests", remainingRequests,
-                                "resetTime", "24 horas"
-                        ));
+                return rateLimitExceeded(currentUser);
+            }
+
+            if (async) {
+                return submitRecommendationJob(currentUser);
             }
 
             rateLimitService.recordRequest(currentUser);
@@ -67,11 +90,92 @@ public class RecommendationController {
 
             return ResponseEntity.ok(recommendations);
 
+        } catch (RejectedExecutionException e) {
+            // Demasiadas llamadas a OpenAI en curso
+            return serviceSaturated();
         } catch (Exception e) {
             throw e;
         }
     }
 
+    /**
+     * Genera recomendaciones enviando cada una por Server-Sent Events en cuanto
+     * está enriquecida, sin esperar a que el LLM termine la respuesta completa.
+     * 
+     * Los rechazos (429 por límite diario, 503 por saturación) se devuelven con
+     * el mismo cuerpo JSON que en POST /recommendations/generate.
+     * 
+     * @return Emisor SSE con eventos recommendation, complete y error
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRecommendations() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        if (!rateLimitService.canMakeRequest(currentUser)) {
+            throw new StreamRejectedException(rateLimitExceeded(currentUser));
+        }
+
+        SseEmitter emitter;
+        try {
+            emitter = recommendationStreamService.streamRecommendations(currentUser);
+        } catch (RejectedExecutionException e) {
+            throw new StreamRejectedException(ResponseEntity.status(503)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(serviceSaturated().getBody()));
+        }
+
+        rateLimitService.recordRequest(currentUser);
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Responde los rechazos de /generate/stream. El endpoint declara SseEmitter
+     * como cuerpo para que Spring lo trate como flujo, así que los rechazos con
+     * cuerpo JSON se lanzan y se responden aquí.
+     */
+    @ExceptionHandler(StreamRejectedException.class)
+    public ResponseEntity<?> handleStreamRejected(StreamRejectedException e) {
+        return e.response;
+    }
+
+    /**
+     * Consulta el estado de un trabajo de generación asíncrona.
+     * 
+     * @param jobId ID del trabajo devuelto por POST /recommendations/generate
+     * @return El trabajo, o 404 si no existe, caducó o es de otro usuario
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<RecommendationJobDTO> getRecommendationJob(@PathVariable String jobId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        return recommendationJobService.findJob(jobId, currentUser)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Usuarios que más tokens de OpenAI han consumido. Solo para administradores.
+     * 
+     * @param days  Días a considerar, incluido hoy
+     * @param limit Número máximo de usuarios
+     * @return Consumo por usuario de mayor a menor, o 403 si no es administrador
+     */
+    @GetMapping("/usage/top")
+    public ResponseEntity<List<TokenUsageDTO>> getTopConsumers(@RequestParam(defaultValue = "1") int days,
+            @RequestParam(defaultValue = "10") int limit) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = (User) authentication.getPrincipal();
+
+        if (!adminEmails.contains(currentUser.getEmail())) {
+            return ResponseEntity.status(403).build();
+        }
+
+        return ResponseEntity.ok(rateLimitService.getTopConsumers(days, Math.min(limit, 100)));
+    }
+
     /**
      * Obtiene todas las recomendaciones del usuario autenticado.
      * 
@@ -118,4 +222,47 @@ public class RecommendationController {
         recommendationService.deleteRecommendation(id, currentUser);
         return ResponseEntity.ok("Recomendación eliminada correctamente");
     }
+
+    private ResponseEntity<?> submitRecommendationJob(User currentUser) {
+        RecommendationJobDTO job;
+        try {
+            job = recommendationJobService.submit(currentUser);
+        } catch (RejectedExecutionException e) {
+            return serviceSaturated();
+        }
+
+        // Solo cuenta para el límite diario si el trabajo se ha encolado
+        rateLimitService.recordRequest(currentUser);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    private ResponseEntity<?> rateLimitExceeded(User currentUser) {
+        int remainingRequests = rateLimitService.getRemainingRequests(currentUser);
+        // Tipo explícito: el endpoint en streaming declara produces text/event-stream
+        return ResponseEntity.status(429)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of(
+                        "error", "Límite de recomendaciones diarias alcanzado",
+                        "message", "Has alcanzado el límite de recomendaciones para hoy. Inténtalo mañana.",
+                        "remainingRequests", remainingRequests,
+                        "resetTime", "24 horas"
+                ));
+    }
+
+    private ResponseEntity<?> serviceSaturated() {
+        return ResponseEntity.status(503)
+                .body(Map.of(
+                        "error", "Servicio de recomendaciones saturado",
+                        "message", "Hay demasiadas recomendaciones en curso. Inténtalo en unos minutos."
+                ));
+    }
+
+    static final class StreamRejectedException extends RuntimeException {
+
+        private final transient ResponseEntity<?> response;
+
+        StreamRejectedException(ResponseEntity<?> response) {
+            this.response = response;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.nextread.dto;
+
+import java.util.List;
+
+import com.nextread.entities.Book;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookSearchResultDTO {
+
+    private List<Book> books;
+
+    // Indica que Google Books no respondió a tiempo y solo se incluye lo recibido
+    private boolean partial;
+}
@@ -0,0 +1,43 @@
+package com.nextread.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class RecommendationJobDTO {
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String jobId;
+    private Status status;
+
+    // Solo cuando status = COMPLETED
+    private List<GeneratedRecommendationDTO> recommendations;
+
+    // Solo cuando status = FAILED
+    private String error;
+
+    private Instant createdAt;
+    private Instant completedAt;
+
+    // Propietario del trabajo, para que solo él pueda consultarlo
+    @JsonIgnore
+    private Long userId;
+}
@@ -0,0 +1,30 @@
+package com.nextread.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Consumo de OpenAI acumulado de un usuario en un periodo.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TokenUsageDTO {
+    private Long userId;
+    private String email;
+    private Long requests;
+    private Long llmCalls;
+    private Long promptTokens;
+    private Long cachedTokens;
+    private Long completionTokens;
+    private Long llmLatencyMs;
+
+    public long getTotalTokens() {
+        return promptTokens + completionTokens;
+    }
+}
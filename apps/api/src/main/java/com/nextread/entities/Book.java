@@ -7,6 +7,8 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.validator.constraints.URL;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -71,6 +73,13 @@ public class Book {
     @Column(nullable = false, length = 10)
     private String publishedYear;
 
+    // Guardado automáticamente desde Google Books y aún no añadido por ningún
+    // usuario. No se expone ni se acepta en la API
+    @JsonIgnore
+    @Builder.Default
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean provisional = false;
+
     @CreationTimestamp
     private Instant createdAt;
 
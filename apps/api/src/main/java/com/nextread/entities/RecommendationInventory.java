@@ -0,0 +1,60 @@
+package com.nextread.entities;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Recomendación ya enriquecida que sobró en una generación y se guarda para
+ * servir la siguiente sin llamar a OpenAI ni a Google Books. Solo es válida
+ * mientras no cambien la encuesta ni la biblioteca del usuario (fingerprint).
+ */
+@Entity
+@Table(name = "recommendation_inventory",
+       indexes = @Index(name = "idx_recommendation_inventory_user_fingerprint", columnList = "user_id, fingerprint"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RecommendationInventory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    // Huella de encuesta y biblioteca con la que se generó
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    // Título normalizado, para descartarla si el libro se rechaza o se añade
+    @Column(name = "title_key", nullable = false)
+    private String titleKey;
+
+    // GeneratedRecommendationDTO serializado en JSON
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @CreationTimestamp
+    private Instant createdAt;
+}
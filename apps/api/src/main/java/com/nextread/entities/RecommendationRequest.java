@@ -2,6 +2,8 @@ package com.nextread.entities;
 
 import java.time.LocalDate;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -45,4 +47,36 @@ public class RecommendationRequest {
     @Column(name = "max_requests_per_day", nullable = false)
     @Builder.Default
     private Integer maxRequestsPerDay = 3;
+
+    // Consumo de OpenAI del día, según el bloque usage de cada respuesta
+    @Column(name = "llm_calls", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Integer llmCalls = 0;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Long promptTokens = 0L;
+
+    // Parte de prompt_tokens servida desde la caché de prefijos de OpenAI
+    @Column(name = "cached_tokens", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Long cachedTokens = 0L;
+
+    @Column(name = "completion_tokens", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Long completionTokens = 0L;
+
+    // Suma de la duración de las llamadas a OpenAI
+    @Column(name = "llm_latency_ms", nullable = false)
+    @ColumnDefault("0")
+    @Builder.Default
+    private Long llmLatencyMs = 0L;
+
+    public long getTotalTokens() {
+        return promptTokens + completionTokens;
+    }
 }
\ No newline at end of file
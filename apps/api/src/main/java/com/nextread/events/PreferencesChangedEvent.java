@@ -0,0 +1,17 @@
+package com.nextread.events;
+
+import com.nextread.entities.User;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Se publica cuando cambia algo que forma parte de la huella de preferencias
+ * del usuario (encuesta o biblioteca), para pre-generar sus recomendaciones.
+ */
+@Getter
+@AllArgsConstructor
+public class PreferencesChangedEvent {
+
+    private final User user;
+}
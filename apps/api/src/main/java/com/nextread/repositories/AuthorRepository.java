@@ -1,5 +1,7 @@
 package com.nextread.repositories;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.repository.CrudRepository;
@@ -11,4 +13,6 @@ import com.nextread.entities.Author;
 public interface AuthorRepository extends CrudRepository<Author, Long> {
 
     Optional<Author> findByName(String name);
+
+    List<Author> findByNameIn(Collection<String> names);
 }
\ No newline at end of file
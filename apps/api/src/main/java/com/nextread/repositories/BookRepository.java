@@ -1,9 +1,14 @@
 package com.nextread.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nextread.entities.Book;
@@ -14,4 +19,15 @@ public interface BookRepository extends CrudRepository<Book, Long> {
     Optional<Book> findByIsbn13(String isbn13);
 
     List<Book> findByTitleIgnoreCase(String title);
+
+    List<Book> findByTitleIgnoreCase(String title, Pageable pageable);
+
+    List<Book> findByIsbn13In(Collection<String> isbn13s);
+
+    List<Book> findByIsbn10In(Collection<String> isbn10s);
+
+    // Un usuario ha añadido el libro: deja de ser una entrada provisional del catálogo
+    @Modifying
+    @Query("UPDATE Book b SET b.provisional = false WHERE b.id = :id AND b.provisional = true")
+    int confirmProvisional(@Param("id") Long id);
 }
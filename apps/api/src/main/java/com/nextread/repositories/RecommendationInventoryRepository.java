@@ -0,0 +1,51 @@
+package com.nextread.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.nextread.entities.RecommendationInventory;
+import com.nextread.entities.User;
+
+/**
+ * Repositorio para la entidad RecommendationInventory
+ */
+@Repository
+public interface RecommendationInventoryRepository extends JpaRepository<RecommendationInventory, Long> {
+
+    /**
+     * Busca el inventario de un usuario para una huella, del más antiguo al más
+     * reciente
+     * 
+     * @param user        El usuario
+     * @param fingerprint Huella de encuesta y biblioteca
+     * @return Las recomendaciones guardadas
+     */
+    List<RecommendationInventory> findByUserAndFingerprintOrderByIdAsc(User user, String fingerprint);
+
+    /**
+     * Cuenta las recomendaciones guardadas de un usuario para una huella
+     * 
+     * @param user        El usuario
+     * @param fingerprint Huella de encuesta y biblioteca
+     * @return Número de recomendaciones guardadas
+     */
+    long countByUserAndFingerprint(User user, String fingerprint);
+
+    /**
+     * Elimina el inventario de un usuario generado con otras preferencias
+     * 
+     * @param user        El usuario
+     * @param fingerprint Huella actual, cuyo inventario se conserva
+     */
+    void deleteByUserAndFingerprintNot(User user, String fingerprint);
+
+    /**
+     * Elimina las recomendaciones guardadas antes de una fecha
+     * 
+     * @param createdAt Fecha límite
+     */
+    void deleteByCreatedAtBefore(Instant createdAt);
+}
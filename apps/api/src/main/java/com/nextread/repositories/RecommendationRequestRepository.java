@@ -1,11 +1,17 @@
 package com.nextread.repositories;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.nextread.dto.TokenUsageDTO;
 import com.nextread.entities.RecommendationRequest;
 import com.nextread.entities.User;
 
@@ -15,4 +21,34 @@ public interface RecommendationRequestRepository extends JpaRepository<Recommend
     Optional<RecommendationRequest> findByUserAndRequestDate(User user, LocalDate requestDate);
     
     void deleteByRequestDateBefore(LocalDate date);
-}
\ No newline at end of file
+
+    // Suma una llamada a OpenAI al registro del día en una sola sentencia, creándolo
+    // si no existe, para que las llamadas concurrentes del mismo usuario no se pisen
+    @Modifying
+    @Query(value = """
+            INSERT INTO recommendation_requests (user_id, request_date, request_count, max_requests_per_day,
+                    llm_calls, prompt_tokens, cached_tokens, completion_tokens, llm_latency_ms)
+            VALUES (:userId, :requestDate, 0, :maxRequestsPerDay, 1, :promptTokens, :cachedTokens,
+                    :completionTokens, :latencyMs)
+            ON CONFLICT (user_id, request_date) DO UPDATE SET
+                llm_calls = recommendation_requests.llm_calls + 1,
+                prompt_tokens = recommendation_requests.prompt_tokens + EXCLUDED.prompt_tokens,
+                cached_tokens = recommendation_requests.cached_tokens + EXCLUDED.cached_tokens,
+                completion_tokens = recommendation_requests.completion_tokens + EXCLUDED.completion_tokens,
+                llm_latency_ms = recommendation_requests.llm_latency_ms + EXCLUDED.llm_latency_ms
+            """, nativeQuery = true)
+    int addUsage(@Param("userId") Long userId, @Param("requestDate") LocalDate requestDate,
+            @Param("maxRequestsPerDay") int maxRequestsPerDay, @Param("promptTokens") long promptTokens,
+            @Param("cachedTokens") long cachedTokens, @Param("completionTokens") long completionTokens,
+            @Param("latencyMs") long latencyMs);
+
+    @Query("""
+            SELECT new com.nextread.dto.TokenUsageDTO(r.user.id, r.user.email, SUM(r.requestCount), SUM(r.llmCalls),
+                    SUM(r.promptTokens), SUM(r.cachedTokens), SUM(r.completionTokens), SUM(r.llmLatencyMs))
+            FROM RecommendationRequest r
+            WHERE r.requestDate >= :since
+            GROUP BY r.user.id, r.user.email
+            ORDER BY SUM(r.promptTokens + r.completionTokens) DESC
+            """)
+    List<TokenUsageDTO> findTopConsumers(@Param("since") LocalDate since, Pageable pageable);
+}
@@ -2,7 +2,9 @@ package com.nextread.repositories;
 
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nextread.entities.Survey;
@@ -12,4 +14,8 @@ import com.nextread.entities.User;
 public interface SurveyRepository extends CrudRepository<Survey, Long> {
 
     Optional<Survey> findByUser(User user);
+
+    // Encuesta con sus géneros ya cargados, para usarla fuera de la sesión
+    @Query("SELECT s FROM Survey s LEFT JOIN FETCH s.selectedGenres WHERE s.user = :user")
+    Optional<Survey> findWithGenresByUser(@Param("user") User user);
 }
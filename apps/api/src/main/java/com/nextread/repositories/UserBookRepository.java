@@ -3,7 +3,9 @@ package com.nextread.repositories;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nextread.entities.User;
@@ -14,5 +16,9 @@ public interface UserBookRepository extends CrudRepository<UserBook, Long> {
 
     List<UserBook> findByUser(User user);
 
+    // Biblioteca con los libros ya cargados, para usarla fuera de la sesión
+    @Query("SELECT ub FROM UserBook ub LEFT JOIN FETCH ub.book WHERE ub.user = :user")
+    List<UserBook> findWithBookByUser(@Param("user") User user);
+
     Optional<UserBook> findByIdAndUser(Long id, User user);
 }
\ No newline at end of file
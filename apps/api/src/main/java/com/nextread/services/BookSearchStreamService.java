@@ -0,0 +1,185 @@
+package com.nextread.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.nextread.entities.Book;
+import com.nextread.utils.indexes.BookResultIndex;
+
+/**
+ * Variante en streaming (Server-Sent Events) de la búsqueda de libros. Envía
+ * los resultados locales en cuanto responde la BD y los de Google Books según
+ * se van parseando, sin esperar a tener la respuesta completa.
+ *
+ * Eventos emitidos:
+ * - local: lista de libros de la BD local (siempre el primero)
+ * - google: un libro de Google Books no duplicado
+ * - complete: fin de la búsqueda, con partial=true si Google Books falló
+ *
+ * Al terminar, los libros de Google no duplicados se encolan como provisionales
+ * igual que en la búsqueda sin streaming.
+ */
+@Service
+public class BookSearchStreamService {
+
+    private final BookService bookService;
+    private final GoogleBooksService googleBooksService;
+    private final Executor googleBooksExecutor;
+
+    @Value("${app.books.search.stream-timeout-ms:30000}")
+    private long streamTimeoutMs;
+
+    @Autowired
+    public BookSearchStreamService(BookService bookService, GoogleBooksService googleBooksService,
+            @Qualifier("googleBooksExecutor") Executor googleBooksExecutor) {
+        this.bookService = bookService;
+        this.googleBooksService = googleBooksService;
+        this.googleBooksExecutor = googleBooksExecutor;
+    }
+
+    /**
+     * Lanza la búsqueda de una página de libros por título y devuelve el emisor
+     * SSE por el que se irán enviando los resultados.
+     *
+     * @param title El título a buscar
+     * @param page  Número de página, empezando en 0
+     * @param size  Tamaño de página, se ajusta a [1, 40]
+     * @return El emisor SSE de la búsqueda
+     */
+    public SseEmitter streamBooks(String title, int page, int size) {
+        int pageNumber = BookService.clampPage(page);
+        int pageSize = BookService.clampPageSize(size);
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        SearchStream stream = new SearchStream(emitter, bookService::enqueueProvisional);
+        emitter.onTimeout(stream::close);
+        emitter.onError(error -> stream.close());
+
+        // Google Books en paralelo; sus libros se retienen hasta enviar los locales
+        try {
+            CompletableFuture
+                    .runAsync(() -> googleBooksService.searchByTitle(title, pageNumber * pageSize, pageSize,
+                            stream::onGoogleBook), googleBooksExecutor)
+                    .whenComplete((result, error) -> stream.onGoogleDone(error != null));
+        } catch (RejectedExecutionException e) {
+            // Pool de Google Books saturado: solo resultados locales, marcados como parciales
+            stream.onGoogleDone(true);
+        }
+
+        try {
+            stream.onLocalBooks(bookService.findLocalBooks(title, pageNumber, pageSize));
+        } catch (RuntimeException e) {
+            stream.fail(e);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Estado de una búsqueda en curso. Los métodos están sincronizados porque
+     * los libros locales y los de Google llegan desde hilos distintos y
+     * SseEmitter no admite envíos concurrentes.
+     */
+    private static final class SearchStream {
+
+        private final SseEmitter emitter;
+        private final Consumer<List<Book>> onGoogleBooksFound;
+        private final BookResultIndex index = new BookResultIndex();
+        private final List<Book> pendingGoogleBooks = new ArrayList<>();
+        private final List<Book> foundGoogleBooks = new ArrayList<>();
+
+        private boolean localSent;
+        private boolean googleDone;
+        private boolean googleFailed;
+        private boolean finished;
+        private boolean closed;
+
+        SearchStream(SseEmitter emitter, Consumer<List<Book>> onGoogleBooksFound) {
+            this.emitter = emitter;
+            this.onGoogleBooksFound = onGoogleBooksFound;
+        }
+
+        synchronized void onLocalBooks(List<Book> books) {
+            books.forEach(index::index);
+            send("local", books);
+            localSent = true;
+
+            pendingGoogleBooks.forEach(this::sendGoogleBook);
+            pendingGoogleBooks.clear();
+            completeIfDone();
+        }
+
+        synchronized void onGoogleBook(Book book) {
+            if (localSent) {
+                sendGoogleBook(book);
+            } else {
+                pendingGoogleBooks.add(book);
+            }
+        }
+
+        synchronized void onGoogleDone(boolean failed) {
+            googleDone = true;
+            googleFailed = failed;
+            completeIfDone();
+        }
+
+        synchronized void fail(Exception e) {
+            if (!closed) {
+                closed = true;
+                emitter.completeWithError(e);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        private void sendGoogleBook(Book book) {
+            if (index.addIfAbsent(book)) {
+                foundGoogleBooks.add(book);
+                send("google", book);
+            }
+        }
+
+        private void completeIfDone() {
+            if (!localSent || !googleDone || finished) {
+                return;
+            }
+            finished = true;
+
+            // Aunque el cliente se haya desconectado, los libros ya parseados se guardan
+            onGoogleBooksFound.accept(List.copyOf(foundGoogleBooks));
+
+            if (!closed) {
+                send("complete", Map.of("partial", googleFailed));
+                closed = true;
+                emitter.complete();
+            }
+        }
+
+        private void send(String event, Object data) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                // El cliente se ha desconectado: se descarta el resto de eventos
+                closed = true;
+            }
+        }
+    }
+}
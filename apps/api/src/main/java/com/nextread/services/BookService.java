@@ -1,23 +1,40 @@
 package com.nextread.services;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.nextread.entities.Author;
 import com.nextread.entities.Book;
 import com.nextread.entities.Survey;
 import com.nextread.entities.User;
 import com.nextread.repositories.AuthorRepository;
 import com.nextread.repositories.BookRepository;
+import com.nextread.utils.indexes.BookResultIndex;
 
 import org.springframework.transaction.annotation.Transactional;
+import com.nextread.dto.BookSearchResultDTO;
 import com.nextread.dto.GeneratedRecommendationDTO;
 
 @Service
@@ -25,16 +42,27 @@ public class BookService {
 
     private final BookRepository bookRepository;
     private final AuthorRepository authorRepository;
-    private final RestTemplate restTemplate;
+    private final GoogleBooksService googleBooksService;
     private final SurveyService surveyService;
+    private final Executor googleBooksExecutor;
+    private final ProvisionalCatalogService provisionalCatalogService;
+
+    // Tiempo máximo que una búsqueda espera a Google Books antes de responder
+    // solo con lo recibido hasta entonces
+    @Value("${app.books.search.google-deadline-ms:1500}")
+    private long googleDeadlineMs;
 
     @Autowired
-    public BookService(BookRepository bookRepository, AuthorRepository authorRepository, RestTemplate restTemplate,
-            SurveyService surveyService) {
+    public BookService(BookRepository bookRepository, AuthorRepository authorRepository,
+            GoogleBooksService googleBooksService, SurveyService surveyService,
+            @Qualifier("googleBooksExecutor") Executor googleBooksExecutor,
+            ProvisionalCatalogService provisionalCatalogService) {
         this.bookRepository = bookRepository;
         this.authorRepository = authorRepository;
-        this.restTemplate = restTemplate;
+        this.googleBooksService = googleBooksService;
         this.surveyService = surveyService;
+        this.googleBooksExecutor = googleBooksExecutor;
+        this.provisionalCatalogService = provisionalCatalogService;
     }
 
     /**
@@ -89,127 +117,169 @@ public class BookService {
     }
 
     /**
-     * Busca libros por título usando estrategia híbrida:
-     * 1. Busca en BD local (libros ya conocidos/utilizados)
-     * 2. Busca en Google Books (nuevas ediciones/libros)
-     * 3. Combina y deduplica por ISBN13
-     * 4. Prioriza resultados locales al inicio
+     * Busca libros por título usando estrategia híbrida. Ver
+     * {@link #searchBooks(String)}.
      */
     @Transactional(readOnly = true)
     public List<Book> findBooks(String title) throws RuntimeException {
-        List<Book> results = new ArrayList<>();
+        return searchBooks(title).getBooks();
+    }
 
-        // 1. Buscar en BD local primero
-        List<Book> localMatches = bookRepository.findByTitleIgnoreCase(title);
+    /**
+     * Busca libros por título con todos los resultados locales y la primera
+     * página de Google Books. Ver {@link #searchBooks(String, int, int)}.
+     *
+     * @param title El título a buscar
+     * @return Resultado de la búsqueda con el indicador de resultado parcial
+     */
+    @Transactional(readOnly = true)
+    public BookSearchResultDTO searchBooks(String title) throws RuntimeException {
+        return searchBooks(title, () -> bookRepository.findByTitleIgnoreCase(title),
+                0, GoogleBooksService.DEFAULT_MAX_RESULTS);
+    }
 
-        // Añadir libros locales (tienen prioridad)
-        results.addAll(localMatches);
+    /**
+     * Busca una página de libros por título usando estrategia híbrida:
+     * 1. Lanza la búsqueda en Google Books en segundo plano
+     * 2. Mientras tanto busca en BD local (libros ya conocidos/utilizados,
+     * incluidos los provisionales)
+     * 3. Espera a Google Books como mucho hasta el plazo configurado
+     * 4. Combina y deduplica por ISBN13, priorizando resultados locales
+     *
+     * La página se aplica por separado a la BD local y a Google Books
+     * (startIndex/maxResults), por lo que tras deduplicar una página puede tener
+     * menos de size resultados de cada origen.
+     *
+     * Si Google Books no responde a tiempo se devuelven los resultados locales
+     * más los libros de Google ya recibidos, marcando el resultado como parcial.
+     *
+     * @param title El título a buscar
+     * @param page  Número de página, empezando en 0
+     * @param size  Tamaño de página, se ajusta a [1, 40]
+     * @return Resultado de la búsqueda con el indicador de resultado parcial
+     */
+    @Transactional(readOnly = true)
+    public BookSearchResultDTO searchBooks(String title, int page, int size) throws RuntimeException {
+        int pageNumber = clampPage(page);
+        int pageSize = clampPageSize(size);
+        return searchBooks(title, () -> findLocalBooks(title, pageNumber, pageSize),
+                pageNumber * pageSize, pageSize);
+    }
 
-        // 2. Buscar en Google Books para encontrar más ediciones
-        try {
-            List<Book> googleBooks = findGoogleBooks(title);
+    /**
+     * Recupera una página de libros locales por título con sus autores ya
+     * cargados, para poder serializarlos fuera de la transacción.
+     *
+     * @param title El título a buscar
+     * @param page  Número de página, empezando en 0
+     * @param size  Tamaño de página, se ajusta a [1, 40]
+     * @return Los libros de la página ordenados por ID
+     */
+    @Transactional(readOnly = true)
+    public List<Book> findLocalBooks(String title, int page, int size) {
+        List<Book> books = bookRepository.findByTitleIgnoreCase(title,
+                PageRequest.of(clampPage(page), clampPageSize(size), Sort.by("id")));
+        books.forEach(book -> Hibernate.initialize(book.getAuthors()));
+        return books;
+    }
 
-            // 3. Añadir libros de Google Books que no estén duplicados
-            Set<String> existingISBNs = results.stream()
-                    .map(Book::getIsbn13)
-                    .filter(isbn -> isbn != null && !isbn.trim().isEmpty())
-                    .collect(Collectors.toSet());
+    static int clampPage(int page) {
+        return Math.max(page, 0);
+    }
 
-            for (Book googleBook : googleBooks) {
-                boolean isDuplicate = false;
+    static int clampPageSize(int size) {
+        return Math.min(Math.max(size, 1), GoogleBooksService.MAX_PAGE_SIZE);
+    }
 
-                // Verificar por ISBN13
-                if (googleBook.getIsbn13() != null && !googleBook.getIsbn13().trim().isEmpty()) {
-                    if (existingISBNs.contains(googleBook.getIsbn13())) {
-                        isDuplicate = true;
-                    }
-                }
+    private BookSearchResultDTO searchBooks(String title, Supplier<List<Book>> localQuery, int googleStartIndex,
+            int googlePageSize) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(googleDeadlineMs);
 
-                // Si no es duplicado, verificar por título+autor (para libros sin ISBN)
-                if (!isDuplicate && (googleBook.getIsbn13() == null || googleBook.getIsbn13().trim().isEmpty())) {
-                    String googleFirstAuthor = googleBook.getAuthors() != null && !googleBook.getAuthors().isEmpty()
-                            ? googleBook.getAuthors().get(0).getName().toLowerCase().trim()
-                            : "";
-
-                    for (Book existing : results) {
-                        String existingFirstAuthor = existing.getAuthors() != null && !existing.getAuthors().isEmpty()
-                                ? existing.getAuthors().get(0).getName().toLowerCase().trim()
-                                : "";
-
-                        if (!googleFirstAuthor.isEmpty() &&
-                                googleFirstAuthor.equals(existingFirstAuthor) &&
-                                googleBook.getTitle().toLowerCase().trim()
-                                        .equals(existing.getTitle().toLowerCase().trim())) {
-                            isDuplicate = true;
-                            break;
-                        }
-                    }
-                }
+        // 1. Google Books en paralelo; los libros se van acumulando según se parsean
+        Queue<Book> arrivedGoogleBooks = new ConcurrentLinkedQueue<>();
+        CompletableFuture<List<Book>> googleSearch;
+        try {
+            googleSearch = CompletableFuture.supplyAsync(
+                    () -> googleBooksService.searchByTitle(title, googleStartIndex, googlePageSize,
+                            arrivedGoogleBooks::add),
+                    googleBooksExecutor);
+        } catch (RejectedExecutionException e) {
+            // Pool de Google Books saturado: se responde solo con los resultados locales
+            googleSearch = null;
+        }
 
-                if (!isDuplicate) {
-                    results.add(googleBook);
-                    if (googleBook.getIsbn13() != null && !googleBook.getIsbn13().trim().isEmpty()) {
-                        existingISBNs.add(googleBook.getIsbn13());
-                    }
-                }
-            }
+        // 2. Buscar en BD local
+        List<Book> localMatches = localQuery.get();
 
-        } catch (Exception e) {
-            // Continuar con solo resultados locales si Google Books falla
+        // 3. Esperar a Google Books el tiempo que quede hasta el plazo
+        List<Book> googleBooks;
+        boolean partial = false;
+        if (googleSearch == null) {
+            googleBooks = List.of();
+            partial = true;
+        } else {
+            try {
+                googleBooks = googleSearch.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // No se cancela: al terminar deja el resultado en la caché de Google Books
+                googleBooks = new ArrayList<>(arrivedGoogleBooks);
+                partial = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                googleBooks = new ArrayList<>(arrivedGoogleBooks);
+                partial = true;
+            } catch (ExecutionException e) {
+                // Continuar con solo resultados locales si Google Books falla o su
+                // circuit breaker está abierto (en ese caso falla sin salir a la red)
+                googleBooks = List.of();
+            }
         }
 
-        return results;
+        List<Book> results = mergeResults(localMatches, googleBooks);
+
+        enqueueProvisional(results);
+
+        return BookSearchResultDTO.builder()
+                .books(results)
+                .partial(partial)
+                .build();
     }
 
     /**
-     * Consulta la API de Google Books para obtener libros según título al hacer una
-     * búsqueda por título
-     * 
-     * @param title El título del libro
-     * @return BookDTO con los datos del libro obtenidos de Google Books
-     * @throws RuntimeException si no se encuentran resultados
+     * Encola como provisionales los libros de Google Books nuevos y completos de
+     * una búsqueda, para servirlos desde la BD en próximas búsquedas. Los libros
+     * ya persistidos o con datos incompletos se ignoran.
+     *
+     * @param books Resultados de una búsqueda
      */
-    private List<Book> findGoogleBooks(String title) {
+    public void enqueueProvisional(List<Book> books) {
+        provisionalCatalogService.enqueue(books.stream()
+                .filter(book -> book.getId() == null && hasCompleteBookData(book))
+                .toList());
+    }
 
-        String url = "https://www.googleapis.com/books/v1/volumes?q=intitle:" + title.replace(" ", "+");
-        JsonNode root = restTemplate.getForObject(url, JsonNode.class);
-        if (root == null || root.path("items").isEmpty()) {
-            throw new RuntimeException("No se encontraron libros con título: " + title);
-        }
+    /**
+     * Combina los resultados locales con los de Google Books descartando
+     * duplicados por ISBN13 o, si no hay ISBN13, por título + primer autor.
+     * Los resultados locales van primero.
+     *
+     * Ambos criterios se resuelven con índices hash construidos una sola vez, de
+     * forma que cada libro de Google se comprueba en tiempo constante.
+     */
+    private List<Book> mergeResults(List<Book> localMatches, List<Book> googleBooks) {
+        // Añadir libros locales (tienen prioridad)
+        List<Book> results = new ArrayList<>(localMatches);
 
-        List<Book> results = new ArrayList<>();
-        for (JsonNode item : root.path("items")) {
-            JsonNode info = item.path("volumeInfo");
-            JsonNode identifiers = info.path("industryIdentifiers");
-            JsonNode imageLinks = info.path("imageLinks");
-
-            String isbn10 = null, isbn13 = null;
-            for (JsonNode idNode : identifiers) {
-                switch (idNode.path("type").asText()) {
-                    case "ISBN_10" -> isbn10 = idNode.path("identifier").asText();
-                    case "ISBN_13" -> isbn13 = idNode.path("identifier").asText();
-                }
-            }
+        BookResultIndex index = new BookResultIndex();
+        results.forEach(index::index);
 
-            List<String> authorNames = new ArrayList<>();
-            info.path("authors").forEach(a -> authorNames.add(a.asText()));
-
-            List<Author> authors = authorNames.stream()
-                    .map(name -> Author.builder().name(name).build())
-                    .collect(Collectors.toList());
-
-            results.add(Book.builder()
-                    .title(info.path("title").asText())
-                    .isbn10(isbn10)
-                    .isbn13(isbn13)
-                    .publisher(info.path("publisher").asText("Editorial desconocida"))
-                    .coverUrl(imageLinks.path("thumbnail").asText(null))
-                    .synopsis(info.path("description").asText(null))
-                    .pages(info.path("pageCount").asInt(0))
-                    .publishedYear(info.path("publishedDate").asText(null))
-                    .authors(authors)
-                    .build());
+        // Añadir libros de Google Books que no estén duplicados
+        for (Book googleBook : googleBooks) {
+            if (index.addIfAbsent(googleBook)) {
+                results.add(googleBook);
+            }
         }
+
         return results;
     }
 
@@ -224,74 +294,33 @@ public class BookService {
      *                          resultado tiene datos válidos
      */
     private Book findGoogleBook(String title) {
-        String url = "https://www.googleapis.com/books/v1/volumes?q=intitle:" + title.replace(" ", "+");
-        JsonNode root = restTemplate.getForObject(url, JsonNode.class);
-
-        if (root == null || root.path("items").isEmpty()) {
+        // Títulos que ya resultaron irresolubles (p. ej. inventados por el LLM) no
+        // vuelven a consultarse hasta que expire la caché negativa
+        if (googleBooksService.isKnownUnresolvable(title)) {
             throw new RuntimeException("Libro no encontrado.");
         }
 
-        JsonNode items = root.path("items");
-        List<Book> candidateBooks = new ArrayList<>();
-
-        // Procesar todos los resultados disponibles (máximo 10 para eficiencia)
-        int maxResults = Math.min(items.size(), 10);
-
-        for (int i = 0; i < maxResults; i++) {
-            try {
-                JsonNode item = items.get(i);
-                JsonNode info = item.path("volumeInfo");
-                JsonNode identifiers = info.path("industryIdentifiers");
-                JsonNode imageLinks = info.path("imageLinks");
-
-                // Extraer ISBNs
-                String isbn10 = null;
-                String isbn13 = null;
-                for (JsonNode idNode : identifiers) {
-                    String type = idNode.path("type").asText();
-                    String idVal = idNode.path("identifier").asText();
-                    if ("ISBN_10".equals(type))
-                        isbn10 = idVal;
-                    if ("ISBN_13".equals(type))
-                        isbn13 = idVal;
-                }
+        List<Book> candidateBooks = googleBooksService.searchByTitle(title);
 
-                // Extraer autores
-                List<String> authorNames = new ArrayList<>();
-                info.path("authors").forEach(a -> authorNames.add(a.asText()));
-
-                List<Author> authors = authorNames.stream()
-                        .map(name -> Author.builder().name(name).build())
-                        .collect(Collectors.toList());
-
-                // Construir el libro
-                Book book = Book.builder()
-                        .title(info.path("title").asText())
-                        .isbn10(isbn10)
-                        .isbn13(isbn13)
-                        .publisher(info.path("publisher").asText("Editorial desconocida"))
-                        .coverUrl(imageLinks.path("thumbnail").asText())
-                        .synopsis(info.path("description").asText())
-                        .pages(info.path("pageCount").asInt())
-                        .publishedYear(info.path("publishedDate").asText())
-                        .authors(authors)
-                        .build();
-
-                candidateBooks.add(book);
-            } catch (Exception e) {
-                // Continuar con el siguiente resultado si hay error en este
-                continue;
-            }
+        if (candidateBooks.isEmpty()) {
+            googleBooksService.markUnresolvable(title);
+            throw new RuntimeException("Libro no encontrado.");
         }
 
+        // Procesar todos los resultados disponibles (máximo 10 para eficiencia)
+        int maxResults = Math.min(candidateBooks.size(), 10);
+
         // Buscar el primer libro con datos válidos
-        for (Book book : candidateBooks) {
+        for (int i = 0; i < maxResults; i++) {
+            Book book = candidateBooks.get(i);
             if (hasCompleteBookData(book)) {
+                provisionalCatalogService.enqueue(List.of(book));
                 return book;
             }
         }
 
         // Si ningún libro tiene datos completos, lanzar excepción
+        googleBooksService.markUnresolvable(title);
         throw new RuntimeException("Ningún resultado de Google Books tiene datos completos para: " + title);
     }
 
@@ -365,21 +394,16 @@ public class BookService {
         // SOLO si el libro no tiene ISBN13, consideramos el título+autor como posible
         // duplicado
         if (book.getIsbn13() == null || book.getIsbn13().trim().isEmpty()) {
-            var existingByTitle = bookRepository.findByTitleIgnoreCase(book.getTitle());
+            String newBookKey = BookResultIndex.titleAuthorKey(book);
+
+            // Sin autor no hay clave con la que comparar, no hace falta consultar
+            if (newBookKey != null) {
+                var existingByTitle = bookRepository.findByTitleIgnoreCase(book.getTitle());
 
-            if (!existingByTitle.isEmpty()) {
                 // Si hay libros con el mismo título, verificar si alguno tiene el mismo primer
                 // autor
-                String newBookFirstAuthor = book.getAuthors() != null && !book.getAuthors().isEmpty()
-                        ? book.getAuthors().get(0).getName().toLowerCase().trim()
-                        : "";
-
                 for (Book existing : existingByTitle) {
-                    String existingFirstAuthor = existing.getAuthors() != null && !existing.getAuthors().isEmpty()
-                            ? existing.getAuthors().get(0).getName().toLowerCase().trim()
-                            : "";
-
-                    if (!newBookFirstAuthor.isEmpty() && newBookFirstAuthor.equals(existingFirstAuthor)) {
+                    if (newBookKey.equals(BookResultIndex.titleAuthorKey(existing))) {
                         return existing;
                     }
                 }
@@ -392,6 +416,85 @@ public class BookService {
         return savedBook;
     }
 
+    /**
+     * Guarda en un único lote libros de Google Books como provisionales. Se
+     * omiten los incompletos y los que ya existen por ISBN13 o ISBN10; los
+     * autores se resuelven con una consulta para todo el lote. Los libros
+     * recibidos no se modifican, se guardan copias.
+     *
+     * @param books Libros no persistidos obtenidos de Google Books
+     * @return Número de libros guardados
+     */
+    @Transactional
+    public int saveProvisionalBooks(List<Book> books) {
+        List<Book> candidates = books.stream().filter(this::hasCompleteBookData).toList();
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> takenIsbn13 = bookRepository
+                .findByIsbn13In(candidates.stream().map(Book::getIsbn13).collect(Collectors.toSet())).stream()
+                .map(Book::getIsbn13)
+                .collect(Collectors.toCollection(HashSet::new));
+        Set<String> takenIsbn10 = bookRepository
+                .findByIsbn10In(candidates.stream().map(Book::getIsbn10).collect(Collectors.toSet())).stream()
+                .map(Book::getIsbn10)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        // Autores del lote: los existentes en una consulta, los nuevos en un saveAll
+        Set<String> authorNames = candidates.stream()
+                .flatMap(book -> book.getAuthors().stream())
+                .map(Author::getName)
+                .collect(Collectors.toSet());
+        Map<String, Author> authorsByName = new HashMap<>();
+        authorRepository.findByNameIn(authorNames).forEach(author -> authorsByName.put(author.getName(), author));
+        List<Author> newAuthors = authorNames.stream()
+                .filter(name -> !authorsByName.containsKey(name))
+                .map(name -> Author.builder().name(name).build())
+                .toList();
+        authorRepository.saveAll(newAuthors).forEach(author -> authorsByName.put(author.getName(), author));
+
+        List<Book> toSave = new ArrayList<>();
+        for (Book book : candidates) {
+            // add() también descarta duplicados dentro del propio lote
+            if (!takenIsbn13.add(book.getIsbn13()) || !takenIsbn10.add(book.getIsbn10())) {
+                continue;
+            }
+
+            Book provisionalBook = Book.builder()
+                    .title(book.getTitle())
+                    .isbn10(book.getIsbn10())
+                    .isbn13(book.getIsbn13())
+                    .publisher(book.getPublisher())
+                    .coverUrl(book.getCoverUrl())
+                    .synopsis(book.getSynopsis())
+                    .pages(book.getPages())
+                    .publishedYear(book.getPublishedYear())
+                    .authors(book.getAuthors().stream()
+                            .map(author -> authorsByName.get(author.getName()))
+                            .distinct()
+                            .collect(Collectors.toList()))
+                    .provisional(true)
+                    .build();
+            sanitizeBookData(provisionalBook);
+            toSave.add(provisionalBook);
+        }
+
+        bookRepository.saveAll(toSave);
+        return toSave.size();
+    }
+
+    /**
+     * Marca un libro como confirmado por un usuario. No hace nada si el libro ya
+     * estaba confirmado.
+     *
+     * @param bookId El ID del libro
+     */
+    @Transactional
+    public void confirmBook(Long bookId) {
+        bookRepository.confirmProvisional(bookId);
+    }
+
     private void sanitizeBookData(Book book) {
 
         // Sanitizar coverUrl
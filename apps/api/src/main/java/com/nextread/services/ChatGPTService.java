@@ -1,11 +1,38 @@
 package com.nextread.services;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpEntity;
@@ -18,6 +45,7 @@ import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.nextread.dto.GeneratedRecommendationDTO;
 import com.nextread.entities.GenreSelection;
 import com.nextread.entities.PaceSelection;
@@ -27,33 +55,158 @@ import com.nextread.entities.User;
 import com.nextread.entities.UserBook;
 import com.nextread.entities.Book;
 import com.nextread.entities.Author;
+import com.nextread.utils.fingerprints.PreferenceFingerprint;
+import com.nextread.utils.normalizers.TitleNormalizer;
+import com.nextread.utils.parsers.JsonArrayExtractor;
+import com.nextread.utils.parsers.JsonArrayStreamParser;
+import com.nextread.utils.tokens.TokenEstimator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Service
 public class ChatGPTService {
 
+    // Tokens reservados para la línea que resume los libros que no caben en el prompt
+    private static final int HISTORY_SUMMARY_TOKENS = 40;
+
+    // Instrucciones fijas enviadas como primer mensaje (system). Al ser idénticas en
+    // todas las peticiones forman un prefijo estable que OpenAI puede cachear
+    private static final String SYSTEM_PROMPT = buildSystemPrompt();
+    private static final int SYSTEM_PROMPT_TOKENS = TokenEstimator.estimate(SYSTEM_PROMPT);
+
+    // Tokens de salida por candidato pedido (título, razón y estructura JSON)
+    private static final int COMPLETION_TOKENS_PER_CANDIDATE = 150;
+
+    // Salida estructurada: OpenAI garantiza que la respuesta cumple el esquema. La
+    // raíz de un json_schema debe ser un objeto, por eso el array va envuelto
+    private static final Map<String, Object> RESPONSE_FORMAT = Map.of(
+            "type", "json_schema",
+            "json_schema", Map.of(
+                    "name", "book_recommendations",
+                    "strict", true,
+                    "schema", Map.of(
+                            "type", "object",
+                            "properties", Map.of(
+                                    "recommendations", Map.of(
+                                            "type", "array",
+                                            "items", Map.of(
+                                                    "type", "object",
+                                                    "properties", Map.of(
+                                                            "title", Map.of("type", "string"),
+                                                            "reason", Map.of("type", "string")),
+                                                    "required", List.of("title", "reason"),
+                                                    "additionalProperties", false))),
+                            "required", List.of("recommendations"),
+                            "additionalProperties", false)));
+
     @Value("${openai.api.key}")
     private String apiKey;
 
     @Value("${openai.api.url}")
     private String apiUrl;
 
+    // Presupuesto estimado de tokens de entrada por prompt
+    @Value("${app.recommendations.prompt.token-budget:1500}")
+    private int promptTokenBudget;
+
+    // Hedging: otra completion con otra semilla si la anterior tarda más de hedgeDelayMs
+    @Value("${app.recommendations.hedging.enabled:true}")
+    private boolean hedgingEnabled;
+
+    @Value("${app.recommendations.hedging.delay-ms:4000}")
+    private long hedgeDelayMs;
+
+    // Máximo de llamadas a OpenAI en curso a la vez por generación
+    @Value("${app.recommendations.hedging.max-concurrent-calls:2}")
+    private int maxConcurrentCalls;
+
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     private final SurveyService surveyService;
     private final UserBookService userBookService;
     private final BookService bookService;
+    private final Executor enrichmentExecutor;
+    private final Executor openAiExecutor;
+    private final Executor refillExecutor;
+    private final RecommendationCacheService recommendationCacheService;
+    private final RecommendationInventoryService recommendationInventoryService;
+    private final EnrichmentYieldTracker enrichmentYieldTracker;
+    private final OpenAiCallGovernor openAiCallGovernor;
+    private final OpenAiRetryPolicy openAiRetryPolicy;
+    private final RateLimitService rateLimitService;
+    private final DistributionSummary estimatedPromptTokens;
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary cachedPromptTokens;
+    private final DistributionSummary completionTokens;
+    private final Counter droppedFromLibrary;
+    private final Counter droppedAsRejected;
+    private final Counter hedgedCalls;
+    private final Counter inventoryRefills;
+
+    // Usuarios con una reposición de inventario en curso
+    private final Set<Long> refillsInFlight = ConcurrentHashMap.newKeySet();
 
     @Autowired
-    public ChatGPTService(RestTemplate restTemplate,
+    public ChatGPTService(@Qualifier("openAiRestTemplate") RestTemplate restTemplate,
             ObjectMapper objectMapper,
             SurveyService surveyService,
             @Lazy UserBookService userBookService,
-            BookService bookService) {
+            BookService bookService,
+            @Qualifier("enrichmentExecutor") Executor enrichmentExecutor,
+            @Qualifier("openAiExecutor") Executor openAiExecutor,
+            @Qualifier("inventoryRefillExecutor") Executor refillExecutor,
+            RecommendationCacheService recommendationCacheService,
+            RecommendationInventoryService recommendationInventoryService,
+            EnrichmentYieldTracker enrichmentYieldTracker,
+            OpenAiCallGovernor openAiCallGovernor,
+            OpenAiRetryPolicy openAiRetryPolicy,
+            RateLimitService rateLimitService,
+            MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
         this.surveyService = surveyService;
         this.userBookService = userBookService;
         this.bookService = bookService;
+        this.enrichmentExecutor = enrichmentExecutor;
+        this.openAiExecutor = openAiExecutor;
+        this.refillExecutor = refillExecutor;
+        this.recommendationCacheService = recommendationCacheService;
+        this.recommendationInventoryService = recommendationInventoryService;
+        this.enrichmentYieldTracker = enrichmentYieldTracker;
+        this.openAiCallGovernor = openAiCallGovernor;
+        this.openAiRetryPolicy = openAiRetryPolicy;
+        this.rateLimitService = rateLimitService;
+        this.estimatedPromptTokens = DistributionSummary.builder("recommendations.prompt.tokens")
+                .description("Tokens de entrada por petición a OpenAI")
+                .tag("source", "estimated")
+                .register(meterRegistry);
+        this.promptTokens = DistributionSummary.builder("recommendations.prompt.tokens")
+                .description("Tokens de entrada por petición a OpenAI")
+                .tag("source", "openai")
+                .register(meterRegistry);
+        this.cachedPromptTokens = DistributionSummary.builder("recommendations.prompt.tokens")
+                .description("Tokens de entrada por petición a OpenAI")
+                .tag("source", "cached")
+                .register(meterRegistry);
+        this.completionTokens = DistributionSummary.builder("recommendations.completion.tokens")
+                .description("Tokens de salida por petición a OpenAI")
+                .register(meterRegistry);
+        this.droppedFromLibrary = Counter.builder("recommendations.candidates.dropped")
+                .description("Candidatos del LLM descartados antes de enriquecerse")
+                .tag("reason", "library")
+                .register(meterRegistry);
+        this.droppedAsRejected = Counter.builder("recommendations.candidates.dropped")
+                .description("Candidatos del LLM descartados antes de enriquecerse")
+                .tag("reason", "rejected")
+                .register(meterRegistry);
+        this.hedgedCalls = Counter.builder("recommendations.openai.hedged")
+                .description("Completions de respaldo lanzadas porque la anterior tardaba")
+                .register(meterRegistry);
+        this.inventoryRefills = Counter.builder("recommendations.inventory.refills")
+                .description("Reposiciones del inventario ejecutadas en segundo plano")
+                .register(meterRegistry);
     }
 
     /**
@@ -72,76 +225,425 @@ public class ChatGPTService {
 
         try {
             // Obtener datos del usuario
-            Survey survey = surveyService.findSurveyByUser(user);
+            Survey survey = findCompletedSurvey(user);
+            List<UserBook> userBooks = userBookService.findUserBooksWithBook(user);
+
+            // Con inventario suficiente se responde sin llamadas externas y se
+            // repone en segundo plano
+            List<String> rejectedTitles = titlesOf(rejectedBooks);
+            Map<String, Counter> excludedTitles = excludedTitles(userBooks, rejectedBooks);
+            String inventoryFingerprint = PreferenceFingerprint.of(survey, userBooks, List.of());
+            List<GeneratedRecommendationDTO> stocked = recommendationInventoryService.take(user,
+                    inventoryFingerprint, excludedTitles.keySet(), 3);
+            if (!stocked.isEmpty()) {
+                refillInventoryIfLow(user, survey, userBooks, rejectedBooks, stocked, inventoryFingerprint);
+                cacheRecommendations(user, survey, userBooks, rejectedTitles, stocked);
+                return new ArrayList<>(stocked);
+            }
 
-            // Validar que la encuesta ya se haya completado
-            if (survey.getFirstTime().equals(Boolean.TRUE)) {
-                throw new RuntimeException(
-                        "Se debe completar la encuesta base para poder comenzar con las recomendaciones.");
+            // Si nada ha cambiado desde la última generación se reutiliza su resultado
+            Optional<List<GeneratedRecommendationDTO>> cached = findCachedRecommendations(user, survey, userBooks,
+                    rejectedTitles, excludedTitles);
+            if (cached.isPresent()) {
+                return new ArrayList<>(cached.get());
             }
 
-            List<UserBook> userBooks = userBookService.findUserBooks(user);
+            List<GeneratedRecommendationDTO> finalRecommendations = generateFresh(user, survey, userBooks,
+                    rejectedBooks, excludedTitles, inventoryFingerprint, false);
+
+            cacheRecommendations(user, survey, userBooks, rejectedTitles, finalRecommendations);
+            return finalRecommendations;
 
-            // Generar exactamente 3 recomendaciones completamente enriquecidas
-            List<GeneratedRecommendationDTO> finalRecommendations = new ArrayList<>();
-            int maxAttempts = 5; // Máximo 5 intentos para evitar loops infinitos
-            int currentAttempt = 0;
+        } catch (RejectedExecutionException e) {
+            // Saturación de OpenAI: se propaga tal cual para responder 503
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error al generar recomendaciones: generación interrumpida");
+        } catch (Exception e) {
+            throw new RuntimeException("Error al generar recomendaciones: " + e.getMessage());
+        }
+    }
 
-            while (finalRecommendations.size() < 3 && currentAttempt < maxAttempts) {
-                currentAttempt++;
+    /**
+     * Genera 3 recomendaciones enriquecidas llamando al LLM y guarda en el
+     * inventario los candidatos enriquecidos que sobran.
+     *
+     * @param excludedTitles       Títulos de la biblioteca y rechazados
+     * @param inventoryFingerprint Huella de encuesta y biblioteca para el
+     *                             inventario
+     * @param refill               true en una reposición en segundo plano: no
+     *                             hay hedging y también se guardan las 3
+     * @return Las recomendaciones generadas (como mucho 3)
+     */
+    private List<GeneratedRecommendationDTO> generateFresh(User user, Survey survey, List<UserBook> userBooks,
+            List<Book> rejectedBooks, Map<String, Counter> excludedTitles, String inventoryFingerprint,
+            boolean refill) throws InterruptedException {
+        // Generar exactamente 3 recomendaciones completamente enriquecidas
+        List<GeneratedRecommendationDTO> finalRecommendations = new ArrayList<>();
+        int maxAttempts = 5; // Máximo 5 llamadas al LLM para evitar loops infinitos
+        int startedCalls = 0;
+        int inFlightCalls = 0;
+        boolean canHedge = hedgingEnabled && !refill;
+
+        // Enriquecimientos de esta generación por título normalizado: un título
+        // repetido en otro intento no se vuelve a buscar
+        Map<String, CompletableFuture<GeneratedRecommendationDTO>> enrichments = new HashMap<>();
+        String cohort = enrichmentYieldTracker.cohortOf(survey);
+
+        // Respuestas del LLM en orden de llegada
+        BlockingQueue<CompletableFuture<String>> responses = new LinkedBlockingQueue<>();
+
+        while (finalRecommendations.size() < 3) {
+            if (inFlightCalls == 0) {
+                if (startedCalls >= maxAttempts) {
+                    break;
+                }
+                startCompletion(user, survey, userBooks, rejectedBooks, cohort, 3 - finalRecommendations.size(),
+                        responses, true);
+                startedCalls++;
+                inFlightCalls++;
+            }
 
-                // Construir prompt personalizado incluyendo libros rechazados
-                String prompt = buildPrompt(survey, userBooks, rejectedBooks);
+            // Si la respuesta tarda más del retardo de hedging se lanza otra
+            // completion con otra semilla, sin superar el máximo de llamadas en curso
+            boolean hedge = canHedge && inFlightCalls < maxConcurrentCalls && startedCalls < maxAttempts;
+            CompletableFuture<String> call = hedge ? responses.poll(hedgeDelayMs, TimeUnit.MILLISECONDS)
+                    : responses.take();
+            if (call == null) {
+                canHedge = startCompletion(user, survey, userBooks, rejectedBooks, cohort,
+                        3 - finalRecommendations.size(), responses, false);
+                if (canHedge) {
+                    hedgedCalls.increment();
+                    startedCalls++;
+                    inFlightCalls++;
+                }
+                continue;
+            }
+            inFlightCalls--;
+
+            // Parsear la respuesta y convertir a DTOs. Si falla y queda otra
+            // llamada en curso se espera a esa
+            List<GeneratedRecommendationDTO> result;
+            try {
+                result = parseRecommendations(call.join());
+            } catch (RuntimeException e) {
+                if (inFlightCalls > 0) {
+                    continue;
+                }
+                throw e instanceof CompletionException && e.getCause() instanceof RuntimeException cause
+                        ? cause
+                        : e;
+            }
 
-                // Llamar a la API de ChatGPT
-                String response = callChatGPTAPI(prompt);
+            // Enriquecer todos los candidatos en paralelo; se quedan los primeros en
+            // completarse hasta llegar a 3. Si ninguno se enriquece se pasa a la
+            // siguiente respuesta o a un nuevo intento
+            int needed = 3 - finalRecommendations.size();
+            finalRecommendations.addAll(enrichCandidates(result, needed, finalRecommendations, enrichments,
+                    excludedTitles, cohort));
+        }
 
-                // Parsear la respuesta y convertir a DTOs
-                List<GeneratedRecommendationDTO> result = parseRecommendations(response);
+        bankSurplus(user, inventoryFingerprint, enrichments, finalRecommendations, refill);
+        return finalRecommendations;
+    }
 
-                // Procesar las recomendaciones una por una hasta encontrar una enriquecida
-                if (result != null && !result.isEmpty()) {
-                    for (GeneratedRecommendationDTO rec : result) {
-                        // Verificar que no sea duplicado
-                        boolean isDuplicate = finalRecommendations.stream()
-                                .anyMatch(existing -> existing.getTitle().equalsIgnoreCase(rec.getTitle()));
+    /**
+     * Variante en streaming de {@link #generateRecommendations(User, List)}. La
+     * completion se pide con stream=true y cada recomendación se empieza a
+     * enriquecer en cuanto el LLM cierra su objeto JSON, sin esperar al resto de
+     * la respuesta. Cada recomendación enriquecida se notifica en cuanto está
+     * lista, en orden de finalización.
+     * 
+     * @param user             El usuario para quien generar recomendaciones
+     * @param rejectedBooks    Lista de libros rechazados recientemente que deben
+     *                         evitarse
+     * @param onRecommendation Callback invocado por cada recomendación
+     *                         enriquecida (como mucho 3, desde distintos hilos
+     *                         pero nunca a la vez)
+     * @return Las recomendaciones notificadas, en el orden en que se notificaron
+     */
+    public List<GeneratedRecommendationDTO> streamRecommendations(User user, List<Book> rejectedBooks,
+            Consumer<GeneratedRecommendationDTO> onRecommendation) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new RuntimeException("API key de OpenAI no configurada");
+        }
 
-                        if (!isDuplicate) {
-                            // Intentar enriquecer esta recomendación específica
-                            GeneratedRecommendationDTO enrichedRec = enrichSingleRecommendation(rec);
+        try {
+            Survey survey = findCompletedSurvey(user);
+            List<UserBook> userBooks = userBookService.findUserBooksWithBook(user);
+
+            List<String> rejectedTitles = titlesOf(rejectedBooks);
+            Map<String, Counter> excludedTitles = excludedTitles(userBooks, rejectedBooks);
+            String inventoryFingerprint = PreferenceFingerprint.of(survey, userBooks, List.of());
+            List<GeneratedRecommendationDTO> stocked = recommendationInventoryService.take(user,
+                    inventoryFingerprint, excludedTitles.keySet(), 3);
+            if (!stocked.isEmpty()) {
+                stocked.forEach(onRecommendation);
+                refillInventoryIfLow(user, survey, userBooks, rejectedBooks, stocked, inventoryFingerprint);
+                cacheRecommendations(user, survey, userBooks, rejectedTitles, stocked);
+                return new ArrayList<>(stocked);
+            }
 
-                            if (enrichedRec != null && enrichedRec.isEnriched()) {
-                                finalRecommendations.add(enrichedRec);
+            Optional<List<GeneratedRecommendationDTO>> cached = findCachedRecommendations(user, survey, userBooks,
+                    rejectedTitles, excludedTitles);
+            if (cached.isPresent()) {
+                cached.get().forEach(onRecommendation);
+                return new ArrayList<>(cached.get());
+            }
 
-                                // Si ya tenemos 3 recomendaciones válidas, salir del bucle
-                                if (finalRecommendations.size() >= 3) {
-                                    break;
-                                }
-                            }
-                        }
+            StreamedRecommendations delivered = new StreamedRecommendations(3, onRecommendation);
+            Map<String, CompletableFuture<GeneratedRecommendationDTO>> enrichments = new HashMap<>();
+            String cohort = enrichmentYieldTracker.cohortOf(survey);
+            int maxAttempts = 5;
+
+            for (int attempt = 1; attempt <= maxAttempts && !delivered.isFull(); attempt++) {
+                int needed = delivered.remaining();
+                int candidateCount = Math.max(needed, enrichmentYieldTracker.candidatesFor(cohort, needed));
+                String prompt = buildPrompt(survey, userBooks, rejectedBooks, candidateCount);
+                estimatedPromptTokens.record(TokenEstimator.estimate(prompt));
+                List<CompletableFuture<GeneratedRecommendationDTO>> attemptEnrichments = new ArrayList<>();
+
+                streamChatGPTAPI(user, prompt, candidateCount, candidate -> {
+                    String key = TitleNormalizer.normalize(candidate.getTitle());
+                    if (delivered.isFull() || enrichments.containsKey(key) || isExcluded(key, excludedTitles)) {
+                        return;
                     }
-                }
 
-                // Si no se pudo enriquecer ninguna recomendación, continuar con el siguiente
-                // intento
-                if (result == null || result.isEmpty() ||
-                        result.stream().noneMatch(rec -> {
-                            GeneratedRecommendationDTO enriched = enrichSingleRecommendation(rec);
-                            return enriched != null && enriched.isEnriched();
-                        })) {
-                    // Continuar con el siguiente intento
-                }
+                    CompletableFuture<GeneratedRecommendationDTO> enrichment = CompletableFuture
+                            .supplyAsync(() -> enrichAndRecordYield(candidate, cohort), enrichmentExecutor);
+                    enrichments.put(key, enrichment);
+                    attemptEnrichments.add(enrichment.whenComplete((enriched, error) -> delivered.offer(enriched)));
+                });
+
+                // Esperar a que terminen los enriquecimientos del intento o a tener las 3
+                CompletableFuture.anyOf(
+                        CompletableFuture.allOf(attemptEnrichments.toArray(CompletableFuture[]::new)),
+                        delivered.whenFull()).get();
             }
 
-            return finalRecommendations;
+            List<GeneratedRecommendationDTO> result = delivered.snapshot();
+            bankSurplus(user, inventoryFingerprint, enrichments, result, false);
+            cacheRecommendations(user, survey, userBooks, rejectedTitles, result);
+            return result;
 
+        } catch (RejectedExecutionException e) {
+            // Saturación de OpenAI: se propaga tal cual para responder 503
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error al generar recomendaciones: generación interrumpida");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error al generar recomendaciones: " + e.getCause().getMessage());
         } catch (Exception e) {
             throw new RuntimeException("Error al generar recomendaciones: " + e.getMessage());
         }
     }
 
+    /**
+     * Busca el resultado guardado para las entradas de esta llamada. Si alguno
+     * de sus títulos está ya en la biblioteca o entre los rechazados se ignora,
+     * para no volver a ofrecer un libro rechazado.
+     */
+    private Optional<List<GeneratedRecommendationDTO>> findCachedRecommendations(User user, Survey survey,
+            List<UserBook> userBooks, List<String> rejectedTitles, Map<String, Counter> excludedTitles) {
+        return recommendationCacheService.find(cacheKey(user, survey, userBooks, rejectedTitles))
+                .filter(cached -> cached.stream().noneMatch(recommendation -> excludedTitles
+                        .containsKey(TitleNormalizer.normalize(recommendation.getTitle()))));
+    }
+
+    /**
+     * Guarda el resultado en la caché bajo la huella de las entradas de esta
+     * llamada (encuesta, biblioteca y rechazos actuales).
+     */
+    private void cacheRecommendations(User user, Survey survey, List<UserBook> userBooks,
+            List<String> rejectedTitles, List<GeneratedRecommendationDTO> recommendations) {
+        recommendationCacheService.store(cacheKey(user, survey, userBooks, rejectedTitles), recommendations);
+    }
+
+    /**
+     * Clave de la caché: la huella va precedida del ID del usuario para que dos
+     * usuarios con las mismas preferencias (por ejemplo, dos usuarios nuevos con
+     * la biblioteca vacía) no compartan resultados.
+     */
+    private String cacheKey(User user, Survey survey, List<UserBook> userBooks, List<String> rejectedTitles) {
+        return user.getId() + "|" + PreferenceFingerprint.of(survey, userBooks, rejectedTitles);
+    }
+
+    /**
+     * Guarda en el inventario los candidatos que se enriquecieron y no se
+     * usaron. Los enriquecimientos que siguen en curso se esperan en segundo
+     * plano, así que la respuesta no se retrasa.
+     *
+     * @param accepted        Recomendaciones entregadas al usuario
+     * @param includeAccepted true para guardar también las aceptadas
+     *                        (reposición)
+     */
+    private void bankSurplus(User user, String inventoryFingerprint,
+            Map<String, CompletableFuture<GeneratedRecommendationDTO>> enrichments,
+            List<GeneratedRecommendationDTO> accepted, boolean includeAccepted) {
+        List<CompletableFuture<GeneratedRecommendationDTO>> pending = List.copyOf(enrichments.values());
+
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).whenComplete((done, error) -> {
+            List<GeneratedRecommendationDTO> surplus = new ArrayList<>(includeAccepted ? accepted : List.of());
+            for (CompletableFuture<GeneratedRecommendationDTO> enrichment : pending) {
+                GeneratedRecommendationDTO enriched = enrichment.exceptionally(e -> null).join();
+                if (enriched != null && enriched.isEnriched() && !isSameBook(enriched, accepted)
+                        && !isSameBook(enriched, surplus)) {
+                    surplus.add(enriched);
+                }
+            }
+
+            if (surplus.isEmpty()) {
+                return;
+            }
+            try {
+                recommendationInventoryService.store(user, inventoryFingerprint, surplus);
+            } catch (Exception e) {
+                System.out.println("⚠️ [ChatGPTService] No se pudo guardar el inventario: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Si tras servir desde el inventario ya no queda para la siguiente
+     * petición, lanza una generación en segundo plano que lo repone. Si el pool
+     * de reposiciones está lleno la reposición se descarta. El límite de una
+     * reposición en curso por usuario se comprueba al ejecutarla, para que una
+     * reposición descartada no deje al usuario marcado.
+     *
+     * @param survey    Encuesta ya cargada de la petición; la reposición no
+     *                  tiene sesión de Hibernate para releerla
+     * @param userBooks Biblioteca ya cargada de la petición
+     * @param served    Recomendaciones recién servidas, que la reposición debe
+     *                  evitar igual que los rechazos
+     */
+    private void refillInventoryIfLow(User user, Survey survey, List<UserBook> userBooks, List<Book> rejectedBooks,
+            List<GeneratedRecommendationDTO> served, String inventoryFingerprint) {
+        if (!recommendationInventoryService.isLow(user, inventoryFingerprint, 3)) {
+            return;
+        }
+
+        List<Book> avoided = new ArrayList<>(rejectedBooks);
+        served.forEach(recommendation -> avoided.add(Book.builder().title(recommendation.getTitle()).build()));
+
+        try {
+            refillExecutor.execute(() -> refillInventory(user, survey, userBooks, avoided, inventoryFingerprint));
+        } catch (RejectedExecutionException e) {
+            // Pool cerrado al apagar la aplicación: la siguiente petición genera
+        }
+    }
+
+    private void refillInventory(User user, Survey survey, List<UserBook> userBooks, List<Book> avoided,
+            String inventoryFingerprint) {
+        // Otra reposición o pre-generación del usuario en curso
+        if (!refillsInFlight.add(user.getId())) {
+            return;
+        }
+
+        try {
+            // Una reposición anterior de la cola puede haberlo repuesto ya
+            if (recommendationInventoryService.isLow(user, inventoryFingerprint, 3)) {
+                inventoryRefills.increment();
+                generateFresh(user, survey, userBooks, avoided, excludedTitles(userBooks, avoided),
+                        inventoryFingerprint, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println("⚠️ [ChatGPTService] Error al reponer el inventario: " + e.getMessage());
+        } finally {
+            refillsInFlight.remove(user.getId());
+        }
+    }
+
+    /**
+     * Genera recomendaciones para el inventario del usuario sin que las haya
+     * pedido, tras un cambio en sus preferencias. Si el inventario ya cubre la
+     * siguiente petición no hace nada.
+     *
+     * @param user          El usuario
+     * @param rejectedBooks Libros rechazados recientemente
+     * @return false si ya hay una generación en segundo plano en curso para el
+     *         usuario
+     */
+    public boolean prefillInventory(User user, List<Book> rejectedBooks) {
+        if (!refillsInFlight.add(user.getId())) {
+            return false;
+        }
+
+        try {
+            Survey survey = findCompletedSurvey(user);
+            List<UserBook> userBooks = userBookService.findUserBooksWithBook(user);
+            String inventoryFingerprint = PreferenceFingerprint.of(survey, userBooks, List.of());
+
+            if (recommendationInventoryService.isLow(user, inventoryFingerprint, 3)) {
+                generateFresh(user, survey, userBooks, rejectedBooks, excludedTitles(userBooks, rejectedBooks),
+                        inventoryFingerprint, true);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error al generar recomendaciones: generación interrumpida");
+        } finally {
+            refillsInFlight.remove(user.getId());
+        }
+    }
+
+    /**
+     * Títulos normalizados que el LLM no debería proponer: los de la biblioteca
+     * del usuario y los rechazados recientemente. Cada uno se asocia al contador
+     * de descartes de su motivo.
+     */
+    private Map<String, Counter> excludedTitles(List<UserBook> userBooks, List<Book> rejectedBooks) {
+        Map<String, Counter> excluded = new HashMap<>();
+        for (Book book : rejectedBooks) {
+            excluded.put(TitleNormalizer.normalize(book.getTitle()), droppedAsRejected);
+        }
+        // Si un libro está en ambos, cuenta como de la biblioteca
+        for (UserBook userBook : userBooks) {
+            excluded.put(TitleNormalizer.normalize(userBook.getBook().getTitle()), droppedFromLibrary);
+        }
+        return excluded;
+    }
+
+    /**
+     * Comprueba si un candidato está excluido y, en ese caso, registra el descarte.
+     */
+    private boolean isExcluded(String key, Map<String, Counter> excludedTitles) {
+        Counter drop = excludedTitles.get(key);
+        if (drop == null) {
+            return false;
+        }
+        drop.increment();
+        return true;
+    }
+
+    private List<String> titlesOf(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+
+    /**
+     * Obtiene la encuesta del usuario comprobando que ya la haya completado.
+     */
+    private Survey findCompletedSurvey(User user) {
+        Survey survey = surveyService.findSurveyWithGenresByUser(user);
+
+        // Validar que la encuesta ya se haya completado
+        if (survey.getFirstTime().equals(Boolean.TRUE)) {
+            throw new RuntimeException(
+                    "Se debe completar la encuesta base para poder comenzar con las recomendaciones.");
+        }
+
+        return survey;
+    }
+
     /**
      * Construye el prompt personalizado basado en la encuesta y libros del usuario.
+     * Es el mensaje del usuario y va después de {@link #SYSTEM_PROMPT}, que
+     * contiene las instrucciones y el formato de respuesta. El historial y los
+     * rechazos se recortan para que ambos mensajes no superen el presupuesto de
+     * tokens, por grande que sea la biblioteca del usuario.
      * 
      * @param survey        La encuesta del usuario
      * @param userBooks     Los libros del usuario
@@ -150,72 +652,217 @@ public class ChatGPTService {
      * @return Prompt personalizado para ChatGPT
      */
     private String buildPrompt(Survey survey, List<UserBook> userBooks, List<Book> rejectedBooks) {
-        StringBuilder prompt = new StringBuilder();
+        return buildPrompt(survey, userBooks, rejectedBooks, 3);
+    }
 
-        prompt.append("Eres un experto en recomendaciones de libros. ");
-        prompt.append("Basándote en la siguiente información del usuario, recomienda exactamente 3 libros DIVERSOS. ");
+    /**
+     * Construye el prompt pidiendo un número concreto de candidatos.
+     * 
+     * @param candidateCount Número de libros que debe proponer el LLM
+     * @see #buildPrompt(Survey, List, List)
+     */
+    private String buildPrompt(Survey survey, List<UserBook> userBooks, List<Book> rejectedBooks,
+            int candidateCount) {
+        StringBuilder header = new StringBuilder();
 
         // Información de la encuesta
-        prompt.append("Preferencias del usuario:\n");
-        prompt.append("- Ritmo de lectura: ").append(formatPace(survey.getPace())).append("\n");
-        prompt.append("- Géneros favoritos: ");
-        survey.getSelectedGenres().forEach(genre -> prompt.append(formatGenre(genre.getSelectedGenre())).append(", "));
-        prompt.append("\n");
-
-        // Información de libros del usuario
-        if (!userBooks.isEmpty()) {
-            prompt.append("Historial de libros del usuario:\n");
-            userBooks.forEach(userBook -> {
-                prompt.append("- ").append(userBook.getBook().getTitle());
-
-                if (userBook.getStatus().equals(ReadingStatus.READ)) {
-                    prompt.append(" (LEÍDO COMPLETAMENTE");
-                    if (userBook.getRating() != null) {
-                        prompt.append(" - Valoración: ").append(userBook.getRating()).append("/5");
-                    }
-                    prompt.append(")");
-                } else if (userBook.getStatus().equals(ReadingStatus.ABANDONED)) {
-                    prompt.append(" (NO TERMINADO - No le gustó al usuario, por eso lo abandonó)");
-                } else {
-                    prompt.append(" (Estado: ").append(userBook.getStatus()).append(")");
-                    if (userBook.getRating() != null) {
-                        prompt.append(" - Valoración: ").append(userBook.getRating()).append("/5");
-                    }
-                }
-                prompt.append("\n");
-            });
+        header.append("Preferencias del usuario:\n");
+        header.append("- Ritmo de lectura: ").append(formatPace(survey.getPace())).append("\n");
+        header.append("- Géneros favoritos: ");
+        survey.getSelectedGenres().forEach(genre -> header.append(formatGenre(genre.getSelectedGenre())).append(", "));
+        header.append("\n");
+
+        // El historial y los rechazos crecen con el uso; se ajustan al presupuesto que
+        // dejan las partes fijas. Los rechazos pueden ocupar como mucho un tercio
+        String reminder = "\nRecomienda exactamente " + candidateCount + " libros. Responde solo con un JSON válido "
+                + "que contenga exactamente " + candidateCount + " libros, siguiendo el formato indicado.";
+        int remainingTokens = Math.max(0, promptTokenBudget - SYSTEM_PROMPT_TOKENS
+                - TokenEstimator.estimate(header) - TokenEstimator.estimate(reminder));
+        String rejected = buildRejectedSection(rejectedBooks, remainingTokens / 3);
+        String history = buildHistorySection(userBooks, remainingTokens - TokenEstimator.estimate(rejected));
+
+        return header.append(history).append(rejected).append(reminder).toString();
+    }
+
+    /**
+     * Construye la sección de historial de libros dentro de un presupuesto de
+     * tokens. Se priorizan los libros más informativos (abandonados y leídos con
+     * valoración alta) y, dentro de cada grupo, los más recientes. Los que no caben
+     * se resumen en una línea agregada.
+     * 
+     * @param userBooks   Los libros del usuario
+     * @param tokenBudget Tokens disponibles para la sección
+     * @return La sección del prompt, vacía si el usuario no tiene libros
+     */
+    private String buildHistorySection(List<UserBook> userBooks, int tokenBudget) {
+        if (userBooks.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder history = new StringBuilder();
+        history.append("Historial de libros del usuario:\n");
+
+        String notes = "\nIMPORTANTE: Los libros marcados como 'NO TERMINADO' son libros que el usuario "
+                + "abandonó porque NO le gustaron. Evita recomendar libros similares a estos. "
+                + "Los libros 'LEÍDO COMPLETAMENTE' con buenas valoraciones (4-5/5) indican sus gustos preferidos.\n";
+
+        int usedTokens = TokenEstimator.estimate(history) + TokenEstimator.estimate(notes)
+                + HISTORY_SUMMARY_TOKENS;
+        List<UserBook> omitted = new ArrayList<>();
+
+        List<UserBook> prioritized = userBooks.stream()
+                .sorted(Comparator.comparing(this::isInformative).reversed()
+                        .thenComparing(this::lastActivity, Comparator.nullsLast(Comparator.reverseOrder())))
+                .toList();
+
+        for (UserBook userBook : prioritized) {
+            String entry = formatHistoryEntry(userBook);
+            int entryTokens = TokenEstimator.estimate(entry);
 
-            prompt.append("\nIMPORTANTE: Los libros marcados como 'NO TERMINADO' son libros que el usuario ");
-            prompt.append("abandonó porque NO le gustaron. Evita recomendar libros similares a estos. ");
-            prompt.append(
-                    "Los libros 'LEÍDO COMPLETAMENTE' con buenas valoraciones (4-5/5) indican sus gustos preferidos.\n");
+            if (usedTokens + entryTokens <= tokenBudget) {
+                history.append(entry);
+                usedTokens += entryTokens;
+            } else {
+                omitted.add(userBook);
+            }
+        }
+
+        if (!omitted.isEmpty()) {
+            history.append(summarizeHistory(omitted));
+        }
+
+        return history.append(notes).toString();
+    }
+
+    private String formatHistoryEntry(UserBook userBook) {
+        StringBuilder entry = new StringBuilder();
+        entry.append("- ").append(userBook.getBook().getTitle());
+
+        if (userBook.getStatus().equals(ReadingStatus.READ)) {
+            entry.append(" (LEÍDO COMPLETAMENTE");
+            if (userBook.getRating() != null) {
+                entry.append(" - Valoración: ").append(userBook.getRating()).append("/5");
+            }
+            entry.append(")");
+        } else if (userBook.getStatus().equals(ReadingStatus.ABANDONED)) {
+            entry.append(" (NO TERMINADO - No le gustó al usuario, por eso lo abandonó)");
+        } else {
+            entry.append(" (Estado: ").append(userBook.getStatus()).append(")");
+            if (userBook.getRating() != null) {
+                entry.append(" - Valoración: ").append(userBook.getRating()).append("/5");
+            }
+        }
+
+        return entry.append("\n").toString();
+    }
+
+    /**
+     * Resume en una línea los libros del historial que no caben en el prompt.
+     */
+    private String summarizeHistory(List<UserBook> omitted) {
+        long read = omitted.stream().filter(userBook -> userBook.getStatus() == ReadingStatus.READ).count();
+        long abandoned = omitted.stream().filter(userBook -> userBook.getStatus() == ReadingStatus.ABANDONED)
+                .count();
+        OptionalDouble averageRating = omitted.stream()
+                .filter(userBook -> userBook.getStatus() == ReadingStatus.READ && userBook.getRating() != null)
+                .mapToDouble(UserBook::getRating)
+                .average();
+
+        StringBuilder summary = new StringBuilder();
+        summary.append("- Y ").append(omitted.size()).append(" libros más: ")
+                .append(read).append(" leídos");
+        averageRating.ifPresent(average -> summary.append(" (valoración media ")
+                .append(String.format(Locale.ROOT, "%.1f", average)).append("/5)"));
+        summary.append(", ").append(abandoned).append(" abandonados y ")
+                .append(omitted.size() - read - abandoned).append(" en otros estados\n");
+
+        return summary.toString();
+    }
+
+    /**
+     * Libros que más dicen de los gustos del usuario: los abandonados y los leídos
+     * con valoración alta.
+     */
+    private boolean isInformative(UserBook userBook) {
+        return userBook.getStatus() == ReadingStatus.ABANDONED
+                || (userBook.getStatus() == ReadingStatus.READ && userBook.getRating() != null
+                        && userBook.getRating() >= 4);
+    }
+
+    private Instant lastActivity(UserBook userBook) {
+        if (userBook.getFinishedAt() != null) {
+            return userBook.getFinishedAt();
+        }
+        if (userBook.getStartedAt() != null) {
+            return userBook.getStartedAt();
+        }
+        return userBook.getCreatedAt();
+    }
+
+    /**
+     * Construye la sección de libros rechazados recientemente dentro de un
+     * presupuesto de tokens. Los que no caben se indican solo como número.
+     */
+    private String buildRejectedSection(List<Book> rejectedBooks, int tokenBudget) {
+        if (rejectedBooks.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder rejected = new StringBuilder();
+        rejected.append("\nLibros rechazados recientemente:\n");
+        String footer = "Evita recomendar libros similares a estos.\n";
+
+        int usedTokens = TokenEstimator.estimate(rejected) + TokenEstimator.estimate(footer)
+                + HISTORY_SUMMARY_TOKENS;
+        int omitted = 0;
+
+        for (Book book : rejectedBooks) {
+            String entry = "- " + book.getTitle() + "\n";
+            int entryTokens = TokenEstimator.estimate(entry);
+
+            if (usedTokens + entryTokens <= tokenBudget) {
+                rejected.append(entry);
+                usedTokens += entryTokens;
+            } else {
+                omitted++;
+            }
         }
 
-        // Información de libros rechazados
-        if (!rejectedBooks.isEmpty()) {
-            prompt.append("\nLibros rechazados recientemente:\n");
-            rejectedBooks.forEach(book -> {
-                prompt.append("- ").append(book.getTitle()).append("\n");
-            });
-            prompt.append("Evita recomendar libros similares a estos.\n");
+        if (omitted > 0) {
+            rejected.append("- Y ").append(omitted).append(" libros más\n");
         }
 
+        return rejected.append(footer).toString();
+    }
+
+    /**
+     * Construye las instrucciones fijas del mensaje de sistema: rol, reglas y
+     * formato de respuesta. No dependen del usuario.
+     */
+    private static String buildSystemPrompt() {
+        StringBuilder prompt = new StringBuilder();
+
+        prompt.append("Eres un experto en recomendaciones de libros. ");
+        prompt.append("Basándote en la información del usuario que se te proporcionará, recomienda libros DIVERSOS. El número exacto de libros se indica al final del mensaje del usuario.\n");
+
         prompt.append("\nINSTRUCCIONES ESPECÍFICAS:\n");
-        prompt.append("1. Genera EXACTAMENTE 3 recomendaciones DIVERSAS\n");
+        prompt.append("1. Genera EXACTAMENTE el número de recomendaciones DIVERSAS que se pide\n");
         prompt.append("2. Evita recomendar libros que el usuario ya haya leído o abandonado\n");
         prompt.append("3. Incluye variedad en géneros y autores\n");
         prompt.append("4. Asegúrate de que los títulos sean exactos y reconocibles\n");
         prompt.append("5. Cada recomendación debe ser única y diferente a las otras\n\n");
 
         prompt.append("Por favor, responde ÚNICAMENTE con un JSON válido con el siguiente formato:\n");
-        prompt.append("[\n");
-        prompt.append("  {\n");
-        prompt.append("    \"title\": \"Título exacto del libro\",\n");
+        prompt.append("{\n");
+        prompt.append("  \"recommendations\": [\n");
+        prompt.append("    {\n");
+        prompt.append("      \"title\": \"Título exacto del libro\",\n");
         prompt.append(
-                "    \"reason\": \"Razón específica de la recomendación basada en las preferencias del usuario\"\n");
-        prompt.append("  }\n");
-        prompt.append("]\n");
-        prompt.append("Asegúrate de que sea JSON válido y que contenga exactamente 3 libros. ");
+                "      \"reason\": \"Razón específica de la recomendación basada en las preferencias del usuario\"\n");
+        prompt.append("    }\n");
+        prompt.append("  ]\n");
+        prompt.append("}\n");
+        prompt.append("Asegúrate de que sea JSON válido y que contenga exactamente el número de libros pedido. ");
         prompt.append("Es muy importante que el título sea exacto para poder encontrar el libro. ");
         prompt.append(
                 "IMPORTANTE: Responde SOLO con el JSON, sin texto adicional, sin bloques de código markdown (```), sin explicaciones. Solo el JSON puro.");
@@ -223,51 +870,261 @@ public class ChatGPTService {
         return prompt.toString();
     }
 
+    /**
+     * Construye el prompt para los candidatos que faltan y lanza la completion.
+     * Con hedging se ejecuta en el pool de OpenAI; si no, en el hilo actual.
+     * Cada llamada lleva su propia semilla para que la de respaldo no repita la
+     * respuesta de la principal.
+     *
+     * @param needed    Recomendaciones enriquecidas que faltan
+     * @param responses Cola donde se deja la llamada al terminar
+     * @param primary   true si no hay otra llamada en curso
+     * @return false si el pool está lleno y la llamada de respaldo no se lanzó
+     */
+    private boolean startCompletion(User user, Survey survey, List<UserBook> userBooks, List<Book> rejectedBooks,
+            String cohort, int needed, BlockingQueue<CompletableFuture<String>> responses, boolean primary) {
+        // Pedir los candidatos suficientes para que, con la tasa de enriquecimiento
+        // de la cohorte, probablemente no haga falta otro intento
+        int candidateCount = Math.max(needed, enrichmentYieldTracker.candidatesFor(cohort, needed));
+        String prompt = buildPrompt(survey, userBooks, rejectedBooks, candidateCount);
+        estimatedPromptTokens.record(TokenEstimator.estimate(prompt));
+        int seed = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+
+        CompletableFuture<String> call = null;
+        if (hedgingEnabled) {
+            try {
+                call = CompletableFuture.supplyAsync(() -> callChatGPTAPI(user, prompt, candidateCount, seed),
+                        openAiExecutor);
+            } catch (RejectedExecutionException e) {
+                if (!primary) {
+                    return false;
+                }
+            }
+        }
+
+        if (call == null) {
+            try {
+                call = CompletableFuture.completedFuture(callChatGPTAPI(user, prompt, candidateCount, seed));
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+        }
+
+        CompletableFuture<String> finished = call;
+        call.whenComplete((response, error) -> responses.add(finished));
+        return true;
+    }
+
     /**
      * Realiza la llamada a la API de ChatGPT.
      * 
-     * @param prompt El prompt a enviar a ChatGPT
+     * @param user           El usuario para el que se hace la llamada
+     * @param prompt         El prompt a enviar a ChatGPT
+     * @param candidateCount Número de libros pedidos, para dimensionar la
+     *                       respuesta
+     * @param seed           Semilla de muestreo de la completion
      * @return Respuesta de la API de ChatGPT
+     * @throws RejectedExecutionException si OpenAI está saturado
+     */
+    private String callChatGPTAPI(User user, String prompt, int candidateCount, int seed) {
+        Map<String, Object> requestBody = buildRequestBody(prompt, candidateCount, false);
+        requestBody.put("seed", seed);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, buildHeaders());
+
+        // Los 429 y 5xx se reintentan; cada intento pide su propio permiso para
+        // no ocupar uno durante la espera entre reintentos
+        return openAiRetryPolicy.execute(estimatedRequestTokens(prompt, candidateCount), () -> {
+            try (OpenAiCallGovernor.Permit permit = openAiCallGovernor.acquire(user)) {
+                long startedAt = System.nanoTime();
+                ResponseEntity<String> response = restTemplate.exchange(
+                        apiUrl,
+                        HttpMethod.POST,
+                        request,
+                        String.class);
+
+                openAiRetryPolicy.recordRateLimits(response.getHeaders());
+                return extractContentFromResponse(response.getBody(), user, System.nanoTime() - startedAt);
+            }
+        });
+    }
+
+    /**
+     * Realiza la llamada a la API de ChatGPT en modo streaming (Server-Sent
+     * Events). El contenido se va pasando al parser incremental según llega y
+     * cada recomendación válida se notifica en cuanto se cierra su objeto.
+     * 
+     * @param user           El usuario para el que se hace la llamada
+     * @param prompt         El prompt a enviar a ChatGPT
+     * @param candidateCount Número de libros pedidos, para dimensionar la
+     *                       respuesta
+     * @param onCandidate Callback invocado por cada recomendación parseada, en el
+     *                    hilo que lee la respuesta
      */
-    private String callChatGPTAPI(String prompt) {
+    private void streamChatGPTAPI(User user, String prompt, int candidateCount,
+            Consumer<GeneratedRecommendationDTO> onCandidate) {
+        JsonArrayStreamParser parser = new JsonArrayStreamParser(json -> {
+            GeneratedRecommendationDTO candidate = parseStreamedRecommendation(json);
+            if (candidate != null) {
+                onCandidate.accept(candidate);
+            }
+        });
+
+        // Los errores HTTP llegan antes del primer delta, así que reintentar no
+        // repite candidatos ya notificados
+        openAiRetryPolicy.execute(estimatedRequestTokens(prompt, candidateCount), () -> {
+            try (OpenAiCallGovernor.Permit permit = openAiCallGovernor.acquire(user)) {
+                long startedAt = System.nanoTime();
+                return restTemplate.execute(apiUrl, HttpMethod.POST,
+                        request -> {
+                            request.getHeaders().putAll(buildHeaders());
+                            objectMapper.writeValue(request.getBody(),
+                                    buildRequestBody(prompt, candidateCount, true));
+                        },
+                        response -> {
+                            openAiRetryPolicy.recordRateLimits(response.getHeaders());
+                            JsonNode usage = readEventStream(response.getBody(), parser);
+                            recordUsage(usage, user, System.nanoTime() - startedAt);
+                            return null;
+                        });
+            }
+        });
+    }
+
+    /**
+     * Lee el flujo SSE de una completion y pasa cada delta de contenido al parser.
+     * Una vez cerrado el array de recomendaciones sigue leyendo hasta el evento
+     * [DONE] solo para recoger el chunk final con el uso de tokens.
+     *
+     * @return El campo usage del flujo, o un nodo vacío si no llegó
+     */
+    private JsonNode readEventStream(InputStream body, JsonArrayStreamParser parser) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        JsonNode usage = MissingNode.getInstance();
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+
+            String data = line.substring("data:".length()).trim();
+            if ("[DONE]".equals(data)) {
+                break;
+            }
+
+            JsonNode chunk = objectMapper.readTree(data);
+            JsonNode delta = chunk.path("choices").path(0).path("delta");
+            if (delta.hasNonNull("content") && !parser.isFinished()) {
+                parser.feed(delta.get("content").asText());
+            }
+            if (chunk.hasNonNull("usage")) {
+                usage = chunk.get("usage");
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Parsea un objeto de recomendación emitido por el parser incremental.
+     * 
+     * @return La recomendación, o null si el objeto no es válido o está incompleto
+     */
+    private GeneratedRecommendationDTO parseStreamedRecommendation(String json) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
+            JsonNode recommendation = objectMapper.readTree(json);
+            String title = recommendation.path("title").asText().trim();
+            String reason = recommendation.path("reason").asText().trim();
+
+            if (title.isEmpty() || reason.isEmpty()) {
+                return null;
+            }
+
+            return GeneratedRecommendationDTO.builder()
+                    .title(title)
+                    .reason(reason)
+                    .build();
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-            Map<String, Object> requestBody = Map.of(
-                    "model", "gpt-4o-mini",
-                    "messages", List.of(
-                            Map.of("role", "user", "content", prompt)),
-                    "max_tokens", 500,
-                    "temperature", 0.7);
+    private HttpHeaders buildHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(apiKey);
+        return headers;
+    }
+
+    private int maxCompletionTokens(int candidateCount) {
+        return Math.max(500, candidateCount * COMPLETION_TOKENS_PER_CANDIDATE);
+    }
 
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+    /**
+     * Tokens que OpenAI descuenta de su límite por una petición: el prompt
+     * completo más el máximo de salida.
+     */
+    private int estimatedRequestTokens(String prompt, int candidateCount) {
+        return SYSTEM_PROMPT_TOKENS + TokenEstimator.estimate(prompt) + maxCompletionTokens(candidateCount);
+    }
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    apiUrl,
-                    HttpMethod.POST,
-                    request,
-                    String.class);
+    private Map<String, Object> buildRequestBody(String prompt, int candidateCount, boolean stream) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "gpt-4o-mini");
+        requestBody.put("messages", List.of(
+                Map.of("role", "system", "content", SYSTEM_PROMPT),
+                Map.of("role", "user", "content", prompt)));
+        requestBody.put("max_tokens", maxCompletionTokens(candidateCount));
+        requestBody.put("temperature", 0.7);
+        requestBody.put("response_format", RESPONSE_FORMAT);
+        if (stream) {
+            requestBody.put("stream", true);
+            // El uso de tokens llega en un último chunk sin choices
+            requestBody.put("stream_options", Map.of("include_usage", true));
+        }
+        return requestBody;
+    }
 
-            String extractedContent = extractContentFromResponse(response.getBody());
-            return extractedContent;
+    /**
+     * Registra los tokens que OpenAI informa en el campo usage de la respuesta,
+     * incluidos los de entrada que se sirvieron desde su caché de prefijos, y los
+     * suma con la duración de la llamada al consumo diario del usuario.
+     */
+    private void recordUsage(JsonNode usage, User user, long latencyNanos) {
+        int prompt = usage.path("prompt_tokens").asInt(0);
+        // Parte del prompt servida desde la caché de prefijos de OpenAI
+        int cached = usage.path("prompt_tokens_details").path("cached_tokens").asInt(0);
+        int completion = usage.path("completion_tokens").asInt(0);
+
+        if (usage.hasNonNull("prompt_tokens")) {
+            promptTokens.record(prompt);
+            cachedPromptTokens.record(cached);
+        }
+        if (usage.hasNonNull("completion_tokens")) {
+            completionTokens.record(completion);
+        }
 
+        try {
+            rateLimitService.recordUsage(user, prompt, cached, completion,
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos));
         } catch (Exception e) {
-            throw e;
+            // La contabilidad no debe tumbar una generación que ya ha pagado la llamada
+            System.out.println("⚠️ [ChatGPTService] No se pudo registrar el consumo de tokens: " + e.getMessage());
         }
     }
 
     /**
      * Extrae el contenido de la respuesta de ChatGPT.
      * 
-     * @param response La respuesta completa de la API
+     * @param response     La respuesta completa de la API
+     * @param user         El usuario al que se imputa el consumo
+     * @param latencyNanos Duración de la llamada
      * @return El contenido extraído de la respuesta
      */
-    private String extractContentFromResponse(String response) {
+    private String extractContentFromResponse(String response, User user, long latencyNanos) {
         try {
             JsonNode root = objectMapper.readTree(response);
             String content = root.path("choices").get(0).path("message").path("content").asText();
+            recordUsage(root.path("usage"), user, latencyNanos);
             return content;
         } catch (Exception e) {
             throw new RuntimeException("Error al parsear respuesta de ChatGPT: " + e.getMessage());
@@ -282,8 +1139,9 @@ public class ChatGPTService {
      */
     private List<GeneratedRecommendationDTO> parseRecommendations(String jsonResponse) {
         try {
-            // Limpiar la respuesta de bloques de código markdown
-            String cleanedJson = cleanJsonResponse(jsonResponse);
+            // Con salida estructurada llega {"recommendations": [...]}; si el modelo
+            // añade markdown o texto explicativo, el array se localiza igualmente
+            String cleanedJson = extractJsonArray(jsonResponse);
 
             JsonNode recommendations = objectMapper.readTree(cleanedJson);
 
@@ -315,71 +1173,151 @@ public class ChatGPTService {
     }
 
     /**
-     * Limpia la respuesta de ChatGPT removiendo bloques de código markdown y otros
-     * caracteres problemáticos.
+     * Localiza el array de recomendaciones en la respuesta de ChatGPT, ya venga
+     * envuelto en el objeto de la salida estructurada, en un bloque de código
+     * markdown o precedido de texto explicativo.
      * 
      * @param response La respuesta cruda de ChatGPT
-     * @return JSON limpio listo para parsear
+     * @return JSON del array listo para parsear
      */
-    private String cleanJsonResponse(String response) {
-        if (response == null || response.trim().isEmpty()) {
+    private String extractJsonArray(String response) {
+        if (response == null || response.isBlank()) {
             throw new RuntimeException("Respuesta vacía de ChatGPT");
         }
 
-        String cleaned = response.trim();
+        String array = JsonArrayExtractor.extract(response);
+        if (array == null) {
+            throw new RuntimeException("No se encontró JSON válido en la respuesta de ChatGPT");
+        }
+        return array;
+    }
 
-        // Remover bloques de código markdown variantes
-        cleaned = cleaned.replaceAll("```json\\s*", "");
-        cleaned = cleaned.replaceAll("```JSON\\s*", "");
-        cleaned = cleaned.replaceAll("```\\s*json\\s*", "");
-        cleaned = cleaned.replaceAll("```\\s*", "");
+    /**
+     * Enriquece en paralelo los candidatos de una respuesta del LLM y devuelve
+     * los primeros en completarse con éxito, como mucho needed, en el orden en
+     * que los propuso el LLM. Los candidatos que siguen en curso al alcanzar
+     * needed terminan en segundo plano y sus resultados se descartan.
+     *
+     * @param candidates     Candidatos parseados de la respuesta
+     * @param needed         Número de recomendaciones que faltan
+     * @param accepted       Recomendaciones ya aceptadas en intentos anteriores
+     * @param enrichments    Enriquecimientos ya lanzados en esta generación
+     * @param excludedTitles Títulos de la biblioteca del usuario y rechazados,
+     *                       que se descartan sin enriquecerse
+     * @param cohort         Cohorte del usuario, para registrar la tasa de
+     *                       enriquecimiento
+     * @return Recomendaciones enriquecidas nuevas
+     */
+    private List<GeneratedRecommendationDTO> enrichCandidates(List<GeneratedRecommendationDTO> candidates,
+            int needed, List<GeneratedRecommendationDTO> accepted,
+            Map<String, CompletableFuture<GeneratedRecommendationDTO>> enrichments,
+            Map<String, Counter> excludedTitles, String cohort) throws InterruptedException {
+
+        List<CompletableFuture<GeneratedRecommendationDTO>> futures = new ArrayList<>();
+        BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+        Set<String> launched = new HashSet<>();
+
+        for (GeneratedRecommendationDTO candidate : candidates) {
+            String key = TitleNormalizer.normalize(candidate.getTitle());
+
+            // Verificar que no sea duplicado dentro de la respuesta ni de lo ya aceptado
+            boolean isDuplicate = !launched.add(key) || accepted.stream()
+                    .anyMatch(existing -> existing.getTitle().equalsIgnoreCase(candidate.getTitle()));
+            if (isDuplicate || isExcluded(key, excludedTitles)) {
+                continue;
+            }
 
-        // Remover comillas triples que puedan quedar
-        cleaned = cleaned.replaceAll("```", "");
+            CompletableFuture<GeneratedRecommendationDTO> enrichment = enrichments.computeIfAbsent(key,
+                    k -> CompletableFuture.supplyAsync(() -> enrichAndRecordYield(candidate, cohort),
+                            enrichmentExecutor));
 
-        // Remover texto explicativo común antes del JSON (solo si no empieza con [ o {)
-        if (!cleaned.startsWith("[") && !cleaned.startsWith("{")) {
-            cleaned = cleaned.replaceAll("(?i).*?(?=\\[|\\{)", "");
+            int position = futures.size();
+            futures.add(enrichment);
+            enrichment.whenComplete((enriched, error) -> completed.add(position));
         }
 
-        // Buscar el inicio del JSON más precisamente
-        int arrayStart = cleaned.indexOf('[');
-        int objectStart = cleaned.indexOf('{');
+        // Recoger resultados por orden de finalización hasta tener los necesarios
+        Map<Integer, GeneratedRecommendationDTO> winners = new TreeMap<>();
+        for (int pending = futures.size(); pending > 0 && winners.size() < needed; pending--) {
+            int position = completed.take();
+            GeneratedRecommendationDTO enriched = futures.get(position).getNow(null);
 
-        int jsonStart = -1;
-        if (arrayStart != -1 && objectStart != -1) {
-            jsonStart = Math.min(arrayStart, objectStart);
-        } else if (arrayStart != -1) {
-            jsonStart = arrayStart;
-        } else if (objectStart != -1) {
-            jsonStart = objectStart;
+            if (enriched != null && enriched.isEnriched() && !isSameBook(enriched, accepted)
+                    && !isSameBook(enriched, winners.values())) {
+                winners.put(position, enriched);
+            }
         }
 
-        if (jsonStart > 0) {
-            cleaned = cleaned.substring(jsonStart);
-        } else if (jsonStart == -1) {
-            throw new RuntimeException("No se encontró JSON válido en la respuesta de ChatGPT");
+        return new ArrayList<>(winners.values());
+    }
+
+    /**
+     * Comprueba si dos candidatos distintos del LLM se resolvieron al mismo libro.
+     */
+    private boolean isSameBook(GeneratedRecommendationDTO enriched,
+            Collection<GeneratedRecommendationDTO> recommendations) {
+        return recommendations.stream().anyMatch(existing -> existing.getTitle().equalsIgnoreCase(enriched.getTitle())
+                || (existing.getIsbn13() != null && existing.getIsbn13().equals(enriched.getIsbn13())));
+    }
+
+    /**
+     * Recomendaciones ya notificadas en una generación en streaming. Los
+     * enriquecimientos terminan en hilos distintos, así que la aceptación y la
+     * notificación se serializan aquí.
+     */
+    private final class StreamedRecommendations {
+
+        private final int limit;
+        private final Consumer<GeneratedRecommendationDTO> onRecommendation;
+        private final List<GeneratedRecommendationDTO> accepted = new ArrayList<>();
+        private final CompletableFuture<Void> full = new CompletableFuture<>();
+
+        StreamedRecommendations(int limit, Consumer<GeneratedRecommendationDTO> onRecommendation) {
+            this.limit = limit;
+            this.onRecommendation = onRecommendation;
         }
 
-        // Buscar el final del JSON más precisamente
-        int arrayEnd = cleaned.lastIndexOf(']');
-        int objectEnd = cleaned.lastIndexOf('}');
+        synchronized void offer(GeneratedRecommendationDTO enriched) {
+            if (enriched == null || !enriched.isEnriched() || accepted.size() >= limit
+                    || isSameBook(enriched, accepted)) {
+                return;
+            }
 
-        int jsonEnd = Math.max(arrayEnd, objectEnd);
-        if (jsonEnd >= 0 && jsonEnd < cleaned.length() - 1) {
-            cleaned = cleaned.substring(0, jsonEnd + 1);
+            accepted.add(enriched);
+            try {
+                onRecommendation.accept(enriched);
+            } finally {
+                if (accepted.size() >= limit) {
+                    full.complete(null);
+                }
+            }
         }
 
-        // Limpiar espacios y caracteres de control
-        cleaned = cleaned.trim();
+        synchronized boolean isFull() {
+            return accepted.size() >= limit;
+        }
 
-        // Validación básica de estructura JSON
-        if (!cleaned.startsWith("[") && !cleaned.startsWith("{")) {
-            throw new RuntimeException("La respuesta limpiada no parece ser JSON válido: "
-                    + cleaned.substring(0, Math.min(50, cleaned.length())));
+        synchronized int remaining() {
+            return Math.max(0, limit - accepted.size());
         }
 
-        return cleaned;
+        CompletableFuture<Void> whenFull() {
+            return full;
+        }
+
+        synchronized List<GeneratedRecommendationDTO> snapshot() {
+            return new ArrayList<>(accepted);
+        }
+    }
+
+    /**
+     * Enriquece una recomendación y registra el resultado en la tasa de
+     * enriquecimiento de la cohorte.
+     */
+    private GeneratedRecommendationDTO enrichAndRecordYield(GeneratedRecommendationDTO candidate, String cohort) {
+        GeneratedRecommendationDTO enriched = enrichSingleRecommendation(candidate);
+        enrichmentYieldTracker.record(cohort, enriched != null);
+        return enriched;
     }
 
     /**
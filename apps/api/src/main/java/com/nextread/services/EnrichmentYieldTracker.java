@@ -0,0 +1,152 @@
+package com.nextread.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nextread.entities.Survey;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Tasa histórica de títulos del LLM que se consiguen enriquecer (encontrar en la
+ * BD local o en Google Books), por cohorte de usuarios. Se usa para pedir al LLM
+ * suficientes candidatos en una sola llamada y evitar rondas adicionales cuando
+ * algunos títulos no existen.
+ *
+ * La cohorte es el ritmo de lectura más el género principal de la encuesta. Las
+ * cohortes con pocos datos se suavizan hacia la tasa global. Los contadores se
+ * reducen a la mitad al llegar a un máximo para que la tasa siga adaptándose.
+ */
+@Service
+public class EnrichmentYieldTracker {
+
+    // Peso (en intentos) de la tasa global al estimar una cohorte con pocos datos
+    private static final double PRIOR_WEIGHT = 20;
+
+    // A partir de este número de intentos los contadores de una cohorte se reducen a la mitad
+    private static final long MAX_ATTEMPTS_PER_COHORT = 2000;
+
+    private static final String GLOBAL_COHORT = "*";
+
+    private final Map<String, YieldCounter> counters = new ConcurrentHashMap<>();
+    private final double initialYield;
+    private final double targetProbability;
+    private final int maxCandidates;
+    private final DistributionSummary requestedCandidates;
+
+    @Autowired
+    public EnrichmentYieldTracker(MeterRegistry meterRegistry,
+            @Value("${app.recommendations.candidates.initial-yield:0.7}") double initialYield,
+            @Value("${app.recommendations.candidates.target-probability:0.9}") double targetProbability,
+            @Value("${app.recommendations.candidates.max:8}") int maxCandidates) {
+        this.initialYield = initialYield;
+        this.targetProbability = targetProbability;
+        this.maxCandidates = maxCandidates;
+        this.requestedCandidates = DistributionSummary.builder("recommendations.candidates.requested")
+                .description("Candidatos pedidos al LLM por llamada")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param survey La encuesta del usuario
+     * @return La cohorte a la que pertenece el usuario
+     */
+    public String cohortOf(Survey survey) {
+        String primaryGenre = survey.getSelectedGenres().stream()
+                .map(genre -> String.valueOf(genre.getSelectedGenre()))
+                .sorted()
+                .findFirst()
+                .orElse("NONE");
+        return survey.getPace() + "|" + primaryGenre;
+    }
+
+    /**
+     * Registra el resultado de enriquecer un título propuesto por el LLM.
+     *
+     * @param cohort   La cohorte del usuario
+     * @param enriched true si el título se pudo enriquecer
+     */
+    public void record(String cohort, boolean enriched) {
+        counters.computeIfAbsent(GLOBAL_COHORT, key -> new YieldCounter()).record(enriched);
+        counters.computeIfAbsent(cohort, key -> new YieldCounter()).record(enriched);
+    }
+
+    /**
+     * Tasa de enriquecimiento estimada de una cohorte.
+     *
+     * @param cohort La cohorte del usuario
+     * @return Probabilidad estimada de que un título se enriquezca, en (0, 1]
+     */
+    public double estimatedYield(String cohort) {
+        YieldCounter global = counters.get(GLOBAL_COHORT);
+        double prior = global != null ? global.smoothed(initialYield) : initialYield;
+
+        YieldCounter counter = counters.get(cohort);
+        return counter != null ? counter.smoothed(prior) : prior;
+    }
+
+    /**
+     * Calcula cuántos candidatos pedir al LLM para obtener al menos needed
+     * enriquecidos con la probabilidad objetivo, suponiendo que cada título se
+     * enriquece de forma independiente con la tasa de la cohorte (distribución
+     * binomial).
+     *
+     * @param cohort La cohorte del usuario
+     * @param needed Recomendaciones enriquecidas que faltan
+     * @return Número de candidatos a pedir, entre needed y el máximo configurado
+     */
+    public int candidatesFor(String cohort, int needed) {
+        double yield = estimatedYield(cohort);
+        int limit = Math.max(needed, maxCandidates);
+
+        int candidates = needed;
+        while (candidates < limit && probabilityOfAtLeast(needed, candidates, yield) < targetProbability) {
+            candidates++;
+        }
+
+        requestedCandidates.record(candidates);
+        return candidates;
+    }
+
+    /**
+     * P(X >= k) para X ~ Binomial(n, p).
+     */
+    static double probabilityOfAtLeast(int k, int n, double p) {
+        double below = 0;
+        double coefficient = 1; // C(n, i)
+        for (int i = 0; i < k; i++) {
+            below += coefficient * Math.pow(p, i) * Math.pow(1 - p, n - i);
+            coefficient = coefficient * (n - i) / (i + 1);
+        }
+        return 1 - below;
+    }
+
+    private static final class YieldCounter {
+
+        private long attempts;
+        private long successes;
+
+        synchronized void record(boolean enriched) {
+            attempts++;
+            if (enriched) {
+                successes++;
+            }
+
+            if (attempts >= MAX_ATTEMPTS_PER_COHORT) {
+                attempts /= 2;
+                successes /= 2;
+            }
+        }
+
+        synchronized double smoothed(double prior) {
+            double yield = (successes + PRIOR_WEIGHT * prior) / (attempts + PRIOR_WEIGHT);
+            // Una tasa 0 impediría dimensionar la petición
+            return Math.max(yield, 0.05);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.nextread.services;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nextread.entities.Author;
+import com.nextread.entities.Book;
+import com.nextread.utils.normalizers.TitleNormalizer;
+import com.nextread.utils.parsers.GoogleBooksVolumeParser;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Service
+public class GoogleBooksService {
+
+    private static final String VOLUMES_URL = "https://www.googleapis.com/books/v1/volumes";
+    // Tamaño de página por defecto y máximo que admite Google Books
+    public static final int DEFAULT_MAX_RESULTS = 10;
+    public static final int MAX_PAGE_SIZE = 40;
+
+    // Nombre de la instancia de circuit breaker y bulkhead en resilience4j.*
+    public static final String RESILIENCE_INSTANCE = "googleBooks";
+
+    private final RestTemplate restTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Cache<String, List<Book>> searchCache;
+    private final Cache<String, Boolean> unresolvableTitles;
+    private final ConcurrentMap<String, CompletableFuture<List<Book>>> inFlightSearches = new ConcurrentHashMap<>();
+    private final Counter coalescedSearches;
+
+    @Autowired
+    public GoogleBooksService(@Qualifier("googleBooksRestTemplate") RestTemplate restTemplate,
+            MeterRegistry meterRegistry,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            BulkheadRegistry bulkheadRegistry,
+            @Value("${app.google-books.cache.max-size:2000}") long cacheMaxSize,
+            @Value("${app.google-books.cache.ttl-minutes:360}") long cacheTtlMinutes,
+            @Value("${app.google-books.negative-cache.max-size:5000}") long negativeCacheMaxSize,
+            @Value("${app.google-books.negative-cache.ttl-minutes:30}") long negativeCacheTtlMinutes) {
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(RESILIENCE_INSTANCE);
+        this.bulkhead = bulkheadRegistry.bulkhead(RESILIENCE_INSTANCE);
+
+        // Caffeine usa W-TinyLFU para decidir qué entradas desalojar al alcanzar el
+        // tamaño máximo
+        this.searchCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+
+        // Expone hits, misses y evictions en /actuator/metrics (cache.*)
+        CaffeineCacheMetrics.monitor(meterRegistry, searchCache, "googleBooks.search");
+
+        // Caché negativa con TTL corto: títulos sin ningún resultado completo. Sus
+        // hits son peticiones a Google Books que se han ahorrado
+        this.unresolvableTitles = Caffeine.newBuilder()
+                .maximumSize(negativeCacheMaxSize)
+                .expireAfterWrite(negativeCacheTtlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, unresolvableTitles, "googleBooks.unresolvable");
+
+        this.coalescedSearches = Counter.builder("googleBooks.search.coalesced")
+                .description("Búsquedas que reutilizaron una petición a Google Books ya en curso")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Busca volúmenes en Google Books por título. Los resultados se guardan en
+     * una caché en memoria indexada por el título normalizado, de forma que
+     * búsquedas repetidas (buscador, encuesta o enriquecimiento de
+     * recomendaciones) no vuelven a salir a la red.
+     *
+     * Las peticiones HTTP pasan por un circuit breaker y un bulkhead: con el
+     * circuito abierto o sin hueco en el bulkhead se lanza una excepción sin
+     * llegar a contactar con Google. La caché se sigue sirviendo en ambos casos.
+     *
+     * @param title El título a buscar
+     * @return Lista de libros encontrados (vacía si Google no devuelve nada)
+     */
+    public List<Book> searchByTitle(String title) {
+        return searchByTitle(title, book -> {
+        });
+    }
+
+    /**
+     * Igual que {@link #searchByTitle(String)} pero notifica cada libro en cuanto
+     * está disponible: de inmediato si viene de la caché y a medida que se
+     * parsea si hay que ir a Google Books.
+     *
+     * @param title  El título a buscar
+     * @param onBook Callback invocado por cada libro encontrado
+     * @return Lista de libros encontrados (vacía si Google no devuelve nada)
+     */
+    public List<Book> searchByTitle(String title, Consumer<Book> onBook) {
+        return searchByTitle(title, 0, DEFAULT_MAX_RESULTS, onBook);
+    }
+
+    /**
+     * Busca una página de volúmenes. Cada página se cachea y se agrupa por
+     * separado.
+     *
+     * @param title      El título a buscar
+     * @param startIndex Posición del primer resultado (startIndex de Google)
+     * @param maxResults Tamaño de página, entre 1 y {@link #MAX_PAGE_SIZE}
+     * @param onBook     Callback invocado por cada libro encontrado
+     * @return Lista de libros encontrados (vacía si Google no devuelve nada)
+     */
+    public List<Book> searchByTitle(String title, int startIndex, int maxResults, Consumer<Book> onBook) {
+        if (startIndex < 0 || maxResults < 1 || maxResults > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Página de Google Books no válida: startIndex=" + startIndex
+                    + ", maxResults=" + maxResults);
+        }
+
+        String key = TitleNormalizer.normalize(title) + '|' + startIndex + '|' + maxResults;
+
+        List<Book> cached = searchCache.getIfPresent(key);
+        if (cached != null) {
+            List<Book> books = copyOf(cached);
+            books.forEach(onBook);
+            return books;
+        }
+
+        return fetchCoalesced(key, title, startIndex, maxResults, onBook);
+    }
+
+    /**
+     * Indica si el título se marcó recientemente como irresoluble, es decir, si
+     * Google Books no devolvió para él ningún libro con datos completos.
+     *
+     * @param title El título a comprobar
+     * @return true si se debe omitir la búsqueda en Google Books
+     */
+    public boolean isKnownUnresolvable(String title) {
+        return unresolvableTitles.getIfPresent(TitleNormalizer.normalize(title)) != null;
+    }
+
+    /**
+     * Marca un título como irresoluble durante el TTL de la caché negativa.
+     * Solo debe llamarse cuando Google Books respondió correctamente pero sin
+     * ningún resultado utilizable, nunca ante errores de red.
+     *
+     * @param title El título sin resultados completos
+     */
+    public void markUnresolvable(String title) {
+        unresolvableTitles.put(TitleNormalizer.normalize(title), Boolean.TRUE);
+    }
+
+    /**
+     * Agrupa las búsquedas concurrentes de un mismo título normalizado: el
+     * primer llamante realiza la petición HTTP y el resto espera sobre el mismo
+     * futuro en lugar de lanzar peticiones idénticas.
+     *
+     * @param key        El título normalizado junto con la página
+     * @param title      El título original
+     * @param startIndex Posición del primer resultado
+     * @param maxResults Tamaño de página
+     * @param onBook     Callback invocado por cada libro encontrado
+     * @return Lista de libros obtenidos de Google Books
+     */
+    private List<Book> fetchCoalesced(String key, String title, int startIndex, int maxResults,
+            Consumer<Book> onBook) {
+        CompletableFuture<List<Book>> call = new CompletableFuture<>();
+        CompletableFuture<List<Book>> inFlight = inFlightSearches.putIfAbsent(key, call);
+
+        if (inFlight != null) {
+            coalescedSearches.increment();
+            try {
+                List<Book> books = copyOf(inFlight.join());
+                books.forEach(onBook);
+                return books;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            List<Book> books = guarded(
+                    () -> fetchVolumes(title, startIndex, maxResults, book -> onBook.accept(copyOf(book))));
+
+            // Solo se cachean búsquedas con resultados
+            if (!books.isEmpty()) {
+                searchCache.put(key, books);
+            }
+
+            call.complete(books);
+            return copyOf(books);
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightSearches.remove(key, call);
+        }
+    }
+
+    /**
+     * Ejecuta la llamada a Google Books dentro del circuit breaker y del
+     * bulkhead. El circuit breaker envuelve al bulkhead; los rechazos del
+     * bulkhead están excluidos del cómputo de fallos en la configuración.
+     *
+     * @param call La llamada HTTP a proteger
+     * @return El resultado de la llamada
+     * @throws CallNotPermittedException si el circuito está abierto
+     * @throws BulkheadFullException     si se alcanzó el máximo de llamadas
+     *                                   concurrentes
+     */
+    private List<Book> guarded(Supplier<List<Book>> call) {
+        return circuitBreaker.executeSupplier(Bulkhead.decorateSupplier(bulkhead, call));
+    }
+
+    /**
+     * Realiza la petición a la API de Google Books y convierte cada volumen en un
+     * Book no persistido. La consulta pide solo los campos de volumeInfo que se
+     * leen y la respuesta se parsea en streaming.
+     *
+     * @param title      El título a buscar
+     * @param startIndex Posición del primer resultado
+     * @param maxResults Tamaño de página
+     * @param onBook     Callback invocado por cada libro según se parsea
+     * @return Lista de libros obtenidos de Google Books
+     */
+    private List<Book> fetchVolumes(String title, int startIndex, int maxResults, Consumer<Book> onBook) {
+        URI uri = UriComponentsBuilder.fromUriString(VOLUMES_URL)
+                .queryParam("q", "{query}")
+                .queryParam("startIndex", startIndex)
+                .queryParam("maxResults", maxResults)
+                .queryParam("fields", "{fields}")
+                .encode()
+                .buildAndExpand("intitle:" + title.trim(), GoogleBooksVolumeParser.VOLUME_FIELDS)
+                .toUri();
+
+        List<Book> results = restTemplate.execute(uri, HttpMethod.GET, null,
+                response -> GoogleBooksVolumeParser.parse(response.getBody(), onBook));
+
+        return results != null ? results : new ArrayList<>();
+    }
+
+    /**
+     * Copia los libros cacheados para que los llamantes puedan modificarlos (por
+     * ejemplo al persistirlos) sin alterar la entrada de la caché.
+     *
+     * @param books Los libros a copiar
+     * @return Copia independiente de la lista
+     */
+    private List<Book> copyOf(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book book : books) {
+            copies.add(copyOf(book));
+        }
+        return copies;
+    }
+
+    private Book copyOf(Book book) {
+        List<Author> authors = book.getAuthors() == null ? null
+                : book.getAuthors().stream()
+                        .map(author -> Author.builder().name(author.getName()).build())
+                        .collect(Collectors.toList());
+
+        return Book.builder()
+                .title(book.getTitle())
+                .isbn10(book.getIsbn10())
+                .isbn13(book.getIsbn13())
+                .publisher(book.getPublisher())
+                .coverUrl(book.getCoverUrl())
+                .synopsis(book.getSynopsis())
+                .pages(book.getPages())
+                .publishedYear(book.getPublishedYear())
+                .authors(authors)
+                .build();
+    }
+}
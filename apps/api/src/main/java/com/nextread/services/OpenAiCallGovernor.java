@@ -0,0 +1,219 @@
+package com.nextread.services;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Limita las llamadas a OpenAI en curso en toda la aplicación para no superar
+ * el límite de concurrencia de la cuenta. Las llamadas que no caben esperan en
+ * una cola por usuario y los permisos que se liberan se reparten por turnos
+ * entre usuarios, de modo que los reintentos de uno no acaparan la cola.
+ *
+ * Una llamada se rechaza sin esperar si, con la duración media de las
+ * llamadas, su espera estimada supera el máximo; y se rechaza igualmente si
+ * llega al máximo sin obtener permiso.
+ */
+@Service
+public class OpenAiCallGovernor {
+
+    // Peso de la última llamada en la media móvil de duración
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    private final int maxInFlight;
+    private final long maxWaitNanos;
+
+    // Colas de espera por usuario; el orden de las claves es el turno
+    private final Map<Long, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private int inFlight;
+    private int queued;
+    private double averageCallNanos;
+
+    private final Timer queueWait;
+    private final Counter predictedRejections;
+    private final Counter timeoutRejections;
+
+    @Autowired
+    public OpenAiCallGovernor(MeterRegistry meterRegistry,
+            @Value("${app.openai.governor.max-in-flight:8}") int maxInFlight,
+            @Value("${app.openai.governor.max-wait-ms:15000}") long maxWaitMs) {
+        this.maxInFlight = maxInFlight;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.queueWait = Timer.builder("recommendations.openai.queue.wait")
+                .description("Espera hasta obtener permiso para llamar a OpenAI")
+                .register(meterRegistry);
+        this.predictedRejections = Counter.builder("recommendations.openai.rejected")
+                .description("Llamadas a OpenAI rechazadas por saturación")
+                .tag("reason", "predicted")
+                .register(meterRegistry);
+        this.timeoutRejections = Counter.builder("recommendations.openai.rejected")
+                .description("Llamadas a OpenAI rechazadas por saturación")
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.openai.in-flight", this, OpenAiCallGovernor::inFlight)
+                .description("Llamadas a OpenAI en curso")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.openai.queued", this, OpenAiCallGovernor::queued)
+                .description("Llamadas a OpenAI esperando permiso")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Espera su turno para llamar a OpenAI. El permiso debe cerrarse al terminar
+     * la llamada (try-with-resources).
+     *
+     * @param user El usuario para el que se hace la llamada
+     * @return El permiso concedido
+     * @throws RejectedExecutionException si la espera supera el máximo
+     */
+    public Permit acquire(User user) {
+        long requestedAt = System.nanoTime();
+        Waiter waiter;
+
+        synchronized (this) {
+            if (inFlight < maxInFlight && queued == 0) {
+                return grant(requestedAt);
+            }
+
+            if (averageCallNanos * (queued / maxInFlight + 1) > maxWaitNanos) {
+                predictedRejections.increment();
+                throw saturated();
+            }
+
+            waiter = new Waiter(requestedAt);
+            queues.computeIfAbsent(user.getId(), id -> new ArrayDeque<>()).add(waiter);
+            queued++;
+        }
+
+        try {
+            return waiter.permit.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            Permit permit = withdraw(user.getId(), waiter);
+            if (permit != null) {
+                return permit;
+            }
+            timeoutRejections.increment();
+            throw saturated();
+        } catch (InterruptedException e) {
+            Permit permit = withdraw(user.getId(), waiter);
+            if (permit != null) {
+                permit.close();
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Llamada a OpenAI interrumpida");
+        } catch (ExecutionException e) {
+            // El futuro solo se completa con un permiso
+            throw new IllegalStateException(e);
+        }
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return queued;
+    }
+
+    private Permit grant(long requestedAt) {
+        inFlight++;
+        long now = System.nanoTime();
+        queueWait.record(now - requestedAt, TimeUnit.NANOSECONDS);
+        return new Permit(now);
+    }
+
+    /**
+     * Saca de la cola una espera que ha caducado. Si el permiso se concedió
+     * justo a la vez, lo devuelve para no perderlo.
+     */
+    private synchronized Permit withdraw(Long userId, Waiter waiter) {
+        if (waiter.permit.isDone()) {
+            return waiter.permit.getNow(null);
+        }
+
+        Deque<Waiter> queue = queues.get(userId);
+        if (queue != null && queue.remove(waiter)) {
+            queued--;
+            if (queue.isEmpty()) {
+                queues.remove(userId);
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(long durationNanos) {
+        inFlight--;
+        averageCallNanos = averageCallNanos == 0 ? durationNanos
+                : DURATION_SMOOTHING * durationNanos + (1 - DURATION_SMOOTHING) * averageCallNanos;
+
+        // Conceder los permisos libres por turnos: el usuario atendido pasa al final
+        while (inFlight < maxInFlight && queued > 0) {
+            Iterator<Map.Entry<Long, Deque<Waiter>>> turn = queues.entrySet().iterator();
+            Map.Entry<Long, Deque<Waiter>> next = turn.next();
+            Waiter waiter = next.getValue().poll();
+            turn.remove();
+            if (!next.getValue().isEmpty()) {
+                queues.put(next.getKey(), next.getValue());
+            }
+            queued--;
+
+            waiter.permit.complete(grant(waiter.requestedAt));
+        }
+    }
+
+    private RejectedExecutionException saturated() {
+        return new RejectedExecutionException("Demasiadas llamadas a OpenAI en curso");
+    }
+
+    /**
+     * Permiso para una llamada a OpenAI. Cerrarlo más de una vez no tiene efecto.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final long startedAt;
+        private boolean closed;
+
+        private Permit(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void close() {
+            synchronized (OpenAiCallGovernor.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(System.nanoTime() - startedAt);
+        }
+    }
+
+    private static final class Waiter {
+
+        private final long requestedAt;
+        private final CompletableFuture<Permit> permit = new CompletableFuture<>();
+
+        Waiter(long requestedAt) {
+            this.requestedAt = requestedAt;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.nextread.services;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Reintentos de las llamadas a OpenAI ante errores 429 y 5xx.
+ *
+ * La espera entre intentos es la que indica OpenAI (Retry-After, retry-after-ms
+ * o x-ratelimit-reset-*) o, si no la indica, un backoff exponencial con jitter.
+ * Cada reintento consume un token de un presupuesto compartido por todo el
+ * proceso que se rellena con el tiempo, para que una caída parcial de OpenAI
+ * no provoque una avalancha de reintentos.
+ *
+ * También guarda las cabeceras x-ratelimit-remaining-* de la última respuesta
+ * y, si ya no quedan peticiones o tokens, espera al reinicio del límite antes
+ * de llamar en lugar de recibir el 429.
+ */
+@Service
+public class OpenAiRetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double budgetCapacity;
+    private final double budgetRefillPerSecond;
+
+    // Presupuesto de reintentos (token bucket)
+    private double budgetTokens;
+    private long budgetRefilledAt;
+
+    // Últimos límites informados por OpenAI (-1 si se desconocen)
+    private long remainingRequests = -1;
+    private long remainingTokens = -1;
+    private long requestsResetAt;
+    private long tokensResetAt;
+
+    private final Counter rateLimitedRetries;
+    private final Counter serverErrorRetries;
+    private final Counter budgetExhausted;
+    private final Timer pacingWait;
+
+    @Autowired
+    public OpenAiRetryPolicy(MeterRegistry meterRegistry,
+            @Value("${app.openai.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.openai.retry.base-delay-ms:500}") long baseDelayMs,
+            @Value("${app.openai.retry.max-delay-ms:10000}") long maxDelayMs,
+            @Value("${app.openai.retry.budget.capacity:20}") double budgetCapacity,
+            @Value("${app.openai.retry.budget.refill-per-second:0.5}") double budgetRefillPerSecond) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.budgetCapacity = budgetCapacity;
+        this.budgetRefillPerSecond = budgetRefillPerSecond;
+        this.budgetTokens = budgetCapacity;
+        this.budgetRefilledAt = System.nanoTime();
+
+        this.rateLimitedRetries = Counter.builder("recommendations.openai.retries")
+                .description("Reintentos de llamadas a OpenAI")
+                .tag("status", "429")
+                .register(meterRegistry);
+        this.serverErrorRetries = Counter.builder("recommendations.openai.retries")
+                .description("Reintentos de llamadas a OpenAI")
+                .tag("status", "5xx")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("recommendations.openai.retry.budget.exhausted")
+                .description("Errores de OpenAI no reintentados por falta de presupuesto")
+                .register(meterRegistry);
+        this.pacingWait = Timer.builder("recommendations.openai.pacing.wait")
+                .description("Espera hasta el reinicio del límite de OpenAI antes de llamar")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.openai.ratelimit.remaining", this, policy -> policy.remaining(true))
+                .description("Peticiones restantes según x-ratelimit-remaining-requests")
+                .tag("type", "requests")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.openai.ratelimit.remaining", this, policy -> policy.remaining(false))
+                .description("Tokens restantes según x-ratelimit-remaining-tokens")
+                .tag("type", "tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta una llamada a OpenAI reintentándola ante 429 y 5xx.
+     *
+     * @param estimatedTokens Tokens que consumirá la llamada (prompt más
+     *                        máximo de salida), para esperar si no quedan
+     * @param call            La llamada; debe registrar las cabeceras de la
+     *                        respuesta con {@link #recordRateLimits}
+     * @return El resultado de la llamada
+     */
+    public <T> T execute(int estimatedTokens, Supplier<T> call) {
+        for (int attempt = 1;; attempt++) {
+            awaitRateLimit(estimatedTokens);
+
+            try {
+                return call.get();
+            } catch (HttpStatusCodeException e) {
+                recordRateLimits(e.getResponseHeaders());
+
+                long delayMs = retryDelayMs(e, attempt);
+                if (delayMs < 0) {
+                    throw e;
+                }
+                if (!tryAcquireRetry()) {
+                    budgetExhausted.increment();
+                    throw e;
+                }
+
+                (e.getStatusCode().value() == 429 ? rateLimitedRetries : serverErrorRetries).increment();
+                System.out.println("⚠️ [OpenAiRetryPolicy] OpenAI respondió " + e.getStatusCode().value()
+                        + ", reintento " + attempt + " en " + delayMs + " ms");
+                sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * Guarda los límites restantes que informa OpenAI en una respuesta.
+     *
+     * @param headers Cabeceras de la respuesta (puede ser null)
+     */
+    public void recordRateLimits(HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            Long requests = parseLong(headers.getFirst("x-ratelimit-remaining-requests"));
+            if (requests != null) {
+                remainingRequests = requests;
+                requestsResetAt = now + TimeUnit.MILLISECONDS.toNanos(
+                        Math.max(0, parseDurationMs(headers.getFirst("x-ratelimit-reset-requests"))));
+            }
+
+            Long tokens = parseLong(headers.getFirst("x-ratelimit-remaining-tokens"));
+            if (tokens != null) {
+                remainingTokens = tokens;
+                tokensResetAt = now + TimeUnit.MILLISECONDS.toNanos(
+                        Math.max(0, parseDurationMs(headers.getFirst("x-ratelimit-reset-tokens"))));
+            }
+        }
+    }
+
+    /**
+     * Espera hasta el reinicio del límite si la última respuesta indicó que no
+     * quedan peticiones o tokens suficientes. La espera no supera el máximo
+     * entre reintentos; si el límite sigue agotado, el 429 lo gestiona el
+     * reintento.
+     */
+    private void awaitRateLimit(int estimatedTokens) {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long requestsWait = remainingRequests == 0 ? requestsResetAt - now : 0;
+            long tokensWait = remainingTokens >= 0 && remainingTokens < estimatedTokens ? tokensResetAt - now : 0;
+            waitNanos = Math.min(Math.max(requestsWait, tokensWait), TimeUnit.MILLISECONDS.toNanos(maxDelayMs));
+        }
+
+        if (waitNanos > 0) {
+            pacingWait.record(waitNanos, TimeUnit.NANOSECONDS);
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        }
+    }
+
+    /**
+     * Espera antes del siguiente intento, o -1 si el error no se reintenta.
+     */
+    long retryDelayMs(HttpStatusCodeException e, int attempt) {
+        int status = e.getStatusCode().value();
+        boolean retryable = status == 429 || e.getStatusCode().is5xxServerError();
+        // Sin crédito en la cuenta reintentar no sirve de nada
+        if (!retryable || attempt >= maxAttempts || e.getResponseBodyAsString().contains("insufficient_quota")) {
+            return -1;
+        }
+
+        long jitter = ThreadLocalRandom.current().nextLong(baseDelayMs + 1);
+        long serverDelay = serverDelayMs(e.getResponseHeaders(), status);
+        long delay = serverDelay >= 0
+                ? serverDelay + jitter
+                // Backoff exponencial con jitter completo
+                : ThreadLocalRandom.current().nextLong(Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20)) + 1);
+
+        // Si OpenAI pide esperar más que el máximo, se falla ya
+        return delay <= maxDelayMs ? delay : -1;
+    }
+
+    /**
+     * Espera que indica OpenAI en las cabeceras, o -1 si no indica ninguna.
+     */
+    private long serverDelayMs(HttpHeaders headers, int status) {
+        if (headers == null) {
+            return -1;
+        }
+
+        Long retryAfterMs = parseLong(headers.getFirst("retry-after-ms"));
+        if (retryAfterMs != null) {
+            return retryAfterMs;
+        }
+
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            Long seconds = parseLong(retryAfter);
+            if (seconds != null) {
+                return TimeUnit.SECONDS.toMillis(seconds);
+            }
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+            } catch (DateTimeParseException ignored) {
+                // Se prueba con las cabeceras de límite
+            }
+        }
+
+        if (status != 429) {
+            return -1;
+        }
+
+        // Límite agotado: esperar a que se reinicie el que está a 0
+        long delay = -1;
+        if ("0".equals(headers.getFirst("x-ratelimit-remaining-requests"))) {
+            delay = Math.max(delay, parseDurationMs(headers.getFirst("x-ratelimit-reset-requests")));
+        }
+        if ("0".equals(headers.getFirst("x-ratelimit-remaining-tokens"))) {
+            delay = Math.max(delay, parseDurationMs(headers.getFirst("x-ratelimit-reset-tokens")));
+        }
+        return delay;
+    }
+
+    private synchronized boolean tryAcquireRetry() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - budgetRefilledAt) / 1e9;
+        budgetTokens = Math.min(budgetCapacity, budgetTokens + elapsedSeconds * budgetRefillPerSecond);
+        budgetRefilledAt = now;
+
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens--;
+        return true;
+    }
+
+    private synchronized long remaining(boolean requests) {
+        return requests ? remainingRequests : remainingTokens;
+    }
+
+    void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Llamada a OpenAI interrumpida");
+        }
+    }
+
+    /**
+     * Convierte una duración de las cabeceras x-ratelimit-reset-* ("20ms",
+     * "1.5s", "6m0s", "1h2m3s") a milisegundos.
+     *
+     * @return Los milisegundos, o -1 si el formato no es válido
+     */
+    static long parseDurationMs(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+
+        double totalMs = 0;
+        int i = 0;
+        while (i < value.length()) {
+            int numberStart = i;
+            while (i < value.length() && (Character.isDigit(value.charAt(i)) || value.charAt(i) == '.')) {
+                i++;
+            }
+            int unitStart = i;
+            while (i < value.length() && Character.isLetter(value.charAt(i))) {
+                i++;
+            }
+            if (numberStart == unitStart || unitStart == i) {
+                return -1;
+            }
+
+            double amount;
+            try {
+                amount = Double.parseDouble(value.substring(numberStart, unitStart));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+
+            switch (value.substring(unitStart, i)) {
+                case "h" -> totalMs += amount * 3_600_000;
+                case "m" -> totalMs += amount * 60_000;
+                case "s" -> totalMs += amount * 1_000;
+                case "ms" -> totalMs += amount;
+                default -> {
+                    return -1;
+                }
+            }
+        }
+        return (long) Math.ceil(totalMs);
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
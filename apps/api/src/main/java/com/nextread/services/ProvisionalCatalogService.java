@@ -0,0 +1,122 @@
+package com.nextread.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.nextread.entities.Book;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Catálogo provisional: los resultados completos de Google Books se encolan en
+ * memoria y se vuelcan periódicamente por lotes a las tablas books y author
+ * marcados como provisionales (no confirmados por ningún usuario). Así las
+ * búsquedas repetidas se resuelven en la BD local sin volver a Google Books.
+ *
+ * La cola está acotada: si se llena, los libros nuevos se descartan y volverán
+ * a encolarse en una búsqueda posterior.
+ */
+@Service
+public class ProvisionalCatalogService {
+
+    private final BookService bookService;
+    private final BlockingQueue<Book> queue;
+
+    // ISBN13 ya encolados y pendientes de volcar, para no repetirlos en la cola
+    private final Set<String> pendingIsbn13 = ConcurrentHashMap.newKeySet();
+
+    private final Counter queuedBooks;
+    private final Counter droppedBooks;
+    private final Counter persistedBooks;
+    private final Counter failedBooks;
+
+    @Value("${app.books.provisional.batch-size:50}")
+    private int batchSize;
+
+    @Autowired
+    public ProvisionalCatalogService(@Lazy BookService bookService, MeterRegistry meterRegistry,
+            @Value("${app.books.provisional.queue-capacity:1000}") int queueCapacity) {
+        this.bookService = bookService;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        this.queuedBooks = Counter.builder("books.provisional.queued")
+                .description("Libros de Google Books encolados para el catálogo provisional")
+                .register(meterRegistry);
+        this.droppedBooks = Counter.builder("books.provisional.dropped")
+                .description("Libros descartados por tener la cola del catálogo provisional llena")
+                .register(meterRegistry);
+        this.persistedBooks = Counter.builder("books.provisional.persisted")
+                .description("Libros guardados como provisionales en la BD local")
+                .register(meterRegistry);
+        this.failedBooks = Counter.builder("books.provisional.failed")
+                .description("Libros de lotes que no se pudieron guardar")
+                .register(meterRegistry);
+        Gauge.builder("books.provisional.pending", queue, BlockingQueue::size)
+                .description("Libros en cola pendientes de volcar")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola libros de Google Books para guardarlos como provisionales. No
+     * bloquea: los libros sin ISBN13, ya encolados o que no caben en la cola se
+     * ignoran.
+     *
+     * @param books Libros no persistidos con datos completos
+     */
+    public void enqueue(List<Book> books) {
+        for (Book book : books) {
+            String isbn13 = book.getIsbn13();
+            if (book.getId() != null || isbn13 == null || !pendingIsbn13.add(isbn13)) {
+                continue;
+            }
+
+            if (queue.offer(book)) {
+                queuedBooks.increment();
+            } else {
+                pendingIsbn13.remove(isbn13);
+                droppedBooks.increment();
+            }
+        }
+    }
+
+    /**
+     * Vacía la cola en lotes de tamaño acotado. Un lote que falla (por ejemplo,
+     * porque otro usuario guardó el mismo ISBN a la vez) se descarta sin afectar
+     * a los demás.
+     *
+     * @return Número de libros guardados
+     */
+    public int flush() {
+        int persisted = 0;
+        List<Book> batch = new ArrayList<>(batchSize);
+
+        while (queue.drainTo(batch, batchSize) > 0) {
+            batch.forEach(book -> pendingIsbn13.remove(book.getIsbn13()));
+
+            try {
+                int saved = bookService.saveProvisionalBooks(batch);
+                persistedBooks.increment(saved);
+                persisted += saved;
+            } catch (RuntimeException e) {
+                failedBooks.increment(batch.size());
+                System.out.println("⚠️ [ProvisionalCatalogService] No se pudo guardar un lote de "
+                        + batch.size() + " libros: " + e.getMessage());
+            }
+
+            batch.clear();
+        }
+
+        return persisted;
+    }
+}
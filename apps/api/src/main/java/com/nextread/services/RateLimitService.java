@@ -1,13 +1,17 @@
 package com.nextread.services;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.nextread.dto.TokenUsageDTO;
 import com.nextread.entities.RecommendationRequest;
 import com.nextread.entities.User;
 import com.nextread.repositories.RecommendationRequestRepository;
@@ -23,6 +27,10 @@ public class RateLimitService {
     @Value("${app.rate-limit.enabled:false}")
     private boolean rateLimitEnabled;
 
+    // Tokens de OpenAI (entrada más salida) por usuario y día; 0 = sin límite
+    @Value("${app.rate-limit.tokens-per-day:0}")
+    private long maxTokensPerDay;
+
     @Autowired
     public RateLimitService(RecommendationRequestRepository recommendationRequestRepository) {
         this.recommendationRequestRepository = recommendationRequestRepository;
@@ -40,7 +48,8 @@ public class RateLimitService {
 
         if (existingRequest.isPresent()) {
             RecommendationRequest request = existingRequest.get();
-            return request.getRequestCount() < maxRecommendationsPerDay;
+            return request.getRequestCount() < maxRecommendationsPerDay
+                    && (maxTokensPerDay <= 0 || request.getTotalTokens() < maxTokensPerDay);
         }
 
         return true;
@@ -83,12 +92,46 @@ public class RateLimitService {
 
         if (existingRequest.isPresent()) {
             RecommendationRequest request = existingRequest.get();
+            if (maxTokensPerDay > 0 && request.getTotalTokens() >= maxTokensPerDay) {
+                return 0;
+            }
             return Math.max(0, maxRecommendationsPerDay - request.getRequestCount());
         }
 
         return maxRecommendationsPerDay;
     }
 
+    /**
+     * Suma al día de hoy del usuario el consumo de una llamada a OpenAI. Se
+     * registra aunque el rate limiting esté desactivado para poder ver quién
+     * consume los tokens. Va en su propia transacción para que un error al
+     * guardarlo no marque como rollback-only la de la generación.
+     *
+     * @param user             El usuario para el que se hizo la llamada
+     * @param promptTokens     Tokens de entrada informados por OpenAI
+     * @param cachedTokens     Parte de los de entrada servida desde caché
+     * @param completionTokens Tokens de salida informados por OpenAI
+     * @param latencyMs        Duración de la llamada
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recordUsage(User user, long promptTokens, long cachedTokens, long completionTokens,
+            long latencyMs) {
+        recommendationRequestRepository.addUsage(user.getId(), LocalDate.now(), maxRecommendationsPerDay,
+                promptTokens, cachedTokens, completionTokens, latencyMs);
+    }
+
+    /**
+     * Usuarios que más tokens de OpenAI han consumido en los últimos días.
+     *
+     * @param days  Días a considerar, incluido hoy
+     * @param limit Número máximo de usuarios
+     */
+    @Transactional(readOnly = true)
+    public List<TokenUsageDTO> getTopConsumers(int days, int limit) {
+        LocalDate since = LocalDate.now().minusDays(Math.max(1, days) - 1L);
+        return recommendationRequestRepository.findTopConsumers(since, PageRequest.of(0, Math.max(1, limit)));
+    }
+
     @Transactional
     public void cleanOldRequests() {
         LocalDate cutoffDate = LocalDate.now().minusDays(30);
@@ -0,0 +1,62 @@
+package com.nextread.services;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nextread.dto.GeneratedRecommendationDTO;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Caché de recomendaciones ya enriquecidas por usuario y huella de
+ * preferencias (ver
+ * {@link com.nextread.utils.fingerprints.PreferenceFingerprint}). Si el usuario
+ * vuelve a generar sin haber cambiado su encuesta, su biblioteca ni sus
+ * rechazos, se reutiliza el resultado anterior sin llamar a OpenAI ni a Google
+ * Books. Las entradas nunca se comparten entre usuarios.
+ */
+@Service
+public class RecommendationCacheService {
+
+    private final Cache<String, List<GeneratedRecommendationDTO>> recommendations;
+
+    @Autowired
+    public RecommendationCacheService(MeterRegistry meterRegistry,
+            @Value("${app.recommendations.cache.max-size:1000}") long maxSize,
+            @Value("${app.recommendations.cache.ttl-minutes:60}") long ttlMinutes) {
+        this.recommendations = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recommendations, "recommendations.generated");
+    }
+
+    /**
+     * @param key ID del usuario y huella de sus preferencias
+     * @return Las recomendaciones guardadas para esa clave, si las hay
+     */
+    public Optional<List<GeneratedRecommendationDTO>> find(String key) {
+        return Optional.ofNullable(recommendations.getIfPresent(key));
+    }
+
+    /**
+     * Guarda las recomendaciones de una clave. Las listas vacías no se guardan.
+     *
+     * @param key             ID del usuario y huella de sus preferencias
+     * @param recommendations Recomendaciones enriquecidas
+     */
+    public void store(String key, List<GeneratedRecommendationDTO> recommendations) {
+        if (!recommendations.isEmpty()) {
+            this.recommendations.put(key, List.copyOf(recommendations));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.nextread.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.entities.RecommendationInventory;
+import com.nextread.entities.User;
+import com.nextread.repositories.RecommendationInventoryRepository;
+import com.nextread.utils.normalizers.TitleNormalizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Inventario por usuario de recomendaciones enriquecidas que sobraron en
+ * generaciones anteriores. Cada generación pide al LLM más candidatos de los
+ * que entrega; los que se enriquecen y no se usan se guardan aquí para servir
+ * la siguiente petición sin llamadas externas.
+ *
+ * El inventario se asocia a la huella de encuesta y biblioteca (sin los
+ * rechazos, que cambian con cada generación): si cambia, el inventario deja de
+ * servir. Los títulos rechazados o ya en la biblioteca se descartan al servir.
+ */
+@Service
+public class RecommendationInventoryService {
+
+    private final RecommendationInventoryRepository recommendationInventoryRepository;
+    private final ObjectMapper objectMapper;
+    private final int maxPerUser;
+    private final Duration ttl;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter banked;
+
+    @Autowired
+    public RecommendationInventoryService(RecommendationInventoryRepository recommendationInventoryRepository,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.recommendations.inventory.max-per-user:12}") int maxPerUser,
+            @Value("${app.recommendations.inventory.ttl-hours:72}") long ttlHours) {
+        this.recommendationInventoryRepository = recommendationInventoryRepository;
+        this.objectMapper = objectMapper;
+        this.maxPerUser = maxPerUser;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.hits = Counter.builder("recommendations.inventory.requests")
+                .description("Generaciones servidas (hit) o no (miss) desde el inventario")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("recommendations.inventory.requests")
+                .description("Generaciones servidas (hit) o no (miss) desde el inventario")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.banked = Counter.builder("recommendations.inventory.banked")
+                .description("Recomendaciones enriquecidas guardadas en el inventario")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Saca del inventario count recomendaciones válidas, solo si hay suficientes.
+     * Por el camino elimina las que ya no sirven: de otra huella, caducadas,
+     * repetidas o con un título excluido.
+     *
+     * @param user           El usuario
+     * @param fingerprint    Huella actual de encuesta y biblioteca
+     * @param excludedTitles Títulos normalizados de la biblioteca y rechazados
+     * @param count          Recomendaciones necesarias
+     * @return Las recomendaciones, en orden de llegada al inventario, o una lista
+     *         vacía si no hay suficientes
+     */
+    @Transactional
+    public List<GeneratedRecommendationDTO> take(User user, String fingerprint, Set<String> excludedTitles,
+            int count) {
+        recommendationInventoryRepository.deleteByUserAndFingerprintNot(user, fingerprint);
+
+        Instant expiredBefore = Instant.now().minus(ttl);
+        Set<String> seen = new HashSet<>(excludedTitles);
+        List<RecommendationInventory> invalid = new ArrayList<>();
+        List<RecommendationInventory> taken = new ArrayList<>();
+        List<GeneratedRecommendationDTO> recommendations = new ArrayList<>();
+
+        for (RecommendationInventory entry : recommendationInventoryRepository
+                .findByUserAndFingerprintOrderByIdAsc(user, fingerprint)) {
+            boolean expired = entry.getCreatedAt() != null && entry.getCreatedAt().isBefore(expiredBefore);
+            GeneratedRecommendationDTO recommendation = expired || !seen.add(entry.getTitleKey()) ? null
+                    : read(entry);
+
+            if (recommendation == null) {
+                invalid.add(entry);
+            } else if (recommendations.size() < count) {
+                taken.add(entry);
+                recommendations.add(recommendation);
+            }
+        }
+
+        recommendationInventoryRepository.deleteAll(invalid);
+
+        if (recommendations.size() < count) {
+            misses.increment();
+            return List.of();
+        }
+
+        recommendationInventoryRepository.deleteAll(taken);
+        hits.increment();
+        return recommendations;
+    }
+
+    /**
+     * Guarda recomendaciones enriquecidas en el inventario del usuario, sin
+     * repetir títulos y sin superar el máximo por usuario.
+     *
+     * @param user            El usuario
+     * @param fingerprint     Huella de encuesta y biblioteca con la que se
+     *                        generaron
+     * @param recommendations Recomendaciones sobrantes
+     */
+    @Transactional
+    public void store(User user, String fingerprint, Collection<GeneratedRecommendationDTO> recommendations) {
+        List<RecommendationInventory> stock = recommendationInventoryRepository
+                .findByUserAndFingerprintOrderByIdAsc(user, fingerprint);
+        Set<String> stocked = stock.stream()
+                .map(RecommendationInventory::getTitleKey)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        List<RecommendationInventory> entries = new ArrayList<>();
+        for (GeneratedRecommendationDTO recommendation : recommendations) {
+            if (stock.size() + entries.size() >= maxPerUser) {
+                break;
+            }
+
+            String titleKey = TitleNormalizer.normalize(recommendation.getTitle());
+            if (!recommendation.isEnriched() || !stocked.add(titleKey)) {
+                continue;
+            }
+
+            try {
+                entries.add(RecommendationInventory.builder()
+                        .user(user)
+                        .fingerprint(fingerprint)
+                        .titleKey(titleKey)
+                        .payload(objectMapper.writeValueAsString(recommendation))
+                        .build());
+            } catch (JsonProcessingException e) {
+                System.out.println("⚠️ [RecommendationInventoryService] No se pudo guardar \""
+                        + recommendation.getTitle() + "\": " + e.getMessage());
+            }
+        }
+
+        if (!entries.isEmpty()) {
+            recommendationInventoryRepository.saveAll(entries);
+            banked.increment(entries.size());
+        }
+    }
+
+    /**
+     * Indica si quedan menos de count recomendaciones para la huella, contando
+     * también las que se descartarán al servir.
+     */
+    @Transactional(readOnly = true)
+    public boolean isLow(User user, String fingerprint, int count) {
+        return recommendationInventoryRepository.countByUserAndFingerprint(user, fingerprint) < count;
+    }
+
+    @Transactional
+    public void cleanExpired() {
+        recommendationInventoryRepository.deleteByCreatedAtBefore(Instant.now().minus(ttl));
+    }
+
+    private GeneratedRecommendationDTO read(RecommendationInventory entry) {
+        try {
+            return objectMapper.readValue(entry.getPayload(), GeneratedRecommendationDTO.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
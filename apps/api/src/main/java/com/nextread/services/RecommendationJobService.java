@@ -0,0 +1,152 @@
+package com.nextread.services;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.dto.RecommendationJobDTO;
+import com.nextread.dto.RecommendationJobDTO.Status;
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Generación de recomendaciones en segundo plano. La petición HTTP solo encola
+ * el trabajo y devuelve su ID; un pool acotado ejecuta
+ * {@link RecommendationService#generateRecommendations(User)} y el cliente
+ * consulta el resultado por polling. Así los hilos de Tomcat no quedan
+ * bloqueados mientras dura la llamada al LLM.
+ *
+ * Los trabajos se guardan en memoria y caducan un tiempo después de su último
+ * cambio de estado.
+ */
+@Service
+public class RecommendationJobService {
+
+    private final RecommendationService recommendationService;
+    private final Executor recommendationJobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, RecommendationJobDTO> jobs;
+
+    private final AtomicInteger queuedJobs = new AtomicInteger();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final Timer queueWait;
+    private final Counter rejectedJobs;
+
+    @Autowired
+    public RecommendationJobService(RecommendationService recommendationService,
+            @Qualifier("recommendationJobExecutor") Executor recommendationJobExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${app.recommendations.jobs.ttl-minutes:30}") long jobTtlMinutes) {
+        this.recommendationService = recommendationService;
+        this.recommendationJobExecutor = recommendationJobExecutor;
+        this.meterRegistry = meterRegistry;
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(jobTtlMinutes, TimeUnit.MINUTES)
+                .build();
+
+        Gauge.builder("recommendations.jobs.queued", queuedJobs, AtomicInteger::get)
+                .description("Trabajos de recomendación esperando un hilo libre")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.jobs.running", runningJobs, AtomicInteger::get)
+                .description("Trabajos de recomendación en ejecución")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("recommendations.jobs.queue.wait")
+                .description("Tiempo que un trabajo pasa en cola antes de ejecutarse")
+                .register(meterRegistry);
+        this.rejectedJobs = Counter.builder("recommendations.jobs.rejected")
+                .description("Trabajos rechazados por tener la cola llena")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola la generación de recomendaciones para el usuario.
+     *
+     * @param user El usuario autenticado
+     * @return El trabajo creado, en estado PENDING
+     * @throws RejectedExecutionException si la cola de trabajos está llena
+     */
+    public RecommendationJobDTO submit(User user) {
+        RecommendationJobDTO job = RecommendationJobDTO.builder()
+                .jobId(UUID.randomUUID().toString())
+                .status(Status.PENDING)
+                .createdAt(Instant.now())
+                .userId(user.getId())
+                .build();
+        jobs.put(job.getJobId(), job);
+
+        long submittedAt = System.nanoTime();
+        queuedJobs.incrementAndGet();
+        try {
+            recommendationJobExecutor.execute(() -> run(job, user, submittedAt));
+        } catch (RejectedExecutionException e) {
+            queuedJobs.decrementAndGet();
+            rejectedJobs.increment();
+            jobs.invalidate(job.getJobId());
+            throw e;
+        }
+
+        return job;
+    }
+
+    /**
+     * Busca un trabajo del usuario.
+     *
+     * @param jobId El ID del trabajo
+     * @param user  El usuario autenticado
+     * @return El trabajo, o vacío si no existe, caducó o es de otro usuario
+     */
+    public Optional<RecommendationJobDTO> findJob(String jobId, User user) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId))
+                .filter(job -> job.getUserId().equals(user.getId()));
+    }
+
+    private void run(RecommendationJobDTO job, User user, long submittedAt) {
+        queuedJobs.decrementAndGet();
+        runningJobs.incrementAndGet();
+        queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        jobs.put(job.getJobId(), job.toBuilder().status(Status.RUNNING).build());
+
+        Status outcome = Status.FAILED;
+        try {
+            List<GeneratedRecommendationDTO> recommendations = recommendationService
+                    .generateRecommendations(user);
+            jobs.put(job.getJobId(), job.toBuilder()
+                    .status(Status.COMPLETED)
+                    .recommendations(recommendations)
+                    .completedAt(Instant.now())
+                    .build());
+            outcome = Status.COMPLETED;
+        } catch (RuntimeException e) {
+            jobs.put(job.getJobId(), job.toBuilder()
+                    .status(Status.FAILED)
+                    .error(e.getMessage())
+                    .completedAt(Instant.now())
+                    .build());
+        } finally {
+            runningJobs.decrementAndGet();
+            // Latencia total del trabajo (cola + ejecución) por resultado
+            Timer.builder("recommendations.jobs.latency")
+                    .description("Tiempo desde que se encola un trabajo hasta que termina")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.nextread.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.nextread.entities.Book;
+import com.nextread.entities.User;
+import com.nextread.events.PreferencesChangedEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Pre-genera en segundo plano las recomendaciones de un usuario cuando cambia
+ * su encuesta o su biblioteca, y las deja en su inventario para que la
+ * siguiente petición se sirva sin llamar a OpenAI.
+ *
+ * Los cambios seguidos de un mismo usuario se agrupan: la generación se lanza
+ * cuando pasa debounce-ms sin cambios nuevos. Las generaciones se ejecutan en
+ * un pool acotado y, si un usuario ya tiene una en curso, la nueva se vuelve a
+ * programar en lugar de ejecutarse a la vez.
+ *
+ * No se pre-genera durante el onboarding (encuesta sin completar) ni para
+ * usuarios que ya no pueden generar hoy según el mismo límite diario que
+ * /generate.
+ */
+@Service
+public class RecommendationPrefetchService {
+
+    private final ChatGPTService chatGPTService;
+    private final RecommendationService recommendationService;
+    private final SurveyService surveyService;
+    private final RateLimitService rateLimitService;
+    private final Executor prefetchExecutor;
+    private final boolean enabled;
+    private final long debounceMs;
+
+    // Último cambio programado por usuario; solo se ejecuta el más reciente
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    private final Counter completed;
+    private final Counter skipped;
+    private final Counter rejected;
+    private final Counter failed;
+    private final Counter debounced;
+
+    @Autowired
+    public RecommendationPrefetchService(ChatGPTService chatGPTService,
+            RecommendationService recommendationService,
+            SurveyService surveyService,
+            RateLimitService rateLimitService,
+            @Qualifier("recommendationPrefetchExecutor") Executor prefetchExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${app.recommendations.prefetch.enabled:true}") boolean enabled,
+            @Value("${app.recommendations.prefetch.debounce-ms:5000}") long debounceMs) {
+        this.chatGPTService = chatGPTService;
+        this.recommendationService = recommendationService;
+        this.surveyService = surveyService;
+        this.rateLimitService = rateLimitService;
+        this.prefetchExecutor = prefetchExecutor;
+        this.enabled = enabled;
+        this.debounceMs = debounceMs;
+        this.completed = runs(meterRegistry, "completed");
+        this.skipped = runs(meterRegistry, "skipped");
+        this.rejected = runs(meterRegistry, "rejected");
+        this.failed = runs(meterRegistry, "failed");
+        this.debounced = Counter.builder("recommendations.prefetch.debounced")
+                .description("Pre-generaciones sustituidas por un cambio posterior")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Programa la pre-generación cuando se confirma la transacción que cambió
+     * las preferencias, para que la generación lea el estado nuevo.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPreferencesChanged(PreferencesChangedEvent event) {
+        User user = event.getUser();
+
+        // Durante el onboarding la generación fallaría por encuesta incompleta
+        if (!enabled || !surveyService.hasCompletedSurvey(user)) {
+            return;
+        }
+
+        // Mismo límite diario que /generate; se vuelve a comprobar al ejecutarla
+        if (!rateLimitService.canMakeRequest(user)) {
+            skipped.increment();
+            return;
+        }
+
+        schedule(user);
+    }
+
+    private void schedule(User user) {
+        long version = versions.merge(user.getId(), 1L, Long::sum);
+        CompletableFuture.runAsync(() -> submit(user, version),
+                CompletableFuture.delayedExecutor(debounceMs, TimeUnit.MILLISECONDS));
+    }
+
+    private void submit(User user, long version) {
+        // Si hubo otro cambio durante la espera, lo lanza su propia programación
+        if (!versions.remove(user.getId(), version)) {
+            debounced.increment();
+            return;
+        }
+
+        try {
+            prefetchExecutor.execute(() -> prefetch(user));
+        } catch (RejectedExecutionException e) {
+            // Sin pre-generación el usuario genera al pedirlas, como antes
+            rejected.increment();
+        }
+    }
+
+    // Visible para el test de integración, que la lanza sin debounce ni pool
+    void prefetch(User user) {
+        try {
+            if (!rateLimitService.canMakeRequest(user)) {
+                skipped.increment();
+                return;
+            }
+
+            List<Book> rejectedBooks = recommendationService.getRecentlyRejectedBooks(user, 30);
+            if (chatGPTService.prefillInventory(user, rejectedBooks)) {
+                completed.increment();
+            } else {
+                // Hay otra generación en curso con las preferencias anteriores
+                schedule(user);
+            }
+        } catch (Exception e) {
+            failed.increment();
+            System.out.println("⚠️ [RecommendationPrefetchService] Error al pre-generar recomendaciones del usuario "
+                    + user.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private static Counter runs(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("recommendations.prefetch.runs")
+                .description("Pre-generaciones de recomendaciones en segundo plano")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -4,6 +4,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
@@ -48,10 +49,14 @@ public class RecommendationService {
         List<Recommendation> rejectedRecommendations = recommendationRepository
                 .findByRecommendedUserAndStatusAndCreatedAtAfter(user, RecommendationStatus.REJECTED, thresholdDate);
 
-        return rejectedRecommendations.stream()
+        List<Book> rejectedBooks = rejectedRecommendations.stream()
                 .map(Recommendation::getRecommendedBook)
                 .distinct()
                 .collect(Collectors.toList());
+
+        // Se inicializan aquí porque la generación en streaming los usa fuera de la transacción
+        rejectedBooks.forEach(Hibernate::initialize);
+        return rejectedBooks;
     }
 
     /**
@@ -71,30 +76,7 @@ public class RecommendationService {
             List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(user, rejectedBooks);
 
             // Guardar automáticamente las recomendaciones generadas
-            if (result != null && !result.isEmpty()) {
-                for (GeneratedRecommendationDTO recommendation : result) {
-                    try {
-                        // Buscar o crear el libro usando BookService
-                        Book book = bookService.findOrCreateBookFromRecommendation(recommendation);
-
-                        if (book != null) {
-                            // Verificar que no exista ya una recomendación para este libro y usuario
-                            if (!recommendationExists(user, book)) {
-                                // Crear y guardar la recomendación usando el Builder de la entidad
-                                Recommendation savedRecommendation = Recommendation.builder()
-                                        .recommendedUser(user)
-                                        .recommendedBook(book)
-                                        .reason(recommendation.getReason())
-                                        .build();
-
-                                recommendationRepository.save(savedRecommendation);
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Continuar con las siguientes recomendaciones si hay error
-                    }
-                }
-            }
+            saveGeneratedRecommendations(user, result);
 
             return result;
         } catch (Exception e) {
@@ -102,6 +84,43 @@ public class RecommendationService {
         }
     }
 
+    /**
+     * Guarda las recomendaciones generadas que aún no existan para el usuario,
+     * creando los libros que falten en la BD local.
+     * 
+     * @param user   El usuario autenticado
+     * @param result Recomendaciones enriquecidas generadas por ChatGPT
+     */
+    @Transactional
+    public void saveGeneratedRecommendations(User user, List<GeneratedRecommendationDTO> result) {
+        if (result == null || result.isEmpty()) {
+            return;
+        }
+
+        for (GeneratedRecommendationDTO recommendation : result) {
+            try {
+                // Buscar o crear el libro usando BookService
+                Book book = bookService.findOrCreateBookFromRecommendation(recommendation);
+
+                if (book != null) {
+                    // Verificar que no exista ya una recomendación para este libro y usuario
+                    if (!recommendationExists(user, book)) {
+                        // Crear y guardar la recomendación usando el Builder de la entidad
+                        Recommendation savedRecommendation = Recommendation.builder()
+                                .recommendedUser(user)
+                                .recommendedBook(book)
+                                .reason(recommendation.getReason())
+                                .build();
+
+                        recommendationRepository.save(savedRecommendation);
+                    }
+                }
+            } catch (Exception e) {
+                // Continuar con las siguientes recomendaciones si hay error
+            }
+        }
+    }
+
     /**
      * Obtiene todas las recomendaciones de un usuario.
      * 
@@ -0,0 +1,155 @@
+package com.nextread.services;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.entities.Book;
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Generación de recomendaciones en streaming (Server-Sent Events). La
+ * completion de OpenAI se lee en streaming y cada recomendación se envía al
+ * cliente en cuanto está enriquecida, sin esperar a las demás.
+ *
+ * Eventos emitidos:
+ * - recommendation: una recomendación enriquecida
+ * - complete: fin de la generación, con el número de recomendaciones enviadas
+ * - error: la generación falló, con el mensaje de error
+ */
+@Service
+public class RecommendationStreamService {
+
+    private final RecommendationService recommendationService;
+    private final ChatGPTService chatGPTService;
+    private final Executor recommendationJobExecutor;
+    private final Timer firstRecommendationLatency;
+    private final Timer totalLatency;
+
+    @Value("${app.recommendations.stream-timeout-ms:120000}")
+    private long streamTimeoutMs;
+
+    @Autowired
+    public RecommendationStreamService(RecommendationService recommendationService,
+            ChatGPTService chatGPTService,
+            @Qualifier("recommendationJobExecutor") Executor recommendationJobExecutor,
+            MeterRegistry meterRegistry) {
+        this.recommendationService = recommendationService;
+        this.chatGPTService = chatGPTService;
+        this.recommendationJobExecutor = recommendationJobExecutor;
+        this.firstRecommendationLatency = Timer.builder("recommendations.stream.first")
+                .description("Tiempo hasta enviar la primera recomendación en streaming")
+                .register(meterRegistry);
+        this.totalLatency = Timer.builder("recommendations.stream.total")
+                .description("Duración total de una generación en streaming")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lanza la generación en el pool de trabajos de recomendación y devuelve el
+     * emisor SSE por el que se irán enviando los resultados.
+     *
+     * @param user El usuario autenticado
+     * @return El emisor SSE de la generación
+     * @throws RejectedExecutionException si la cola de trabajos está llena
+     */
+    public SseEmitter streamRecommendations(User user) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        RecommendationStream stream = new RecommendationStream(emitter, System.nanoTime());
+        emitter.onTimeout(stream::close);
+        emitter.onError(error -> stream.close());
+
+        recommendationJobExecutor.execute(() -> generate(user, stream));
+
+        return emitter;
+    }
+
+    private void generate(User user, RecommendationStream stream) {
+        try {
+            List<Book> rejectedBooks = recommendationService.getRecentlyRejectedBooks(user, 30);
+            List<GeneratedRecommendationDTO> result = chatGPTService.streamRecommendations(user, rejectedBooks,
+                    stream::onRecommendation);
+
+            recommendationService.saveGeneratedRecommendations(user, result);
+            stream.complete(result.size());
+        } catch (RuntimeException e) {
+            stream.fail(e);
+        } finally {
+            totalLatency.record(System.nanoTime() - stream.startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Estado de una generación en curso. Los envíos se sincronizan porque
+     * SseEmitter no admite envíos concurrentes.
+     */
+    private final class RecommendationStream {
+
+        private final SseEmitter emitter;
+        private final long startedAt;
+
+        private boolean firstSent;
+        private boolean closed;
+
+        RecommendationStream(SseEmitter emitter, long startedAt) {
+            this.emitter = emitter;
+            this.startedAt = startedAt;
+        }
+
+        synchronized void onRecommendation(GeneratedRecommendationDTO recommendation) {
+            if (!firstSent) {
+                firstSent = true;
+                firstRecommendationLatency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+            send("recommendation", recommendation);
+        }
+
+        synchronized void complete(int count) {
+            send("complete", Map.of("count", count));
+            finish();
+        }
+
+        synchronized void fail(Exception e) {
+            String message = e.getMessage() != null ? e.getMessage() : "Error al generar recomendaciones";
+            send("error", Map.of("message", message));
+            finish();
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        private void finish() {
+            if (!closed) {
+                closed = true;
+                emitter.complete();
+            }
+        }
+
+        private void send(String event, Object data) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                // El cliente se ha desconectado: la generación sigue y se guarda igualmente
+                closed = true;
+            }
+        }
+    }
+}
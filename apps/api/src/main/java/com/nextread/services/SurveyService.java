@@ -5,6 +5,7 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import com.nextread.entities.Survey;
@@ -13,6 +14,7 @@ import com.nextread.dto.SurveyResponseDTO;
 import com.nextread.entities.Genre;
 import com.nextread.entities.PaceSelection;
 import com.nextread.entities.UserBook;
+import com.nextread.events.PreferencesChangedEvent;
 import com.nextread.repositories.SurveyRepository;
 import com.nextread.repositories.UserBookRepository;
 
@@ -24,14 +26,17 @@ public class SurveyService {
     private final SurveyRepository surveryRepository;
     private final UserBookRepository userBookRepository;
     private final GenreService genreService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public SurveyService(SurveyRepository surveryRepository,
             UserBookRepository userBookRepository,
-            GenreService genreService) {
+            GenreService genreService,
+            ApplicationEventPublisher eventPublisher) {
         this.surveryRepository = surveryRepository;
         this.userBookRepository = userBookRepository;
         this.genreService = genreService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -103,6 +108,9 @@ public class SurveyService {
 
         surveryRepository.save(survey);
 
+        // Pre-generar recomendaciones con las nuevas preferencias
+        eventPublisher.publishEvent(new PreferencesChangedEvent(user));
+
         return toSurveyDto(survey);
 
     }
@@ -116,6 +124,33 @@ public class SurveyService {
         return survey;
     }
 
+    /**
+     * Comprueba si el usuario ya ha terminado el onboarding, es decir, si tiene
+     * encuesta y ya no es la primera vez.
+     *
+     * @param user El usuario
+     * @return true si puede pedir recomendaciones
+     */
+    @Transactional(readOnly = true)
+    public boolean hasCompletedSurvey(User user) {
+        return surveryRepository.findByUser(user)
+                .map(survey -> !Boolean.TRUE.equals(survey.getFirstTime()))
+                .orElse(false);
+    }
+
+    /**
+     * Obtiene la encuesta del usuario con sus géneros ya cargados, para poder
+     * usarla desde hilos sin sesión de Hibernate.
+     *
+     * @param user El usuario
+     * @return La encuesta del usuario
+     */
+    @Transactional(readOnly = true)
+    public Survey findSurveyWithGenresByUser(User user) {
+        return surveryRepository.findWithGenresByUser(user)
+                .orElseThrow(() -> new RuntimeException("El usuario no tiene encuesta asociada"));
+    }
+
     /**
      * Verifica si el usuario ya tiene libros en su historial.
      * 
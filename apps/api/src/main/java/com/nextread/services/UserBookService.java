@@ -1,9 +1,11 @@
 package com.nextread.services;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
@@ -11,6 +13,7 @@ import com.nextread.dto.UserBookDTO;
 import com.nextread.entities.Book;
 import com.nextread.entities.User;
 import com.nextread.entities.UserBook;
+import com.nextread.events.PreferencesChangedEvent;
 import com.nextread.repositories.UserBookRepository;
 
 import org.springframework.transaction.annotation.Transactional;
@@ -23,14 +26,17 @@ public class UserBookService {
     private final BookService bookService;
     private final SurveyService surveyService;
     private final RecommendationService recommendationService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public UserBookService(UserBookRepository userBookRepository, BookService bookService,
-            SurveyService surveyService, @Lazy RecommendationService recommendationService) {
+            SurveyService surveyService, @Lazy RecommendationService recommendationService,
+            ApplicationEventPublisher eventPublisher) {
         this.userBookRepository = userBookRepository;
         this.bookService = bookService;
         this.surveyService = surveyService;
         this.recommendationService = recommendationService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -44,6 +50,18 @@ public class UserBookService {
         return userBookRepository.findByUser(user);
     }
 
+    /**
+     * Obtiene todos los libros del usuario con el libro ya cargado, para poder
+     * usarlos desde hilos sin sesión de Hibernate.
+     *
+     * @param user El usuario
+     * @return Lista de UserBook del usuario
+     */
+    @Transactional(readOnly = true)
+    public List<UserBook> findUserBooksWithBook(User user) {
+        return userBookRepository.findWithBookByUser(user);
+    }
+
     /**
      * Obtiene todos los libros del usuario autenticado como DTOs.
      * 
@@ -96,6 +114,11 @@ public class UserBookService {
     public UserBookDTO updateUserBook(Long id, User user, UserBookDTO userBookDTO) {
         UserBook userBook = findUserBookById(id, user);
 
+        // El estado y la valoración forman parte de las preferencias del usuario
+        boolean preferencesChanged = (userBookDTO.getRating() != null
+                && !Objects.equals(userBookDTO.getRating(), userBook.getRating()))
+                || (userBookDTO.getStatus() != null && userBookDTO.getStatus() != userBook.getStatus());
+
         // Actualizar solo los campos permitidos
         if (userBookDTO.getRating() != null) {
             userBook.setRating(userBookDTO.getRating());
@@ -111,6 +134,10 @@ public class UserBookService {
         }
 
         UserBook savedUserBook = userBookRepository.save(userBook);
+
+        if (preferencesChanged) {
+            eventPublisher.publishEvent(new PreferencesChangedEvent(user));
+        }
         return convertToDTO(savedUserBook);
     }
 
@@ -120,6 +147,9 @@ public class UserBookService {
         // Si no tiene id, viene de google y hay que añadirlo a la BD
         final Book bookToSave = book.getId() == null ? bookService.saveBook(book) : book;
 
+        // Si el libro era una entrada provisional del catálogo, queda confirmado
+        bookService.confirmBook(bookToSave.getId());
+
         // Verificar si el usuario ya tiene este libro
         List<UserBook> existingUserBooks = userBookRepository.findByUser(user);
         boolean bookAlreadyExists = existingUserBooks.stream()
@@ -152,6 +182,9 @@ public class UserBookService {
                     "⚠️ [UserBookService] No se pudo aceptar recomendación para libro: " + bookToSave.getTitle());
         }
 
+        // Libro nuevo en la biblioteca: pre-generar recomendaciones que lo tengan en cuenta
+        eventPublisher.publishEvent(new PreferencesChangedEvent(user));
+
         return updatedUserBook;
     }
 
@@ -165,6 +198,7 @@ public class UserBookService {
     public void deleteUserBook(Long id, User user) {
         UserBook userBook = findUserBookById(id, user);
         userBookRepository.delete(userBook);
+        eventPublisher.publishEvent(new PreferencesChangedEvent(user));
     }
 
     /**
@@ -0,0 +1,77 @@
+package com.nextread.utils.fingerprints;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+
+import com.nextread.entities.Survey;
+import com.nextread.entities.UserBook;
+import com.nextread.utils.normalizers.TitleNormalizer;
+
+/**
+ * Huella compacta de las preferencias que determinan el prompt de
+ * recomendaciones: ritmo, géneros, libros del usuario con su estado y
+ * valoración, y títulos rechazados. Dos llamadas con la misma huella generarían
+ * el mismo prompt.
+ *
+ * El orden de las colecciones no afecta al resultado.
+ */
+public final class PreferenceFingerprint {
+
+    private PreferenceFingerprint() {
+    }
+
+    /**
+     * Calcula la huella de preferencias.
+     *
+     * @param survey         La encuesta del usuario
+     * @param userBooks      Los libros del usuario
+     * @param rejectedTitles Títulos de los libros rechazados recientemente
+     * @return SHA-256 en hexadecimal de la forma canónica de las preferencias
+     */
+    public static String of(Survey survey, List<UserBook> userBooks, Collection<String> rejectedTitles) {
+        StringBuilder canonical = new StringBuilder();
+
+        canonical.append("pace=").append(survey.getPace()).append('\n');
+
+        canonical.append("genres=");
+        survey.getSelectedGenres().stream()
+                .map(genre -> String.valueOf(genre.getSelectedGenre()))
+                .sorted()
+                .distinct()
+                .forEach(genre -> canonical.append(genre).append(','));
+        canonical.append('\n');
+
+        canonical.append("books=");
+        userBooks.stream()
+                .map(userBook -> TitleNormalizer.normalize(userBook.getBook().getTitle())
+                        + '\u0000' + userBook.getStatus()
+                        + '\u0000' + Objects.toString(userBook.getRating(), ""))
+                .sorted()
+                .forEach(book -> canonical.append(book).append('\u0001'));
+        canonical.append('\n');
+
+        canonical.append("rejected=");
+        rejectedTitles.stream()
+                .map(TitleNormalizer::normalize)
+                .sorted()
+                .distinct()
+                .forEach(title -> canonical.append(title).append('\u0001'));
+
+        return sha256(canonical.toString());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM deben incluir SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
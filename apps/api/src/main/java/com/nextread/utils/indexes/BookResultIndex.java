@@ -0,0 +1,80 @@
+package com.nextread.utils.indexes;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.nextread.entities.Book;
+import com.nextread.utils.normalizers.TitleNormalizer;
+
+/**
+ * Índice hash de los resultados de una búsqueda para descartar duplicados en
+ * tiempo constante: por ISBN13 y, para libros sin ISBN13, por la clave
+ * compuesta título normalizado + primer autor normalizado.
+ *
+ * No es thread-safe.
+ */
+public final class BookResultIndex {
+
+    private final Set<String> isbns = new HashSet<>();
+    private final Set<String> titleAuthorKeys = new HashSet<>();
+
+    /**
+     * Indexa un libro sin comprobar si es duplicado (p. ej. resultados locales,
+     * que siempre se incluyen).
+     *
+     * @param book El libro a indexar
+     */
+    public void index(Book book) {
+        if (hasIsbn13(book)) {
+            isbns.add(book.getIsbn13());
+        }
+
+        String key = titleAuthorKey(book);
+        if (key != null) {
+            titleAuthorKeys.add(key);
+        }
+    }
+
+    /**
+     * Indexa el libro solo si no es duplicado de uno ya indexado.
+     *
+     * @param book El libro candidato
+     * @return true si el libro es nuevo y se ha indexado
+     */
+    public boolean addIfAbsent(Book book) {
+        boolean isDuplicate = hasIsbn13(book)
+                // Verificar por ISBN13
+                ? isbns.contains(book.getIsbn13())
+                // Sin ISBN13, verificar por título+autor
+                : titleAuthorKeys.contains(titleAuthorKey(book));
+
+        if (!isDuplicate) {
+            index(book);
+        }
+        return !isDuplicate;
+    }
+
+    private static boolean hasIsbn13(Book book) {
+        return book.getIsbn13() != null && !book.getIsbn13().trim().isEmpty();
+    }
+
+    /**
+     * Clave compuesta de deduplicación: título normalizado + primer autor
+     * normalizado.
+     *
+     * @param book El libro
+     * @return La clave o null si el libro no tiene autor
+     */
+    public static String titleAuthorKey(Book book) {
+        if (book.getAuthors() == null || book.getAuthors().isEmpty()) {
+            return null;
+        }
+
+        String firstAuthor = TitleNormalizer.normalize(book.getAuthors().get(0).getName());
+        if (firstAuthor.isEmpty()) {
+            return null;
+        }
+
+        return TitleNormalizer.normalize(book.getTitle()) + '\u0000' + firstAuthor;
+    }
+}
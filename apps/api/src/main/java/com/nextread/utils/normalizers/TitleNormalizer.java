@@ -0,0 +1,39 @@
+package com.nextread.utils.normalizers;
+
+public final class TitleNormalizer {
+
+    private TitleNormalizer() {
+    }
+
+    /**
+     * Normaliza un título para poder usarlo como clave de comparación: pasa a
+     * minúsculas, elimina los espacios de los extremos y colapsa los espacios
+     * intermedios en uno solo.
+     *
+     * @param title El título original
+     * @return El título normalizado o cadena vacía si es nulo
+     */
+    public static String normalize(String title) {
+        if (title == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(title.length());
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+
+        return normalized.toString();
+    }
+}
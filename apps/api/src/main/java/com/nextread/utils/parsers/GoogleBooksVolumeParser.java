@@ -0,0 +1,210 @@
+package com.nextread.utils.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nextread.entities.Author;
+import com.nextread.entities.Book;
+
+/**
+ * Parser en streaming de las respuestas de /books/v1/volumes de Google Books.
+ * Recorre los tokens de Jackson y construye directamente los Book sin
+ * materializar el árbol JsonNode completo de la respuesta.
+ */
+public final class GoogleBooksVolumeParser {
+
+    /**
+     * Proyección de campos para el parámetro fields= de Google Books. Debe
+     * mantenerse sincronizada con los campos que lee este parser.
+     */
+    public static final String VOLUME_FIELDS = "items(volumeInfo(title,authors,publisher,publishedDate,"
+            + "description,pageCount,industryIdentifiers,imageLinks/thumbnail))";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private GoogleBooksVolumeParser() {
+    }
+
+    /**
+     * Parsea el cuerpo de una respuesta de volúmenes.
+     *
+     * @param body El cuerpo de la respuesta HTTP
+     * @return Lista de libros no persistidos (vacía si no hay items)
+     * @throws IOException si el cuerpo no es JSON válido
+     */
+    public static List<Book> parse(InputStream body) throws IOException {
+        return parse(body, book -> {
+        });
+    }
+
+    /**
+     * Parsea el cuerpo de una respuesta de volúmenes notificando cada libro en
+     * cuanto se termina de leer su item, sin esperar al resto de la respuesta.
+     *
+     * @param body   El cuerpo de la respuesta HTTP
+     * @param onBook Callback invocado por cada libro parseado
+     * @return Lista de libros no persistidos (vacía si no hay items)
+     * @throws IOException si el cuerpo no es JSON válido
+     */
+    public static List<Book> parse(InputStream body, Consumer<Book> onBook) throws IOException {
+        List<Book> books = new ArrayList<>();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return books;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Book book = parseItem(parser);
+                        if (book != null) {
+                            books.add(book);
+                            onBook.accept(book);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return books;
+    }
+
+    private static Book parseItem(JsonParser parser) throws IOException {
+        Book book = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            if ("volumeInfo".equals(field) && value == JsonToken.START_OBJECT) {
+                book = parseVolumeInfo(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return book;
+    }
+
+    private static Book parseVolumeInfo(JsonParser parser) throws IOException {
+        Book.BookBuilder builder = Book.builder()
+                .title("")
+                .publisher("Editorial desconocida")
+                .pages(0);
+        List<Author> authors = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "title" -> builder.title(textOr(parser, value, ""));
+                case "publisher" -> builder.publisher(textOr(parser, value, "Editorial desconocida"));
+                case "publishedDate" -> builder.publishedYear(textOr(parser, value, null));
+                case "description" -> builder.synopsis(textOr(parser, value, null));
+                case "pageCount" -> builder.pages(value.isScalarValue() ? parser.getValueAsInt(0) : skip(parser, 0));
+                case "authors" -> parseAuthors(parser, value, authors);
+                case "industryIdentifiers" -> parseIdentifiers(parser, value, builder);
+                case "imageLinks" -> parseImageLinks(parser, value, builder);
+                default -> parser.skipChildren();
+            }
+        }
+
+        return builder.authors(authors).build();
+    }
+
+    private static void parseAuthors(JsonParser parser, JsonToken value, List<Author> authors) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                authors.add(Author.builder().name(parser.getText()).build());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void parseIdentifiers(JsonParser parser, JsonToken value, Book.BookBuilder builder)
+            throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String type = null;
+            String identifier = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                if ("type".equals(field)) {
+                    type = textOr(parser, token, null);
+                } else if ("identifier".equals(field)) {
+                    identifier = textOr(parser, token, null);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if ("ISBN_10".equals(type)) {
+                builder.isbn10(identifier);
+            } else if ("ISBN_13".equals(type)) {
+                builder.isbn13(identifier);
+            }
+        }
+    }
+
+    private static void parseImageLinks(JsonParser parser, JsonToken value, Book.BookBuilder builder)
+            throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            if ("thumbnail".equals(field)) {
+                builder.coverUrl(textOr(parser, token, null));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static int skip(JsonParser parser, int defaultValue) throws IOException {
+        parser.skipChildren();
+        return defaultValue;
+    }
+
+    private static String textOr(JsonParser parser, JsonToken token, String defaultValue) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return defaultValue;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return defaultValue;
+    }
+}
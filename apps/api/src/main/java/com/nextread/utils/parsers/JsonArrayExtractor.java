@@ -0,0 +1,71 @@
+package com.nextread.utils.parsers;
+
+/**
+ * Localiza el array JSON más externo dentro de una respuesta de texto de un LLM
+ * (con o sin bloques markdown, texto explicativo u objeto envoltorio) en una
+ * sola pasada y sin expresiones regulares.
+ *
+ * Las comillas se tienen en cuenta a partir del primer '{' o '[', de forma que
+ * los corchetes dentro de cadenas JSON no confunden al escáner, pero sí se
+ * ignoran las comillas del texto libre previo.
+ */
+public final class JsonArrayExtractor {
+
+    private JsonArrayExtractor() {
+    }
+
+    /**
+     * Extrae el primer array JSON de primer nivel del texto, incluido si está
+     * dentro de un objeto (por ejemplo {"recommendations": [...]}).
+     *
+     * @param text La respuesta del LLM
+     * @return El texto del array, o null si no hay ningún array completo
+     */
+    public static String extract(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        boolean inJson = false;
+        boolean inString = false;
+        boolean escaped = false;
+        int arrayStart = -1;
+        int arrayDepth = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> inString = inJson;
+                case '{' -> inJson = true;
+                case '[' -> {
+                    inJson = true;
+                    if (arrayStart < 0) {
+                        arrayStart = i;
+                    }
+                    arrayDepth++;
+                }
+                case ']' -> {
+                    if (arrayStart >= 0 && --arrayDepth == 0) {
+                        return text.substring(arrayStart, i + 1);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.nextread.utils.parsers;
+
+import java.util.function.Consumer;
+
+/**
+ * Parser incremental de un array JSON de objetos que llega por trozos (por
+ * ejemplo, los deltas de una completion en streaming). Cada vez que se cierra
+ * un objeto del primer nivel del array más externo se notifica su texto, sin
+ * esperar al resto de la respuesta.
+ *
+ * El texto anterior al primer '[' (bloques markdown, explicaciones) y el
+ * posterior al ']' de cierre se ignoran. No valida el JSON: solo delimita los
+ * objetos, que deben parsearse después.
+ *
+ * No es thread-safe; cada respuesta necesita su propia instancia.
+ */
+public class JsonArrayStreamParser {
+
+    private final Consumer<String> onObject;
+    private final StringBuilder current = new StringBuilder();
+
+    // Profundidad de anidamiento: 0 fuera del array, 1 dentro del array, 2+ dentro de un objeto
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean finished;
+
+    public JsonArrayStreamParser(Consumer<String> onObject) {
+        this.onObject = onObject;
+    }
+
+    /**
+     * Procesa el siguiente trozo de texto.
+     *
+     * @param chunk Texto recibido a continuación del anterior
+     */
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && !finished; i++) {
+            accept(chunk.charAt(i));
+        }
+    }
+
+    /**
+     * @return true si ya se ha leído el ']' que cierra el array más externo
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void accept(char c) {
+        if (depth >= 2) {
+            current.append(c);
+        }
+
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> inString = depth > 0;
+            case '[', '{' -> openContainer(c);
+            case ']', '}' -> closeContainer();
+            default -> {
+            }
+        }
+    }
+
+    private void openContainer(char c) {
+        if (depth == 0 && c != '[') {
+            // Texto previo al array: se ignora
+            return;
+        }
+
+        depth++;
+        if (depth == 2) {
+            current.setLength(0);
+            current.append(c);
+        }
+    }
+
+    private void closeContainer() {
+        if (depth == 0) {
+            return;
+        }
+
+        depth--;
+        if (depth == 1 && current.length() > 0) {
+            onObject.accept(current.toString());
+            current.setLength(0);
+        } else if (depth == 0) {
+            finished = true;
+        }
+    }
+}
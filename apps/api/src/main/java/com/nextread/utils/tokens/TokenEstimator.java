@@ -0,0 +1,51 @@
+package com.nextread.utils.tokens;
+
+/**
+ * Estimación local del número de tokens de un texto, sin depender del
+ * tokenizador de OpenAI. Aproxima el comportamiento de los tokenizadores BPE:
+ * cada palabra cuenta un token por cada 4 caracteres (mínimo 1), cada signo de
+ * puntuación o símbolo cuenta uno y los espacios no cuentan.
+ *
+ * Tiende a sobrestimar ligeramente, que es lo seguro para respetar un
+ * presupuesto.
+ */
+public final class TokenEstimator {
+
+    private static final int CHARS_PER_WORD_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * @param text El texto a estimar
+     * @return Número estimado de tokens (0 si es nulo o vacío)
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+
+        int tokens = 0;
+        int wordLength = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+
+            tokens += wordTokens(wordLength);
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+
+        return tokens + wordTokens(wordLength);
+    }
+
+    private static int wordTokens(int wordLength) {
+        return (wordLength + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+    }
+}
@@ -0,0 +1,129 @@
+package com.nextread.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.nextread.utils.parsers.JsonArrayExtractor;
+
+/**
+ * Compara la limpieza anterior de respuestas del LLM (varias pasadas con
+ * expresiones regulares) con JsonArrayExtractor.
+ *
+ * Ejecución: mvn test-compile y después
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+ * com.nextread.benchmarks.JsonExtractionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonExtractionBenchmark {
+
+    private static final String RECOMMENDATIONS = "["
+            + "{\"title\": \"El nombre del viento\", \"reason\": \"Fantasía épica con un narrador [muy] cuidado\"},"
+            + "{\"title\": \"Dune\", \"reason\": \"Ciencia ficción política, como \\\"Fundación\\\"\"},"
+            + "{\"title\": \"La sombra del viento\", \"reason\": \"Misterio literario en la Barcelona de posguerra\"}"
+            + "]";
+
+    @Param({ "plain", "markdown", "structured" })
+    private String format;
+
+    private String response;
+
+    @Setup
+    public void setUp() {
+        response = switch (format) {
+            case "markdown" -> "Aquí tienes tus recomendaciones:\n```json\n" + RECOMMENDATIONS + "\n```\n";
+            case "structured" -> "{\"recommendations\": " + RECOMMENDATIONS + "}";
+            default -> RECOMMENDATIONS;
+        };
+    }
+
+    @Benchmark
+    public String regexCleaner() {
+        return legacyCleanJsonResponse(response);
+    }
+
+    @Benchmark
+    public String singlePassExtractor() {
+        return JsonArrayExtractor.extract(response);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonExtractionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * Copia de ChatGPTService.cleanJsonResponse antes de la salida estructurada.
+     */
+    private static String legacyCleanJsonResponse(String response) {
+        if (response == null || response.trim().isEmpty()) {
+            throw new RuntimeException("Respuesta vacía de ChatGPT");
+        }
+
+        String cleaned = response.trim();
+
+        cleaned = cleaned.replaceAll("```json\\s*", "");
+        cleaned = cleaned.replaceAll("```JSON\\s*", "");
+        cleaned = cleaned.replaceAll("```\\s*json\\s*", "");
+        cleaned = cleaned.replaceAll("```\\s*", "");
+        cleaned = cleaned.replaceAll("```", "");
+
+        if (!cleaned.startsWith("[") && !cleaned.startsWith("{")) {
+            cleaned = cleaned.replaceAll("(?i).*?(?=\\[|\\{)", "");
+        }
+
+        int arrayStart = cleaned.indexOf('[');
+        int objectStart = cleaned.indexOf('{');
+
+        int jsonStart = -1;
+        if (arrayStart != -1 && objectStart != -1) {
+            jsonStart = Math.min(arrayStart, objectStart);
+        } else if (arrayStart != -1) {
+            jsonStart = arrayStart;
+        } else if (objectStart != -1) {
+            jsonStart = objectStart;
+        }
+
+        if (jsonStart > 0) {
+            cleaned = cleaned.substring(jsonStart);
+        } else if (jsonStart == -1) {
+            throw new RuntimeException("No se encontró JSON válido en la respuesta de ChatGPT");
+        }
+
+        int arrayEnd = cleaned.lastIndexOf(']');
+        int objectEnd = cleaned.lastIndexOf('}');
+
+        int jsonEnd = Math.max(arrayEnd, objectEnd);
+        if (jsonEnd >= 0 && jsonEnd < cleaned.length() - 1) {
+            cleaned = cleaned.substring(0, jsonEnd + 1);
+        }
+
+        cleaned = cleaned.trim();
+
+        if (!cleaned.startsWith("[") && !cleaned.startsWith("{")) {
+            throw new RuntimeException("La respuesta limpiada no parece ser JSON válido: "
+                    + cleaned.substring(0, Math.min(50, cleaned.length())));
+        }
+
+        return cleaned;
+    }
+}
@@ -18,9 +18,11 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import com.nextread.dto.BookSearchResultDTO;
 import com.nextread.entities.Author;
 import com.nextread.entities.Book;
 import com.nextread.entities.User;
+import com.nextread.services.BookSearchStreamService;
 import com.nextread.services.BookService;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +33,9 @@ class BookControllerTest {
     @Mock
     private BookService bookService;
 
+    @Mock
+    private BookSearchStreamService bookSearchStreamService;
+
     private BookController controller;
 
     private Book sampleBook() {
@@ -50,7 +55,7 @@ class BookControllerTest {
 
     @BeforeEach
     void setup() {
-        controller = new BookController(bookService);
+        controller = new BookController(bookService, bookSearchStreamService);
         mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
     }
 
@@ -75,9 +80,11 @@ class BookControllerTest {
     @Test
     @DisplayName("GET /books/search")
     void searchBooks() throws Exception {
-        when(bookService.findBooks("java")).thenReturn(List.of(sampleBook()));
+        when(bookService.searchBooks("java", 0, 10)).thenReturn(
+                BookSearchResultDTO.builder().books(List.of(sampleBook())).partial(true).build());
         mockMvc.perform(get("/books/search").param("title", "java"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("X-Partial-Results", "true"))
                 .andExpect(jsonPath("$[0].title", is("Title")));
     }
 
@@ -6,6 +6,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -17,16 +20,21 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.dto.RecommendationJobDTO;
 import com.nextread.dto.RecommendationRequestDTO;
+import com.nextread.dto.TokenUsageDTO;
 import com.nextread.entities.Book;
 import com.nextread.entities.Recommendation;
 import com.nextread.entities.User;
+import com.nextread.services.RecommendationJobService;
 import com.nextread.services.RecommendationService;
+import com.nextread.services.RecommendationStreamService;
 import com.nextread.services.RateLimitService;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,6 +48,12 @@ public class RecommendationControllerTest {
     @Mock
     private RateLimitService rateLimitService;
 
+    @Mock
+    private RecommendationJobService recommendationJobService;
+
+    @Mock
+    private RecommendationStreamService recommendationStreamService;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private User testUser;
@@ -66,7 +80,9 @@ public class RecommendationControllerTest {
         testRecommendation.setReason("Test reason");
 
         // Configurar MockMvc y autenticación
-        RecommendationController controller = new RecommendationController(recommendationService, rateLimitService);
+        RecommendationController controller = new RecommendationController(recommendationService, rateLimitService,
+                recommendationJobService, recommendationStreamService);
+        ReflectionTestUtils.setField(controller, "adminEmails", Set.of("admin@example.com"));
         mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
 
         // Configurar contexto de seguridad
@@ -132,6 +148,161 @@ public class RecommendationControllerTest {
             verify(rateLimitService, never()).recordRequest(any(User.class));
             verify(recommendationService, never()).generateRecommendations(any(User.class));
         }
+
+        @Test
+        @DisplayName("Should return 503 when too many OpenAI calls are in flight")
+        void shouldReturn503WhenOpenAiIsSaturated() throws Exception {
+            // Given
+            when(rateLimitService.canMakeRequest(any(User.class))).thenReturn(true);
+            when(recommendationService.generateRecommendations(any(User.class)))
+                    .thenThrow(new RejectedExecutionException("Demasiadas llamadas a OpenAI en curso"));
+
+            // When & Then
+            mockMvc.perform(post("/recommendations/generate")
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.error").value("Servicio de recomendaciones saturado"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Async Generation Tests")
+    class AsyncGenerationTests {
+
+        @Test
+        @DisplayName("Should return 202 with job id when async generation is requested")
+        void shouldReturn202WithJobIdWhenAsync() throws Exception {
+            // Given
+            RecommendationJobDTO job = RecommendationJobDTO.builder()
+                    .jobId("job-1")
+                    .status(RecommendationJobDTO.Status.PENDING)
+                    .userId(1L)
+                    .build();
+            when(rateLimitService.canMakeRequest(any(User.class))).thenReturn(true);
+            when(recommendationJobService.submit(any(User.class))).thenReturn(job);
+
+            // When & Then
+            mockMvc.perform(post("/recommendations/generate")
+                    .param("async", "true")
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isAccepted())
+                    .andExpect(jsonPath("$.jobId").value("job-1"))
+                    .andExpect(jsonPath("$.status").value("PENDING"))
+                    .andExpect(jsonPath("$.userId").doesNotExist());
+
+            verify(rateLimitService).recordRequest(any(User.class));
+            verify(recommendationService, never()).generateRecommendations(any(User.class));
+        }
+
+        @Test
+        @DisplayName("Should return 503 and not count the request when the job queue is full")
+        void shouldReturn503WhenJobQueueIsFull() throws Exception {
+            // Given
+            when(rateLimitService.canMakeRequest(any(User.class))).thenReturn(true);
+            when(recommendationJobService.submit(any(User.class)))
+                    .thenThrow(new RejectedExecutionException("full"));
+
+            // When & Then
+            mockMvc.perform(post("/recommendations/generate")
+                    .param("async", "true")
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.error").value("Servicio de recomendaciones saturado"));
+
+            verify(rateLimitService, never()).recordRequest(any(User.class));
+        }
+
+        @Test
+        @DisplayName("Should return 429 on the stream endpoint when rate limit exceeded")
+        void shouldReturn429OnStreamWhenRateLimitExceeded() throws Exception {
+            // Given
+            when(rateLimitService.canMakeRequest(any(User.class))).thenReturn(false);
+
+            // When & Then
+            mockMvc.perform(post("/recommendations/generate/stream"))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(jsonPath("$.error").value("Límite de recomendaciones diarias alcanzado"))
+                    .andExpect(jsonPath("$.resetTime").value("24 horas"));
+
+            verify(recommendationStreamService, never()).streamRecommendations(any(User.class));
+        }
+
+        @Test
+        @DisplayName("Should return 503 on the stream endpoint when the job queue is full")
+        void shouldReturn503OnStreamWhenJobQueueIsFull() throws Exception {
+            // Given
+            when(rateLimitService.canMakeRequest(any(User.class))).thenReturn(true);
+            when(recommendationStreamService.streamRecommendations(any(User.class)))
+                    .thenThrow(new RejectedExecutionException("full"));
+
+            // When & Then
+            mockMvc.perform(post("/recommendations/generate/stream"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "60"))
+                    .andExpect(jsonPath("$.error").value("Servicio de recomendaciones saturado"));
+
+            verify(rateLimitService, never()).recordRequest(any(User.class));
+        }
+
+        @Test
+        @DisplayName("Should return job status for its owner")
+        void shouldReturnJobStatus() throws Exception {
+            // Given
+            RecommendationJobDTO job = RecommendationJobDTO.builder()
+                    .jobId("job-1")
+                    .status(RecommendationJobDTO.Status.COMPLETED)
+                    .recommendations(List.of(GeneratedRecommendationDTO.builder()
+                            .title("Book 1")
+                            .reason("Reason 1")
+                            .build()))
+                    .userId(1L)
+                    .build();
+            when(recommendationJobService.findJob(eq("job-1"), any(User.class))).thenReturn(Optional.of(job));
+
+            // When & Then
+            mockMvc.perform(get("/recommendations/jobs/job-1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status").value("COMPLETED"))
+                    .andExpect(jsonPath("$.recommendations[0].title").value("Book 1"));
+        }
+
+        @Test
+        @DisplayName("Should return 404 for unknown or foreign jobs")
+        void shouldReturn404ForUnknownJob() throws Exception {
+            // Given
+            when(recommendationJobService.findJob(eq("missing"), any(User.class))).thenReturn(Optional.empty());
+
+            // When & Then
+            mockMvc.perform(get("/recommendations/jobs/missing"))
+                    .andExpect(status().isNotFound());
+        }
+    }
+
+    @Nested
+    @DisplayName("Token Usage Tests")
+    class TokenUsageTests {
+
+        @Test
+        @DisplayName("Should forbid the top consumers report to non admin users")
+        void shouldForbidTopConsumersToNonAdmins() throws Exception {
+            mockMvc.perform(get("/recommendations/usage/top"))
+                    .andExpect(status().isForbidden());
+
+            verify(rateLimitService, never()).getTopConsumers(anyInt(), anyInt());
+        }
+
+        @Test
+        @DisplayName("Should return the top token consumers to admins")
+        void shouldReturnTopConsumersToAdmins() throws Exception {
+            testUser.setEmail("admin@example.com");
+            when(rateLimitService.getTopConsumers(7, 5)).thenReturn(List.of(
+                    new TokenUsageDTO(2L, "heavy@example.com", 12L, 30L, 45_000L, 20_000L, 6_000L, 90_000L)));
+
+            mockMvc.perform(get("/recommendations/usage/top").param("days", "7").param("limit", "5"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].email").value("heavy@example.com"))
+                    .andExpect(jsonPath("$[0].totalTokens").value(51_000));
+        }
     }
 
     @Nested
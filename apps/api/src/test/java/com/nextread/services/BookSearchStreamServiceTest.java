@@ -0,0 +1,132 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.nextread.controller.BookController;
+import com.nextread.entities.Author;
+import com.nextread.entities.Book;
+
+@ExtendWith(MockitoExtension.class)
+class BookSearchStreamServiceTest {
+
+    @Mock
+    private BookService bookService;
+    @Mock
+    private GoogleBooksService googleBooksService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        // Google Books se ejecuta en el hilo del test
+        BookSearchStreamService streamService = new BookSearchStreamService(bookService, googleBooksService,
+                (Executor) Runnable::run);
+        ReflectionTestUtils.setField(streamService, "streamTimeoutMs", 5000L);
+        mockMvc = MockMvcBuilders.standaloneSetup(new BookController(bookService, streamService)).build();
+    }
+
+    private Book book(String title, String isbn13) {
+        return Book.builder()
+                .title(title)
+                .isbn13(isbn13)
+                .authors(List.of(Author.builder().name("Jane Doe").build()))
+                .build();
+    }
+
+    private String stream(String query) throws Exception {
+        return mockMvc.perform(get("/books/search/stream").param("title", query).param("page", "1")
+                .param("size", "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    @DisplayName("envía primero los locales y después los de Google sin duplicados")
+    void localFirstThenDeduplicatedGoogleBooks() throws Exception {
+        when(bookService.findLocalBooks("dune", 1, 5)).thenReturn(List.of(book("Dune", "111")));
+        when(googleBooksService.searchByTitle(eq("dune"), eq(5), eq(5), any())).thenAnswer(invocation -> {
+            Consumer<Book> onBook = invocation.getArgument(3);
+            onBook.accept(book("Dune", "111"));
+            onBook.accept(book("Dune Messiah", "222"));
+            return List.of();
+        });
+
+        String body = stream("dune");
+
+        int local = body.indexOf("event:local");
+        int google = body.indexOf("event:google");
+        int complete = body.indexOf("event:complete");
+        assertTrue(local >= 0 && local < google && google < complete, body);
+        assertEquals(body.indexOf("event:google"), body.lastIndexOf("event:google"), body);
+        assertTrue(body.contains("Dune Messiah"));
+        assertTrue(body.contains("\"partial\":false"));
+    }
+
+    @Test
+    @DisplayName("encola como provisionales solo los libros de Google no duplicados")
+    void googleBooks_areEnqueuedAsProvisional() throws Exception {
+        Book messiah = book("Dune Messiah", "222");
+        when(bookService.findLocalBooks("dune", 1, 5)).thenReturn(List.of(book("Dune", "111")));
+        when(googleBooksService.searchByTitle(eq("dune"), eq(5), eq(5), any())).thenAnswer(invocation -> {
+            Consumer<Book> onBook = invocation.getArgument(3);
+            onBook.accept(book("Dune", "111"));
+            onBook.accept(messiah);
+            return List.of();
+        });
+
+        stream("dune");
+
+        verify(bookService).enqueueProvisional(List.of(messiah));
+    }
+
+    @Test
+    @DisplayName("si Google falla se completa con los locales marcado como parcial")
+    void googleFailure_completesAsPartial() throws Exception {
+        when(bookService.findLocalBooks("dune", 1, 5)).thenReturn(List.of(book("Dune", "111")));
+        when(googleBooksService.searchByTitle(eq("dune"), eq(5), eq(5), any()))
+                .thenThrow(new RuntimeException("Google caído"));
+
+        String body = stream("dune");
+
+        assertTrue(body.contains("event:local"));
+        assertFalse(body.contains("event:google"));
+        assertTrue(body.contains("\"partial\":true"));
+    }
+
+    @Test
+    @DisplayName("si el pool de Google está lleno se completa con los locales marcado como parcial")
+    void googlePoolSaturated_completesAsPartial() throws Exception {
+        BookSearchStreamService streamService = new BookSearchStreamService(bookService, googleBooksService,
+                task -> {
+                    throw new RejectedExecutionException("lleno");
+                });
+        ReflectionTestUtils.setField(streamService, "streamTimeoutMs", 5000L);
+        mockMvc = MockMvcBuilders.standaloneSetup(new BookController(bookService, streamService)).build();
+        when(bookService.findLocalBooks("dune", 1, 5)).thenReturn(List.of(book("Dune", "111")));
+
+        String body = stream("dune");
+
+        assertTrue(body.contains("event:local"));
+        assertTrue(body.contains("\"partial\":true"));
+        verifyNoInteractions(googleBooksService);
+    }
+}
@@ -7,6 +7,13 @@ import static org.mockito.Mockito.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -16,10 +23,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nextread.dto.BookSearchResultDTO;
 import com.nextread.entities.Author;
 import com.nextread.entities.Book;
 import com.nextread.entities.Survey;
@@ -33,17 +42,24 @@ class BookServiceTest {
     @Mock
     private BookRepository bookRepository;
     @Mock
-    private RestTemplate restTemplate;
+    private GoogleBooksService googleBooksService;
     @Mock
     private SurveyService surveyService;
 
     @Mock
     private AuthorRepository authorRepository;
+    @Mock
+    private ProvisionalCatalogService provisionalCatalogService;
 
     @InjectMocks
     private BookService bookService;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    @BeforeEach
+    void setupSearch() {
+        // Google Books se ejecuta en el hilo del test salvo que el test indique otro
+        ReflectionTestUtils.setField(bookService, "googleBooksExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(bookService, "googleDeadlineMs", 1500L);
+    }
 
     private Book sampleBook() {
         return Book.builder()
@@ -60,18 +76,18 @@ class BookServiceTest {
                 .build();
     }
 
-    private JsonNode googleResponseJson() throws Exception {
-        String json = "{" +
-                "\"items\":[{" +
-                "\"volumeInfo\":{" +
-                "\"title\":\"GoogleBook\"," +
-                "\"industryIdentifiers\":[{" +
-                "\"type\":\"ISBN_10\",\"identifier\":\"0987654321\"},{" +
-                "\"type\":\"ISBN_13\",\"identifier\":\"0987654321098\"}]," +
-                "\"imageLinks\":{\"thumbnail\":\"https://img.com/gb.jpg\"}," +
-                "\"description\":\"desc\",\"pageCount\":200,\"publishedDate\":\"2023\"," +
-                "\"authors\":[\"Jane Doe\"]}}]}";
-        return mapper.readTree(json);
+    private Book googleBook() {
+        return Book.builder()
+                .title("GoogleBook")
+                .isbn10("0987654321")
+                .isbn13("0987654321098")
+                .publisher("Editorial desconocida")
+                .coverUrl("https://img.com/gb.jpg")
+                .synopsis("desc")
+                .pages(200)
+                .publishedYear("2023")
+                .authors(List.of(Author.builder().name("Jane Doe").build()))
+                .build();
     }
 
     @Nested
@@ -111,23 +127,67 @@ class BookServiceTest {
                     .thenReturn(List.of(local));
             Book result = bookService.findRecommendedBook("Foo");
             assertEquals(local, result);
-            verify(restTemplate, never()).getForObject(anyString(), eq(JsonNode.class));
+            verify(googleBooksService, never()).searchByTitle(anyString());
         }
 
         @Test
         void noLocalMatch_fetchesFromGoogle() throws Exception {
             when(bookRepository.findByTitleIgnoreCase("Foo"))
                     .thenReturn(new ArrayList<>());
-            when(restTemplate.getForObject(anyString(), eq(JsonNode.class)))
-                    .thenReturn(googleResponseJson());
+            when(googleBooksService.searchByTitle("Foo"))
+                    .thenReturn(List.of(googleBook()));
             Book result = bookService.findRecommendedBook("Foo");
             assertEquals("GoogleBook", result.getTitle());
         }
+
+        @Test
+        void noCompleteGoogleResult_marksTitleUnresolvable() {
+            when(bookRepository.findByTitleIgnoreCase("Foo"))
+                    .thenReturn(new ArrayList<>());
+            when(googleBooksService.searchByTitle("Foo"))
+                    .thenReturn(List.of());
+
+            assertThrows(RuntimeException.class, () -> bookService.findRecommendedBook("Foo"));
+            verify(googleBooksService).markUnresolvable("Foo");
+        }
+
+        @Test
+        void knownUnresolvableTitle_skipsGoogle() {
+            when(bookRepository.findByTitleIgnoreCase("Foo"))
+                    .thenReturn(new ArrayList<>());
+            when(googleBooksService.isKnownUnresolvable("Foo")).thenReturn(true);
+
+            assertThrows(RuntimeException.class, () -> bookService.findRecommendedBook("Foo"));
+            verify(googleBooksService, never()).searchByTitle(anyString());
+        }
     }
 
     @Nested
     @DisplayName("findBooks")
     class FindBooks {
+        @Test
+        void googleDuplicates_removedByIsbnAndByTitleAuthor() {
+            Book noIsbnLocal = Book.builder().id(2L).title("Dune")
+                    .authors(List.of(Author.builder().name("Frank Herbert").build())).build();
+            Book sameIsbn = googleBook();
+            sameIsbn.setIsbn13(sampleBook().getIsbn13());
+            Book sameTitleAuthor = Book.builder().title("  DUNE ")
+                    .authors(List.of(Author.builder().name("frank  herbert").build())).build();
+            Book otherAuthor = Book.builder().title("Dune")
+                    .authors(List.of(Author.builder().name("Otro").build())).build();
+
+            when(bookRepository.findByTitleIgnoreCase("A"))
+                    .thenReturn(List.of(sampleBook(), noIsbnLocal));
+            when(googleBooksService.searchByTitle(eq("A"), eq(0), eq(10), any()))
+                    .thenReturn(List.of(sameIsbn, sameTitleAuthor, otherAuthor, googleBook()));
+
+            List<Book> result = bookService.findBooks("A");
+
+            assertEquals(4, result.size());
+            assertSame(otherAuthor, result.get(2));
+            assertEquals("GoogleBook", result.get(3).getTitle());
+        }
+
         @Test
         void localMatchesReturned() {
             when(bookRepository.findByTitleIgnoreCase("A"))
@@ -140,11 +200,129 @@ class BookServiceTest {
         void googleMatchesReturned() throws Exception {
             when(bookRepository.findByTitleIgnoreCase("A"))
                     .thenReturn(new ArrayList<>());
-            when(restTemplate.getForObject(anyString(), eq(JsonNode.class)))
-                    .thenReturn(googleResponseJson());
+            when(googleBooksService.searchByTitle(eq("A"), eq(0), eq(10), any()))
+                    .thenReturn(List.of(googleBook()));
             List<Book> result = bookService.findBooks("A");
             assertEquals(1, result.size());
             assertEquals("GoogleBook", result.get(0).getTitle());
+            verify(provisionalCatalogService).enqueue(argThat(books -> books.size() == 1
+                    && "GoogleBook".equals(books.get(0).getTitle())));
+        }
+
+        @Test
+        void googleFailure_returnsLocalOnly() {
+            when(bookRepository.findByTitleIgnoreCase("A"))
+                    .thenReturn(List.of(sampleBook()));
+            when(googleBooksService.searchByTitle(eq("A"), eq(0), eq(10), any()))
+                    .thenThrow(new RuntimeException("Google caído"));
+
+            BookSearchResultDTO result = bookService.searchBooks("A");
+
+            assertEquals(1, result.getBooks().size());
+            assertFalse(result.isPartial());
+        }
+
+        @Test
+        void googlePoolSaturated_returnsPartialLocalOnly() {
+            ReflectionTestUtils.setField(bookService, "googleBooksExecutor", (Executor) task -> {
+                throw new RejectedExecutionException("lleno");
+            });
+            when(bookRepository.findByTitleIgnoreCase("A"))
+                    .thenReturn(List.of(sampleBook()));
+
+            BookSearchResultDTO result = bookService.searchBooks("A");
+
+            assertEquals(1, result.getBooks().size());
+            assertTrue(result.isPartial());
+            verifyNoInteractions(googleBooksService);
+        }
+
+        @Test
+        void googleSlowerThanDeadline_returnsPartialWithArrivedBooks() throws Exception {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            CountDownLatch releaseGoogle = new CountDownLatch(1);
+            ReflectionTestUtils.setField(bookService, "googleBooksExecutor", executor);
+            ReflectionTestUtils.setField(bookService, "googleDeadlineMs", 50L);
+
+            when(bookRepository.findByTitleIgnoreCase("A"))
+                    .thenReturn(List.of(sampleBook()));
+            when(googleBooksService.searchByTitle(eq("A"), eq(0), eq(10), any())).thenAnswer(invocation -> {
+                Consumer<Book> onBook = invocation.getArgument(3);
+                onBook.accept(googleBook());
+                releaseGoogle.await(5, TimeUnit.SECONDS);
+                return List.of(googleBook());
+            });
+
+            try {
+                BookSearchResultDTO result = bookService.searchBooks("A");
+
+                assertTrue(result.isPartial());
+                assertEquals(2, result.getBooks().size());
+                assertEquals("Sample", result.getBooks().get(0).getTitle());
+                assertEquals("GoogleBook", result.getBooks().get(1).getTitle());
+            } finally {
+                releaseGoogle.countDown();
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("searchBooks paginado")
+    class PagedSearch {
+        @Test
+        void pageMapsToLocalPageAndGoogleStartIndex() {
+            when(bookRepository.findByTitleIgnoreCase(eq("A"), any(Pageable.class)))
+                    .thenReturn(List.of(sampleBook()));
+            when(googleBooksService.searchByTitle(eq("A"), eq(40), eq(20), any()))
+                    .thenReturn(List.of(googleBook()));
+
+            BookSearchResultDTO result = bookService.searchBooks("A", 2, 20);
+
+            assertEquals(2, result.getBooks().size());
+            verify(bookRepository).findByTitleIgnoreCase("A", PageRequest.of(2, 20, Sort.by("id")));
+        }
+
+        @Test
+        void pageSizeClampedToGoogleMaximum() {
+            when(bookRepository.findByTitleIgnoreCase(eq("A"), any(Pageable.class)))
+                    .thenReturn(List.of());
+
+            bookService.searchBooks("A", -1, 500);
+
+            verify(bookRepository).findByTitleIgnoreCase("A", PageRequest.of(0, 40, Sort.by("id")));
+            verify(googleBooksService).searchByTitle(eq("A"), eq(0), eq(40), any());
+        }
+    }
+
+    @Nested
+    @DisplayName("saveProvisionalBooks")
+    class ProvisionalBooks {
+        @Test
+        void savesCompleteNewBooksAsProvisional() {
+            Book incomplete = Book.builder().title("Sin ISBN").build();
+            Author existingAuthor = Author.builder().id(7L).name("Jane Doe").build();
+            when(bookRepository.findByIsbn13In(anyCollection())).thenReturn(List.of());
+            when(bookRepository.findByIsbn10In(anyCollection())).thenReturn(List.of());
+            when(authorRepository.findByNameIn(anyCollection())).thenReturn(List.of(existingAuthor));
+            when(authorRepository.saveAll(anyList())).thenReturn(List.of());
+
+            int saved = bookService.saveProvisionalBooks(List.of(googleBook(), googleBook(), incomplete));
+
+            assertEquals(1, saved);
+            verify(bookRepository).saveAll(argThat((List<Book> books) -> books.size() == 1
+                    && books.get(0).isProvisional()
+                    && books.get(0).getAuthors().get(0) == existingAuthor));
+        }
+
+        @Test
+        void skipsBooksAlreadyInCatalog() {
+            when(bookRepository.findByIsbn13In(anyCollection())).thenReturn(List.of(googleBook()));
+            when(bookRepository.findByIsbn10In(anyCollection())).thenReturn(List.of());
+            when(authorRepository.findByNameIn(anyCollection())).thenReturn(List.of());
+            when(authorRepository.saveAll(anyList())).thenReturn(List.of());
+
+            assertEquals(0, bookService.saveProvisionalBooks(List.of(googleBook())));
         }
     }
 
@@ -196,4 +374,17 @@ class BookServiceTest {
         verify(bookRepository).save(b);
         verify(authorRepository).findByName(sampleAuthor.getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    void saveBook_withoutIsbn13_returnsExistingWithSameTitleAndFirstAuthor() {
+        Author author = Author.builder().name("John").build();
+        Book existing = Book.builder().id(5L).title("Sample").authors(List.of(author)).build();
+        Book b = Book.builder().title("Sample").authors(List.of(Author.builder().name(" john ").build())).build();
+
+        when(authorRepository.findByName(" john ")).thenReturn(Optional.of(author));
+        when(bookRepository.findByTitleIgnoreCase("Sample")).thenReturn(List.of(existing));
+
+        assertSame(existing, bookService.saveBook(b));
+        verify(bookRepository, never()).save(any());
+    }
+}
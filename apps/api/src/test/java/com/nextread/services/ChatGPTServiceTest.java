@@ -4,22 +4,46 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.ArrayList;
-
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nextread.dto.GeneratedRecommendationDTO;
@@ -31,6 +55,10 @@ import com.nextread.entities.User;
 import com.nextread.entities.UserBook;
 import com.nextread.entities.Book;
 import com.nextread.entities.Genre;
+import com.nextread.utils.fingerprints.PreferenceFingerprint;
+import com.nextread.utils.tokens.TokenEstimator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 public class ChatGPTServiceTest {
@@ -47,6 +75,28 @@ public class ChatGPTServiceTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private RecommendationCacheService recommendationCacheService;
+
+    @Mock
+    private EnrichmentYieldTracker enrichmentYieldTracker;
+
+    @Mock
+    private OpenAiCallGovernor openAiCallGovernor;
+
+    @Mock
+    private RateLimitService rateLimitService;
+
+    @Mock
+    private RecommendationInventoryService recommendationInventoryService;
+
+    // Reintentos reales sin esperas largas: máximo 3 intentos y 10 ms entre ellos
+    @Spy
+    private OpenAiRetryPolicy openAiRetryPolicy = new OpenAiRetryPolicy(new SimpleMeterRegistry(), 3, 1, 10, 20, 0.5);
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private ChatGPTService chatGPTService;
 
@@ -101,6 +151,9 @@ public class ChatGPTServiceTest {
         ReflectionTestUtils.setField(chatGPTService, "apiKey", "test-api-key");
         ReflectionTestUtils.setField(chatGPTService, "apiUrl", "https://api.openai.com/v1/chat/completions");
         ReflectionTestUtils.setField(chatGPTService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(chatGPTService, "promptTokenBudget", 1500);
+        // Enriquecimiento en el hilo del test para que el orden sea determinista
+        ReflectionTestUtils.setField(chatGPTService, "enrichmentExecutor", (Executor) Runnable::run);
     }
 
     @Nested
@@ -119,7 +172,7 @@ public class ChatGPTServiceTest {
                     .firstTime(true)
                     .build();
 
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(firstTimeSurvey);
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(firstTimeSurvey);
 
             // When & Then
             RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -129,8 +182,8 @@ public class ChatGPTServiceTest {
             assertEquals(
                     "Error al generar recomendaciones: Se debe completar la encuesta base para poder comenzar con las recomendaciones.",
                     exception.getMessage());
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService, never()).findUserBooks(any());
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService, never()).findUserBooksWithBook(any());
         }
 
         @Test
@@ -145,7 +198,7 @@ public class ChatGPTServiceTest {
             });
 
             assertEquals("API key de OpenAI no configurada", exception.getMessage());
-            verify(surveyService, never()).findSurveyByUser(any());
+            verify(surveyService, never()).findSurveyWithGenresByUser(any());
         }
 
         @Test
@@ -160,15 +213,15 @@ public class ChatGPTServiceTest {
             });
 
             assertEquals("API key de OpenAI no configurada", exception.getMessage());
-            verify(surveyService, never()).findSurveyByUser(any());
+            verify(surveyService, never()).findSurveyWithGenresByUser(any());
         }
 
         @Test
         @DisplayName("Should successfully generate recommendations with valid data")
         void shouldSuccessfullyGenerateRecommendationsWithValidData() throws Exception {
             // Given
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(testSurvey);
-            when(userBookService.findUserBooks(testUser)).thenReturn(List.of(testUserBook));
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of(testUserBook));
 
             // Crear respuesta con 3 recomendaciones como espera el algoritmo
             String mockApiResponse = """
@@ -240,8 +293,8 @@ public class ChatGPTServiceTest {
             assertEquals("1984", result.get(2).getTitle());
             assertEquals("Classic dystopian novel", result.get(2).getReason());
 
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService).findUserBooks(testUser);
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService).findUserBooksWithBook(testUser);
             verify(restTemplate).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class));
         }
 
@@ -249,8 +302,8 @@ public class ChatGPTServiceTest {
         @DisplayName("Should handle empty user books list")
         void shouldHandleEmptyUserBooksList() {
             // Given
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(testSurvey);
-            when(userBookService.findUserBooks(testUser)).thenReturn(new ArrayList<>());
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(new ArrayList<>());
 
             String mockApiResponse = """
                     {
@@ -271,8 +324,8 @@ public class ChatGPTServiceTest {
                 chatGPTService.generateRecommendations(testUser, new ArrayList<>());
             });
 
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService).findUserBooks(testUser);
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService).findUserBooksWithBook(testUser);
         }
 
         @Test
@@ -294,8 +347,8 @@ public class ChatGPTServiceTest {
                     .rating(3.0f)
                     .build();
 
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(testSurvey);
-            when(userBookService.findUserBooks(testUser)).thenReturn(List.of(testUserBook, abandonedBook, toReadBook));
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of(testUserBook, abandonedBook, toReadBook));
 
             String mockApiResponse = """
                     {
@@ -316,16 +369,16 @@ public class ChatGPTServiceTest {
                 chatGPTService.generateRecommendations(testUser, new ArrayList<>());
             });
 
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService).findUserBooks(testUser);
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService).findUserBooksWithBook(testUser);
         }
 
         @Test
         @DisplayName("Should handle RestTemplate exceptions")
         void shouldHandleRestTemplateExceptions() {
             // Given
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(testSurvey);
-            when(userBookService.findUserBooks(testUser)).thenReturn(List.of());
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
             when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
                     .thenThrow(new RuntimeException("Network error"));
 
@@ -335,8 +388,8 @@ public class ChatGPTServiceTest {
             });
 
             assertTrue(exception.getMessage().contains("Error al generar recomendaciones"));
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService).findUserBooks(testUser);
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService).findUserBooksWithBook(testUser);
         }
 
         @Test
@@ -351,8 +404,8 @@ public class ChatGPTServiceTest {
                     .firstTime(false)
                     .build();
 
-            when(surveyService.findSurveyByUser(testUser)).thenReturn(completedSurvey);
-            when(userBookService.findUserBooks(testUser)).thenReturn(List.of());
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(completedSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
 
             // When & Then - Should not throw the "first time" exception
             RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -363,8 +416,499 @@ public class ChatGPTServiceTest {
             assertNotEquals(
                     "Error al generar recomendaciones: Se debe completar la encuesta base para poder comenzar con las recomendaciones.",
                     exception.getMessage());
-            verify(surveyService).findSurveyByUser(testUser);
-            verify(userBookService).findUserBooks(testUser);
+            verify(surveyService).findSurveyWithGenresByUser(testUser);
+            verify(userBookService).findUserBooksWithBook(testUser);
+        }
+    }
+
+    @Nested
+    @DisplayName("Parallel Enrichment Tests")
+    class ParallelEnrichmentTests {
+
+        private ResponseEntity<String> completion(String... titles) {
+            StringBuilder content = new StringBuilder("[");
+            for (int i = 0; i < titles.length; i++) {
+                content.append(i > 0 ? "," : "")
+                        .append("{\\\"title\\\": \\\"").append(titles[i])
+                        .append("\\\", \\\"reason\\\": \\\"r\\\"}");
+            }
+            content.append("]");
+            return ResponseEntity.ok("{\"choices\": [{\"message\": {\"content\": \"" + content + "\"}}]}");
+        }
+
+        private Book book(long id, String title) {
+            return Book.builder().id(id).title(title).isbn13("978000000000" + id).build();
+        }
+
+        @Test
+        @DisplayName("Should keep the first three enriched candidates in LLM order")
+        void shouldKeepFirstThreeEnrichedCandidatesInLlmOrder() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("A", "B", "C", "D", "E"));
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenThrow(new RuntimeException("Libro no encontrado."));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+            when(bookService.findRecommendedBook("D")).thenReturn(book(4, "D"));
+            when(bookService.findRecommendedBook("E")).thenReturn(book(5, "E"));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            // Todos los candidatos se enriquecen a la vez; E termina cuarto y se descarta
+            assertEquals(List.of("A", "C", "D"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                    eq(String.class));
+        }
+
+        @Test
+        @DisplayName("Should not enrich the same title twice within one generation")
+        void shouldNotEnrichSameTitleTwiceWithinGeneration() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("A", "B"))
+                    .thenReturn(completion("A", "b", "C", "D"));
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenThrow(new RuntimeException("Libro no encontrado."));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+            when(bookService.findRecommendedBook("D")).thenReturn(book(4, "D"));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(3, result.size());
+            verify(bookService, times(1)).findRecommendedBook("A");
+            verify(bookService, times(1)).findRecommendedBook("B");
+            verify(bookService, never()).findRecommendedBook("b");
+        }
+
+        @Test
+        @DisplayName("Should drop titles from the library or recently rejected before enriching")
+        void shouldDropLibraryAndRejectedTitlesBeforeEnriching() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of(testUserBook));
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("test  BOOK", "Dune", "A", "B", "C"));
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>(List.of(book(9, "DUNE"))));
+
+            assertEquals(List.of("A", "B", "C"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            verify(bookService, never()).findRecommendedBook("test  BOOK");
+            verify(bookService, never()).findRecommendedBook("Dune");
+            assertEquals(1.0, meterRegistry.get("recommendations.candidates.dropped").tag("reason", "library")
+                    .counter().count());
+            assertEquals(1.0, meterRegistry.get("recommendations.candidates.dropped").tag("reason", "rejected")
+                    .counter().count());
+        }
+    }
+
+    @Nested
+    @DisplayName("Recommendation Inventory Tests")
+    class RecommendationInventoryTests {
+
+        private ResponseEntity<String> completion(String... titles) {
+            StringBuilder content = new StringBuilder("[");
+            for (int i = 0; i < titles.length; i++) {
+                content.append(i > 0 ? "," : "")
+                        .append("{\\\"title\\\": \\\"").append(titles[i])
+                        .append("\\\", \\\"reason\\\": \\\"r\\\"}");
+            }
+            content.append("]");
+            return ResponseEntity.ok("{\"choices\": [{\"message\": {\"content\": \"" + content + "\"}}]}");
+        }
+
+        private Book book(long id, String title) {
+            return Book.builder().id(id).title(title).isbn13("978000000000" + id).build();
+        }
+
+        private GeneratedRecommendationDTO stocked(String title) {
+            return GeneratedRecommendationDTO.builder().title(title).reason("r").enriched(true).build();
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("Should bank the enriched candidates left over after a generation")
+        void shouldBankLeftoverEnrichedCandidates() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("A", "B", "C", "D", "E"));
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+            when(bookService.findRecommendedBook("D")).thenReturn(book(4, "D"));
+            when(bookService.findRecommendedBook("E")).thenThrow(new RuntimeException("Libro no encontrado."));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            ArgumentCaptor<Collection<GeneratedRecommendationDTO>> banked = ArgumentCaptor.forClass(Collection.class);
+            verify(recommendationInventoryService).store(eq(testUser), anyString(), banked.capture());
+            assertEquals(List.of("A", "B", "C"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            assertEquals(List.of("D"), banked.getValue().stream().map(GeneratedRecommendationDTO::getTitle).toList());
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("Should serve from inventory without outbound calls and refill it in the background")
+        void shouldServeFromInventoryAndRefillInBackground() {
+            List<Runnable> background = new ArrayList<>();
+            ReflectionTestUtils.setField(chatGPTService, "refillExecutor", (Executor) background::add);
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(recommendationInventoryService.take(eq(testUser), anyString(), anySet(), eq(3)))
+                    .thenReturn(List.of(stocked("A"), stocked("B"), stocked("C")));
+            when(recommendationInventoryService.isLow(eq(testUser), anyString(), eq(3))).thenReturn(true);
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(List.of("A", "B", "C"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            verifyNoInteractions(restTemplate, bookService);
+            verify(recommendationCacheService, never()).find(anyString());
+            assertEquals(1, background.size());
+
+            // La reposición evita lo recién servido y guarda también sus 3 recomendaciones
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("D", "E", "F"));
+            when(bookService.findRecommendedBook("D")).thenReturn(book(4, "D"));
+            when(bookService.findRecommendedBook("E")).thenReturn(book(5, "E"));
+            when(bookService.findRecommendedBook("F")).thenReturn(book(6, "F"));
+            background.get(0).run();
+
+            ArgumentCaptor<HttpEntity<Map<String, Object>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+            verify(restTemplate).exchange(anyString(), eq(HttpMethod.POST), request.capture(), eq(String.class));
+            assertTrue(request.getValue().getBody().get("messages").toString().contains("- A\n"));
+            ArgumentCaptor<Collection<GeneratedRecommendationDTO>> banked = ArgumentCaptor.forClass(Collection.class);
+            verify(recommendationInventoryService).store(eq(testUser), anyString(), banked.capture());
+            assertEquals(List.of("D", "E", "F"),
+                    banked.getValue().stream().map(GeneratedRecommendationDTO::getTitle).toList());
+
+            // La reposición usa la encuesta y la biblioteca ya cargadas en la petición
+            verify(surveyService, times(1)).findSurveyWithGenresByUser(testUser);
+            verify(userBookService, times(1)).findUserBooksWithBook(testUser);
+        }
+
+        @Test
+        @DisplayName("Should not block later refills when the refill pool drops one")
+        void shouldNotBlockRefillsAfterDroppedOne() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(recommendationInventoryService.take(eq(testUser), anyString(), anySet(), eq(3)))
+                    .thenReturn(List.of(stocked("A"), stocked("B"), stocked("C")));
+            when(recommendationInventoryService.isLow(eq(testUser), anyString(), eq(3))).thenReturn(true);
+
+            // Pool lleno: la reposición se descarta sin ejecutarse
+            ReflectionTestUtils.setField(chatGPTService, "refillExecutor", (Executor) task -> {
+            });
+            chatGPTService.generateRecommendations(testUser, new ArrayList<>());
+
+            List<Runnable> background = new ArrayList<>();
+            ReflectionTestUtils.setField(chatGPTService, "refillExecutor", (Executor) background::add);
+            chatGPTService.generateRecommendations(testUser, new ArrayList<>());
+
+            assertEquals(1, background.size());
+            assertEquals(Set.of(), ReflectionTestUtils.getField(chatGPTService, "refillsInFlight"));
+        }
+
+        @Test
+        @DisplayName("Should pre-generate only when the inventory cannot serve the next request")
+        void shouldPrefillOnlyWhenInventoryIsLow() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(recommendationInventoryService.isLow(eq(testUser), anyString(), eq(3))).thenReturn(false, true);
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("A", "B", "C"));
+            when(bookService.findRecommendedBook(anyString()))
+                    .thenAnswer(invocation -> book(invocation.getArgument(0, String.class).charAt(0),
+                            invocation.getArgument(0)));
+
+            assertTrue(chatGPTService.prefillInventory(testUser, List.of()));
+            verifyNoInteractions(restTemplate);
+
+            assertTrue(chatGPTService.prefillInventory(testUser, List.of()));
+            verify(recommendationInventoryService).store(eq(testUser), anyString(),
+                    argThat(banked -> banked.size() == 3));
+        }
+    }
+
+    @Nested
+    @DisplayName("Streaming Tests")
+    class StreamingTests {
+
+        // Eventos SSE con un delta por trozo de contenido
+        private String deltas(String... contentChunks) throws Exception {
+            StringBuilder events = new StringBuilder();
+            for (String chunk : contentChunks) {
+                String delta = objectMapper.writeValueAsString(
+                        Map.of("choices", List.of(Map.of("delta", Map.of("content", chunk)))));
+                events.append("data: ").append(delta).append("\n\n");
+            }
+            return events.toString();
+        }
+
+        // Completion en streaming completa, terminada en [DONE]
+        private String eventStream(String... contentChunks) throws Exception {
+            return deltas(contentChunks) + "data: [DONE]\n\n";
+        }
+
+        private Book book(long id, String title) {
+            return Book.builder().id(id).title(title).isbn13("978000000000" + id).build();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void stubStream(InputStream body, MockClientHttpRequest sentRequest) {
+            when(restTemplate.execute(anyString(), eq(HttpMethod.POST), any(RequestCallback.class),
+                    any(ResponseExtractor.class))).thenAnswer(invocation -> {
+                        invocation.getArgument(2, RequestCallback.class).doWithRequest(sentRequest);
+                        return invocation.getArgument(3, ResponseExtractor.class)
+                                .extractData(new MockClientHttpResponse(body, HttpStatus.OK));
+                    });
+        }
+
+        @Test
+        @DisplayName("Should deliver each enriched recommendation as its object closes")
+        void shouldDeliverEnrichedRecommendationsWhileStreaming() throws Exception {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenThrow(new RuntimeException("Libro no encontrado."));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+            when(bookService.findRecommendedBook("D")).thenReturn(book(4, "D"));
+
+            // Objetos partidos entre deltas y texto sobrante antes del array
+            String events = eventStream("```json\n[{\"title\": \"A\", \"rea", "son\": \"r {1}\"},",
+                    "{\"title\": \"B\", \"reason\": \"r\"}, {\"title\": \"C\", \"reason\": \"r\"}",
+                    ", {\"title\": \"D\", \"reason\": \"r\"}]\n```");
+            MockClientHttpRequest sentRequest = new MockClientHttpRequest();
+            stubStream(new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8)), sentRequest);
+
+            List<String> delivered = new ArrayList<>();
+            List<GeneratedRecommendationDTO> result = chatGPTService.streamRecommendations(testUser,
+                    new ArrayList<>(), recommendation -> delivered.add(recommendation.getTitle()));
+
+            assertEquals(List.of("A", "C", "D"), delivered);
+            assertEquals(List.of("A", "C", "D"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            assertEquals("r {1}", result.get(0).getReason());
+            assertTrue(sentRequest.getBodyAsString().contains("\"stream\":true"));
+            verify(restTemplate, never()).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class),
+                    eq(String.class));
+        }
+
+        @Test
+        @DisplayName("Should deliver the first recommendation before the completion has been read")
+        void shouldDeliverFirstRecommendationBeforeCompletionEnds() throws Exception {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+
+            // Comentarios SSE de relleno: el resto de la respuesta no cabe en el buffer del lector
+            String events = deltas("[{\"title\": \"A\", \"reason\": \"r\"},")
+                    + ": ping\n".repeat(4000)
+                    + eventStream("{\"title\": \"B\", \"reason\": \"r\"}, {\"title\": \"C\", \"reason\": \"r\"}]");
+            ByteArrayInputStream body = new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8));
+            stubStream(body, new MockClientHttpRequest());
+
+            List<Integer> unreadBytesOnDelivery = new ArrayList<>();
+            chatGPTService.streamRecommendations(testUser, new ArrayList<>(),
+                    recommendation -> unreadBytesOnDelivery.add(body.available()));
+
+            assertEquals(3, unreadBytesOnDelivery.size());
+            assertTrue(unreadBytesOnDelivery.get(0) > 0);
+        }
+
+        @Test
+        @DisplayName("Should open another stream when the first one yields too few books")
+        void shouldRetryWhenStreamYieldsTooFewBooks() throws Exception {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+
+            String first = eventStream("[{\"title\": \"A\", \"reason\": \"r\"}]");
+            String second = eventStream("[{\"title\": \"A\", \"reason\": \"r\"}, {\"title\": \"B\", \"reason\": \"r\"},",
+                    " {\"title\": \"C\", \"reason\": \"r\"}]");
+            when(restTemplate.execute(anyString(), eq(HttpMethod.POST), any(RequestCallback.class),
+                    any(ResponseExtractor.class)))
+                    .thenAnswer(invocation -> invocation.getArgument(3, ResponseExtractor.class)
+                            .extractData(new MockClientHttpResponse(first.getBytes(StandardCharsets.UTF_8),
+                                    HttpStatus.OK)))
+                    .thenAnswer(invocation -> invocation.getArgument(3, ResponseExtractor.class)
+                            .extractData(new MockClientHttpResponse(second.getBytes(StandardCharsets.UTF_8),
+                                    HttpStatus.OK)));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.streamRecommendations(testUser,
+                    new ArrayList<>(), recommendation -> {
+                    });
+
+            assertEquals(List.of("A", "B", "C"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            verify(bookService, times(1)).findRecommendedBook("A");
+        }
+
+        @Test
+        @DisplayName("Should record the token usage chunk sent after the array closes")
+        void shouldRecordUsageChunkAfterArrayCloses() throws Exception {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+
+            String usage = objectMapper.writeValueAsString(Map.of("choices", List.of(), "usage",
+                    Map.of("prompt_tokens", 900, "completion_tokens", 120,
+                            "prompt_tokens_details", Map.of("cached_tokens", 768))));
+            String events = deltas("[{\"title\": \"A\", \"reason\": \"r\"}, {\"title\": \"B\", \"reason\": \"r\"},",
+                    " {\"title\": \"C\", \"reason\": \"r\"}]") + "data: " + usage + "\n\ndata: [DONE]\n\n";
+            stubStream(new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8)), new MockClientHttpRequest());
+
+            chatGPTService.streamRecommendations(testUser, new ArrayList<>(), recommendation -> {
+            });
+
+            verify(rateLimitService).recordUsage(eq(testUser), eq(900L), eq(768L), eq(120L), anyLong());
+            assertEquals(768.0, meterRegistry.get("recommendations.prompt.tokens").tag("source", "cached")
+                    .summary().totalAmount());
+        }
+
+        @Test
+        @DisplayName("Should finish the generation when recording the token usage fails")
+        void shouldFinishWhenUsageRecordingFails() throws Exception {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(bookService.findRecommendedBook("A")).thenReturn(book(1, "A"));
+            when(bookService.findRecommendedBook("B")).thenReturn(book(2, "B"));
+            when(bookService.findRecommendedBook("C")).thenReturn(book(3, "C"));
+            doThrow(new RuntimeException("BD caída")).when(rateLimitService).recordUsage(any(), anyLong(),
+                    anyLong(), anyLong(), anyLong());
+
+            String usage = objectMapper.writeValueAsString(Map.of("choices", List.of(), "usage",
+                    Map.of("prompt_tokens", 900, "completion_tokens", 120)));
+            String events = deltas("[{\"title\": \"A\", \"reason\": \"r\"}, {\"title\": \"B\", \"reason\": \"r\"},",
+                    " {\"title\": \"C\", \"reason\": \"r\"}]") + "data: " + usage + "\n\ndata: [DONE]\n\n";
+            stubStream(new ByteArrayInputStream(events.getBytes(StandardCharsets.UTF_8)), new MockClientHttpRequest());
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.streamRecommendations(testUser,
+                    new ArrayList<>(), recommendation -> {
+                    });
+
+            assertEquals(3, result.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("Fingerprint Cache Tests")
+    class FingerprintCacheTests {
+
+        private final List<GeneratedRecommendationDTO> cachedRecommendations = List.of(
+                GeneratedRecommendationDTO.builder().title("Dune").reason("r").enriched(true).build());
+
+        private String cacheKey(User user, List<UserBook> userBooks, List<String> rejectedTitles) {
+            return user.getId() + "|" + PreferenceFingerprint.of(testSurvey, userBooks, rejectedTitles);
+        }
+
+        @Test
+        @DisplayName("Should serve unchanged preferences from the cache without outbound calls")
+        void shouldServeUnchangedPreferencesFromCache() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of(testUserBook));
+            String key = cacheKey(testUser, List.of(testUserBook), List.of("Rejected"));
+            when(recommendationCacheService.find(key)).thenReturn(Optional.of(cachedRecommendations));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    List.of(Book.builder().title("Rejected").build()));
+
+            assertEquals(cachedRecommendations, result);
+            verifyNoInteractions(restTemplate, bookService);
+            verify(recommendationCacheService, never()).store(anyString(), anyList());
+        }
+
+        @Test
+        @DisplayName("Should ignore a cached result that contains a rejected title")
+        void shouldIgnoreCachedResultWithRejectedTitle() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            String key = cacheKey(testUser, List.of(), List.of("Dune"));
+            when(recommendationCacheService.find(key)).thenReturn(Optional.of(cachedRecommendations));
+            String response = "{\"choices\": [{\"message\": {\"content\": \"[{\\\"title\\\": \\\"Emma\\\", "
+                    + "\\\"reason\\\": \\\"r\\\"}]\"}}]}";
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Emma"))
+                    .thenReturn(Book.builder().id(2L).title("Emma").isbn13("9780000000002").build())
+                    .thenReturn(null);
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    List.of(Book.builder().title("Dune").build()));
+
+            assertTrue(result.stream().noneMatch(recommendation -> "Dune".equals(recommendation.getTitle())));
+            verify(restTemplate, atLeastOnce()).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                    eq(String.class));
+        }
+
+        @Test
+        @DisplayName("Should store the result under the fingerprint of the current call")
+        void shouldStoreResultUnderCurrentFingerprint() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            String response = "{\"choices\": [{\"message\": {\"content\": \"[{\\\"title\\\": \\\"Dune\\\", "
+                    + "\\\"reason\\\": \\\"r\\\"}]\"}}]}";
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Dune"))
+                    .thenReturn(Book.builder().id(1L).title("Dune").isbn13("9780000000001").build())
+                    .thenReturn(null);
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    List.of());
+
+            verify(recommendationCacheService).store(cacheKey(testUser, List.of(), List.of()), result);
+        }
+
+        @Test
+        @DisplayName("Should keep separate entries for users with identical preferences")
+        void shouldKeepSeparateEntriesPerUser() {
+            User otherUser = new User();
+            otherUser.setId(2L);
+            when(surveyService.findSurveyWithGenresByUser(any(User.class))).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(any(User.class))).thenReturn(List.of());
+            String response = "{\"choices\": [{\"message\": {\"content\": \"[{\\\"title\\\": \\\"Dune\\\", "
+                    + "\\\"reason\\\": \\\"r\\\"}]\"}}]}";
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Dune"))
+                    .thenReturn(Book.builder().id(1L).title("Dune").isbn13("9780000000001").build());
+
+            chatGPTService.generateRecommendations(testUser, List.of());
+            chatGPTService.generateRecommendations(otherUser, List.of());
+
+            // El segundo usuario no lee la entrada del primero
+            verify(recommendationCacheService).find(cacheKey(otherUser, List.of(), List.of()));
+            verify(recommendationCacheService).store(eq(cacheKey(testUser, List.of(), List.of())), anyList());
+            verify(recommendationCacheService).store(eq(cacheKey(otherUser, List.of(), List.of())), anyList());
+            assertNotEquals(cacheKey(testUser, List.of(), List.of()), cacheKey(otherUser, List.of(), List.of()));
+        }
+
+        @Test
+        @DisplayName("Should deliver cached recommendations through the streaming callback")
+        void shouldDeliverCachedRecommendationsWhenStreaming() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(recommendationCacheService.find(cacheKey(testUser, List.of(), List.of())))
+                    .thenReturn(Optional.of(cachedRecommendations));
+
+            List<GeneratedRecommendationDTO> delivered = new ArrayList<>();
+            chatGPTService.streamRecommendations(testUser, List.of(), delivered::add);
+
+            assertEquals(cachedRecommendations, delivered);
+            verifyNoInteractions(restTemplate, bookService);
         }
     }
 
@@ -651,6 +1195,398 @@ public class ChatGPTServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("Prompt Token Budget Tests")
+    class PromptTokenBudgetTests {
+
+        private UserBook userBook(String title, ReadingStatus status, Float rating, long daysAgo) {
+            return UserBook.builder()
+                    .user(testUser)
+                    .book(Book.builder().title(title).build())
+                    .status(status)
+                    .rating(rating)
+                    .createdAt(Instant.now().minusSeconds(daysAgo * 86400))
+                    .build();
+        }
+
+        private String buildPrompt(List<UserBook> userBooks, List<Book> rejectedBooks) {
+            return (String) ReflectionTestUtils.invokeMethod(chatGPTService, "buildPrompt", testSurvey, userBooks,
+                    rejectedBooks);
+        }
+
+        @Test
+        @DisplayName("Should keep the prompt within budget for a huge library")
+        void shouldKeepPromptWithinBudgetForHugeLibrary() {
+            List<UserBook> userBooks = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                userBooks.add(userBook("Libro de relleno número " + i, ReadingStatus.READ, 3.0f, 100 + i));
+            }
+            userBooks.add(userBook("Favorito Antiguo", ReadingStatus.READ, 5.0f, 900));
+            userBooks.add(userBook("Abandonado Antiguo", ReadingStatus.ABANDONED, null, 800));
+            List<Book> rejectedBooks = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                rejectedBooks.add(Book.builder().title("Rechazado " + i).build());
+            }
+
+            String prompt = buildPrompt(userBooks, rejectedBooks);
+
+            assertTrue(TokenEstimator.estimate(prompt) <= 1500, "tokens: " + TokenEstimator.estimate(prompt));
+            // Los libros informativos entran aunque sean antiguos
+            assertTrue(prompt.contains("Favorito Antiguo"));
+            assertTrue(prompt.contains("Abandonado Antiguo"));
+            // Entre los demás se prioriza el más reciente
+            assertTrue(prompt.contains("Libro de relleno número 0 "));
+            assertFalse(prompt.contains("Libro de relleno número 499 "));
+            assertTrue(prompt.contains("libros más: "));
+            assertTrue(prompt.contains("(valoración media 3.0/5)"));
+            assertTrue(prompt.contains("Rechazado 0"));
+            assertTrue(prompt.contains("exactamente 3 libros"));
+        }
+
+        @Test
+        @DisplayName("Should include every book when the library fits the budget")
+        void shouldIncludeEveryBookWhenLibraryFits() {
+            List<UserBook> userBooks = List.of(
+                    userBook("Uno", ReadingStatus.READ, 2.0f, 1),
+                    userBook("Dos", ReadingStatus.ABANDONED, null, 2));
+
+            String prompt = buildPrompt(userBooks, List.of());
+
+            assertTrue(prompt.contains("- Uno (LEÍDO COMPLETAMENTE - Valoración: 2.0/5)"));
+            assertTrue(prompt.contains("- Dos (NO TERMINADO"));
+            assertFalse(prompt.contains("libros más"));
+        }
+
+        @Test
+        @DisplayName("Should record estimated and reported token counts per request")
+        void shouldRecordTokenCountsPerRequest() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            String response = "{\"choices\": [{\"message\": {\"content\": \"[{\\\"title\\\": \\\"Dune\\\", "
+                    + "\\\"reason\\\": \\\"r\\\"}]\"}}], \"usage\": {\"prompt_tokens\": 321, \"completion_tokens\": 45}}";
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Dune")).thenReturn(null);
+
+            chatGPTService.generateRecommendations(testUser, List.of());
+
+            // 5 intentos, uno por petición
+            assertEquals(5, meterRegistry.get("recommendations.prompt.tokens").tag("source", "estimated")
+                    .summary().count());
+            assertEquals(5 * 321.0, meterRegistry.get("recommendations.prompt.tokens").tag("source", "openai")
+                    .summary().totalAmount());
+            assertEquals(5 * 45.0, meterRegistry.get("recommendations.completion.tokens").summary().totalAmount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Prefix-Stable Prompt Tests")
+    class PrefixStablePromptTests {
+
+        private final String response = "{\"choices\": [{\"message\": {\"content\": \"[{\\\"title\\\": "
+                + "\\\"Dune\\\", \\\"reason\\\": \\\"r\\\"}]\"}}], \"usage\": {\"prompt_tokens\": 1200, "
+                + "\"prompt_tokens_details\": {\"cached_tokens\": 1024}, \"completion_tokens\": 40}}";
+
+        @SuppressWarnings("unchecked")
+        private List<Map<String, String>> sentMessages(Survey survey) {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(survey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Dune"))
+                    .thenReturn(Book.builder().id(1L).title("Dune").isbn13("9780000000001").build());
+
+            chatGPTService.generateRecommendations(testUser, List.of());
+
+            ArgumentCaptor<HttpEntity<Map<String, Object>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+            verify(restTemplate, atLeastOnce()).exchange(anyString(), eq(HttpMethod.POST), request.capture(),
+                    eq(String.class));
+            return (List<Map<String, String>>) request.getValue().getBody().get("messages");
+        }
+
+        @Test
+        @DisplayName("Should send the static instructions first as an identical system message")
+        void shouldSendStaticInstructionsFirst() {
+            List<Map<String, String>> fast = sentMessages(testSurvey);
+
+            Survey slowSurvey = Survey.builder()
+                    .pace(PaceSelection.SLOW)
+                    .selectedGenres(List.of(testGenre))
+                    .firstTime(false)
+                    .build();
+            clearInvocations(restTemplate);
+            List<Map<String, String>> slow = sentMessages(slowSurvey);
+
+            assertEquals("system", fast.get(0).get("role"));
+            assertEquals("user", fast.get(1).get("role"));
+            assertEquals(fast.get(0).get("content"), slow.get(0).get("content"));
+            assertTrue(fast.get(0).get("content").contains("INSTRUCCIONES ESPECÍFICAS"));
+            assertFalse(fast.get(1).get("content").contains("INSTRUCCIONES ESPECÍFICAS"));
+            assertTrue(fast.get(1).get("content").contains("Rápido"));
+            assertTrue(slow.get(1).get("content").contains("Lento"));
+        }
+
+        @Test
+        @DisplayName("Should record cached prompt tokens reported by OpenAI")
+        void shouldRecordCachedPromptTokens() {
+            sentMessages(testSurvey);
+
+            assertEquals(1024.0, meterRegistry.get("recommendations.prompt.tokens").tag("source", "cached")
+                    .summary().max());
+        }
+    }
+
+    @Nested
+    @DisplayName("Adaptive Over-Generation Tests")
+    class AdaptiveOverGenerationTests {
+
+        private ResponseEntity<String> completion(String... titles) {
+            StringBuilder content = new StringBuilder("[");
+            for (int i = 0; i < titles.length; i++) {
+                content.append(i > 0 ? "," : "")
+                        .append("{\\\"title\\\": \\\"").append(titles[i])
+                        .append("\\\", \\\"reason\\\": \\\"r\\\"}");
+            }
+            content.append("]");
+            return ResponseEntity.ok("{\"choices\": [{\"message\": {\"content\": \"" + content + "\"}}]}");
+        }
+
+        @Test
+        @DisplayName("Should request the tracker's candidate count in a single call")
+        @SuppressWarnings("unchecked")
+        void shouldRequestTrackerCandidateCountInSingleCall() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(enrichmentYieldTracker.cohortOf(testSurvey)).thenReturn("FAST|FANTASY");
+            when(enrichmentYieldTracker.candidatesFor("FAST|FANTASY", 3)).thenReturn(6);
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(completion("A", "B", "C", "D", "E", "F"));
+            when(bookService.findRecommendedBook(anyString())).thenAnswer(invocation -> {
+                String title = invocation.getArgument(0);
+                return "BD".contains(title) ? null
+                        : Book.builder().id((long) title.charAt(0)).title(title).isbn13("978" + title).build();
+            });
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(List.of("A", "C", "E"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            ArgumentCaptor<HttpEntity<Map<String, Object>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+            verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), request.capture(),
+                    eq(String.class));
+            Map<String, Object> body = request.getValue().getBody();
+            List<Map<String, String>> messages = (List<Map<String, String>>) body.get("messages");
+            assertTrue(messages.get(1).get("content").contains("exactamente 6 libros"));
+            assertEquals(900, body.get("max_tokens"));
+            // Se registra el resultado de cada título enriquecido
+            verify(enrichmentYieldTracker, times(4)).record("FAST|FANTASY", true);
+            verify(enrichmentYieldTracker, times(2)).record("FAST|FANTASY", false);
+        }
+    }
+
+    @Nested
+    @DisplayName("Hedging Tests")
+    class HedgingTests {
+
+        private ExecutorService openAiExecutor;
+        private CountDownLatch releaseSlowCall;
+
+        @BeforeEach
+        void setUpHedging() {
+            openAiExecutor = Executors.newCachedThreadPool();
+            releaseSlowCall = new CountDownLatch(1);
+            ReflectionTestUtils.setField(chatGPTService, "openAiExecutor", openAiExecutor);
+            ReflectionTestUtils.setField(chatGPTService, "hedgingEnabled", true);
+            ReflectionTestUtils.setField(chatGPTService, "hedgeDelayMs", 50L);
+            ReflectionTestUtils.setField(chatGPTService, "maxConcurrentCalls", 2);
+        }
+
+        @AfterEach
+        void tearDownHedging() {
+            releaseSlowCall.countDown();
+            openAiExecutor.shutdownNow();
+        }
+
+        private ResponseEntity<String> completion(String... titles) {
+            StringBuilder content = new StringBuilder("[");
+            for (int i = 0; i < titles.length; i++) {
+                content.append(i > 0 ? "," : "")
+                        .append("{\\\"title\\\": \\\"").append(titles[i])
+                        .append("\\\", \\\"reason\\\": \\\"r\\\"}");
+            }
+            content.append("]");
+            return ResponseEntity.ok("{\"choices\": [{\"message\": {\"content\": \"" + content + "\"}}]}");
+        }
+
+        private Book book(long id, String title) {
+            return Book.builder().id(id).title(title).isbn13("978000000000" + id).build();
+        }
+
+        private void stubBooks() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            lenient().when(bookService.findRecommendedBook(anyString()))
+                    .thenAnswer(invocation -> {
+                        String title = invocation.getArgument(0);
+                        return book(title.charAt(0), title);
+                    });
+        }
+
+        @Test
+        @DisplayName("Should start a differently seeded completion when the first one is slow")
+        @SuppressWarnings("unchecked")
+        void shouldHedgeSlowCompletionWithDifferentSeed() {
+            stubBooks();
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenAnswer(invocation -> {
+                        releaseSlowCall.await(5, TimeUnit.SECONDS);
+                        return completion("A", "B", "C");
+                    })
+                    .thenReturn(completion("D", "E", "F"));
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(List.of("D", "E", "F"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+            ArgumentCaptor<HttpEntity<Map<String, Object>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+            verify(restTemplate, times(2)).exchange(anyString(), eq(HttpMethod.POST), request.capture(),
+                    eq(String.class));
+            assertNotEquals(request.getAllValues().get(0).getBody().get("seed"),
+                    request.getAllValues().get(1).getBody().get("seed"));
+            assertEquals(1.0, meterRegistry.get("recommendations.openai.hedged").counter().count());
+        }
+
+        @Test
+        @DisplayName("Should not exceed the concurrent call cap while waiting for a slow completion")
+        void shouldRespectConcurrentCallCap() {
+            ReflectionTestUtils.setField(chatGPTService, "maxConcurrentCalls", 1);
+            stubBooks();
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenAnswer(invocation -> {
+                        Thread.sleep(200);
+                        return completion("A", "B", "C");
+                    });
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(3, result.size());
+            verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class),
+                    eq(String.class));
+            assertEquals(0.0, meterRegistry.get("recommendations.openai.hedged").counter().count());
+        }
+
+        @Test
+        @DisplayName("Should wait for the hedged completion when the first one fails")
+        void shouldWaitForHedgeWhenFirstCompletionFails() {
+            stubBooks();
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenAnswer(invocation -> {
+                        releaseSlowCall.await(5, TimeUnit.SECONDS);
+                        throw new RuntimeException("Timeout de OpenAI");
+                    })
+                    .thenAnswer(invocation -> {
+                        releaseSlowCall.countDown();
+                        Thread.sleep(100);
+                        return completion("D", "E", "F");
+                    });
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals(List.of("D", "E", "F"), result.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+        }
+    }
+
+    @Nested
+    @DisplayName("Call Governor Tests")
+    class CallGovernorTests {
+
+        @Test
+        @DisplayName("Should propagate governor rejections without wrapping them")
+        void shouldPropagateGovernorRejections() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(openAiCallGovernor.acquire(testUser))
+                    .thenThrow(new RejectedExecutionException("Demasiadas llamadas a OpenAI en curso"));
+
+            RejectedExecutionException exception = assertThrows(RejectedExecutionException.class,
+                    () -> chatGPTService.generateRecommendations(testUser, new ArrayList<>()));
+
+            assertEquals("Demasiadas llamadas a OpenAI en curso", exception.getMessage());
+            verifyNoInteractions(restTemplate);
+        }
+
+        @Test
+        @DisplayName("Should retry a rate limited completion and record the remaining limits")
+        void shouldRetryRateLimitedCompletion() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            HttpHeaders limits = new HttpHeaders();
+            limits.add("x-ratelimit-remaining-requests", "499");
+            limits.add("x-ratelimit-remaining-tokens", "150000");
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenThrow(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests",
+                            new HttpHeaders(), new byte[0], StandardCharsets.UTF_8))
+                    .thenReturn(ResponseEntity.ok().headers(limits).body("{\"choices\": [{\"message\": "
+                            + "{\"content\": \"[{\\\"title\\\": \\\"Dune\\\", \\\"reason\\\": \\\"r\\\"}]\"}}]}"));
+            when(bookService.findRecommendedBook("Dune"))
+                    .thenReturn(Book.builder().id(1L).title("Dune").isbn13("9780000000001").build());
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser,
+                    new ArrayList<>());
+
+            assertEquals("Dune", result.get(0).getTitle());
+            verify(openAiRetryPolicy, atLeastOnce()).recordRateLimits(limits);
+            // Un permiso del gobernador por intento
+            verify(openAiCallGovernor, atLeast(2)).acquire(testUser);
+        }
+    }
+
+    @Nested
+    @DisplayName("Structured Output Tests")
+    class StructuredOutputTests {
+
+        private final String response = "{\"choices\": [{\"message\": {\"content\": \"{\\\"recommendations\\\": "
+                + "[{\\\"title\\\": \\\"Dune\\\", \\\"reason\\\": \\\"r\\\"}]}\"}}]}";
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("Should request a strict JSON schema and parse the wrapped array")
+        void shouldRequestStrictJsonSchemaAndParseWrappedArray() {
+            when(surveyService.findSurveyWithGenresByUser(testUser)).thenReturn(testSurvey);
+            when(userBookService.findUserBooksWithBook(testUser)).thenReturn(List.of());
+            when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                    .thenReturn(ResponseEntity.ok(response));
+            when(bookService.findRecommendedBook("Dune"))
+                    .thenReturn(Book.builder().id(1L).title("Dune").isbn13("9780000000001").build());
+
+            List<GeneratedRecommendationDTO> result = chatGPTService.generateRecommendations(testUser, List.of());
+
+            ArgumentCaptor<HttpEntity<Map<String, Object>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+            verify(restTemplate, atLeastOnce()).exchange(anyString(), eq(HttpMethod.POST), request.capture(),
+                    eq(String.class));
+            Map<String, Object> responseFormat = (Map<String, Object>) request.getValue().getBody()
+                    .get("response_format");
+            Map<String, Object> jsonSchema = (Map<String, Object>) responseFormat.get("json_schema");
+
+            assertEquals("json_schema", responseFormat.get("type"));
+            assertEquals(true, jsonSchema.get("strict"));
+            assertEquals("Dune", result.get(0).getTitle());
+        }
+
+        @Test
+        @DisplayName("Should still parse arrays wrapped in markdown and prose")
+        void shouldParseArraysWrappedInMarkdownAndProse() {
+            List<GeneratedRecommendationDTO> result = ReflectionTestUtils.invokeMethod(chatGPTService,
+                    "parseRecommendations",
+                    "Aquí tienes:\n```json\n[{\"title\": \"Dune [1965]\", \"reason\": \"r\"}]\n```");
+
+            assertEquals(1, result.size());
+            assertEquals("Dune [1965]", result.get(0).getTitle());
+        }
+    }
+
     @Nested
     @DisplayName("Response Parsing Tests")
     class ResponseParsingTests {
@@ -731,7 +1667,7 @@ public class ChatGPTServiceTest {
 
             // When
             String result = (String) ReflectionTestUtils.invokeMethod(chatGPTService, "extractContentFromResponse",
-                    apiResponse);
+                    apiResponse, testUser, 0L);
 
             // Then
             assertEquals("This is the content", result);
@@ -745,7 +1681,8 @@ public class ChatGPTServiceTest {
 
             // When & Then
             RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-                ReflectionTestUtils.invokeMethod(chatGPTService, "extractContentFromResponse", invalidResponse);
+                ReflectionTestUtils.invokeMethod(chatGPTService, "extractContentFromResponse", invalidResponse,
+                        testUser, 0L);
             });
 
             assertTrue(exception.getMessage().contains("Error al parsear respuesta de ChatGPT"));
@@ -0,0 +1,96 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.nextread.entities.Genre;
+import com.nextread.entities.GenreSelection;
+import com.nextread.entities.PaceSelection;
+import com.nextread.entities.Survey;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EnrichmentYieldTrackerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private EnrichmentYieldTracker tracker;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        tracker = new EnrichmentYieldTracker(meterRegistry, 0.7, 0.9, 8);
+    }
+
+    private void record(String cohort, int successes, int failures) {
+        for (int i = 0; i < successes; i++) {
+            tracker.record(cohort, true);
+        }
+        for (int i = 0; i < failures; i++) {
+            tracker.record(cohort, false);
+        }
+    }
+
+    @Test
+    @DisplayName("P(X >= k) de la binomial coincide con los valores conocidos")
+    void binomialTail() {
+        assertEquals(1.0, EnrichmentYieldTracker.probabilityOfAtLeast(0, 5, 0.3), 1e-9);
+        assertEquals(0.125, EnrichmentYieldTracker.probabilityOfAtLeast(3, 3, 0.5), 1e-9);
+        // P(X >= 3), X ~ B(5, 0.5) = (10 + 5 + 1) / 32
+        assertEquals(0.5, EnrichmentYieldTracker.probabilityOfAtLeast(3, 5, 0.5), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Sin datos usa la tasa inicial para dimensionar la petición")
+    void usesInitialYieldWithoutData() {
+        // Con p = 0.7 hacen falta 6 candidatos para P(X >= 3) >= 0.9
+        assertEquals(6, tracker.candidatesFor("FAST|FANTASY", 3));
+        assertEquals(1, meterRegistry.get("recommendations.candidates.requested").summary().count());
+    }
+
+    @Test
+    @DisplayName("Una cohorte que casi siempre se enriquece pide solo lo necesario")
+    void reliableCohortRequestsOnlyNeeded() {
+        record("FAST|FANTASY", 2000, 0);
+
+        assertEquals(3, tracker.candidatesFor("FAST|FANTASY", 3));
+        assertEquals(1, tracker.candidatesFor("FAST|FANTASY", 1));
+    }
+
+    @Test
+    @DisplayName("Una cohorte con mala tasa pide más candidatos, con un máximo")
+    void poorCohortRequestsMoreUpToMax() {
+        record("SLOW|POETRY", 10, 90);
+
+        assertTrue(tracker.estimatedYield("SLOW|POETRY") < 0.3);
+        assertEquals(8, tracker.candidatesFor("SLOW|POETRY", 3));
+    }
+
+    @Test
+    @DisplayName("Las cohortes sin datos se suavizan hacia la tasa global")
+    void unknownCohortFallsBackToGlobalYield() {
+        record("FAST|FANTASY", 0, 200);
+
+        // Tasa global suavizada con la inicial: (0 + 20 * 0.7) / (200 + 20)
+        assertEquals(14.0 / 220, tracker.estimatedYield("SLOW|HORROR"), 1e-9);
+    }
+
+    @Test
+    @DisplayName("La cohorte es el ritmo más el género principal")
+    void cohortIsPaceAndPrimaryGenre() {
+        Genre horror = new Genre();
+        horror.setSelectedGenre(GenreSelection.HORROR);
+        Genre fantasy = new Genre();
+        fantasy.setSelectedGenre(GenreSelection.FANTASY);
+        Survey survey = Survey.builder()
+                .pace(PaceSelection.SLOW)
+                .selectedGenres(List.of(horror, fantasy))
+                .build();
+
+        assertEquals("SLOW|FANTASY", tracker.cohortOf(survey));
+    }
+}
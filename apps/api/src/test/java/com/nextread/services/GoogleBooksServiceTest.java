@@ -0,0 +1,297 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import com.nextread.entities.Book;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class GoogleBooksServiceTest {
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    private GoogleBooksService googleBooksService;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        googleBooksService = new GoogleBooksService(restTemplate, meterRegistry, circuitBreakerRegistry,
+                BulkheadRegistry.ofDefaults(), 100, 60, 100, 10);
+    }
+
+    private static final String GOOGLE_RESPONSE = "{" +
+            "\"items\":[{" +
+            "\"volumeInfo\":{" +
+            "\"title\":\"GoogleBook\"," +
+            "\"industryIdentifiers\":[{" +
+            "\"type\":\"ISBN_10\",\"identifier\":\"0987654321\"},{" +
+            "\"type\":\"ISBN_13\",\"identifier\":\"0987654321098\"}]," +
+            "\"imageLinks\":{\"thumbnail\":\"https://img.com/gb.jpg\"}," +
+            "\"description\":\"desc\",\"pageCount\":200,\"publishedDate\":\"2023\"," +
+            "\"authors\":[\"Jane Doe\"]}}]}";
+
+    private Answer<Object> respondWith(String json) {
+        return invocation -> {
+            ResponseExtractor<?> extractor = invocation.getArgument(3);
+            return extractor.extractData(
+                    new MockClientHttpResponse(json.getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+        };
+    }
+
+    private OngoingStubbing<Object> whenGoogleCalled() {
+        return when(restTemplate.execute(any(URI.class), eq(HttpMethod.GET), isNull(), any(ResponseExtractor.class)));
+    }
+
+    private void verifyGoogleCalled(int times) {
+        verify(restTemplate, times(times)).execute(any(URI.class), eq(HttpMethod.GET), isNull(),
+                any(ResponseExtractor.class));
+    }
+
+    @Nested
+    @DisplayName("searchByTitle")
+    class SearchByTitle {
+
+        @Test
+        void parsesVolumes() throws Exception {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            List<Book> result = googleBooksService.searchByTitle("Google Book");
+
+            assertEquals(1, result.size());
+            Book book = result.get(0);
+            assertEquals("GoogleBook", book.getTitle());
+            assertEquals("0987654321", book.getIsbn10());
+            assertEquals("0987654321098", book.getIsbn13());
+            assertEquals("Editorial desconocida", book.getPublisher());
+            assertEquals(200, book.getPages());
+            assertEquals("Jane Doe", book.getAuthors().get(0).getName());
+        }
+
+        @Test
+        void ignoresUnknownFieldsAndMissingData() {
+            whenGoogleCalled().thenAnswer(respondWith("{\"kind\":\"books#volumes\",\"items\":[" +
+                    "{\"id\":\"x\",\"volumeInfo\":{\"title\":\"Solo titulo\",\"extra\":{\"a\":[1,2]}}}," +
+                    "{\"volumeInfo\":{\"title\":\"Otro\",\"publisher\":null,\"pageCount\":\"12\"}}]}"));
+
+            List<Book> result = googleBooksService.searchByTitle("Solo");
+
+            assertEquals(2, result.size());
+            assertEquals("Solo titulo", result.get(0).getTitle());
+            assertNull(result.get(0).getIsbn13());
+            assertNull(result.get(0).getCoverUrl());
+            assertTrue(result.get(0).getAuthors().isEmpty());
+            assertEquals("Editorial desconocida", result.get(1).getPublisher());
+            assertEquals(12, result.get(1).getPages());
+        }
+
+        @Test
+        void requestsProjectedFieldsWithEncodedTitle() {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            googleBooksService.searchByTitle("El señor & los anillos");
+
+            ArgumentCaptor<URI> uri = ArgumentCaptor.forClass(URI.class);
+            verify(restTemplate).execute(uri.capture(), eq(HttpMethod.GET), isNull(), any(ResponseExtractor.class));
+            String query = uri.getValue().getRawQuery();
+            assertTrue(query.startsWith("q=intitle%3AEl%20se%C3%B1or%20%26%20los%20anillos"));
+            assertTrue(query.contains("maxResults=10"));
+            assertTrue(query.contains("fields=items"));
+        }
+
+        @Test
+        void pagedSearch_requestsStartIndexAndCachesPerPage() {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            googleBooksService.searchByTitle("Google Book", 20, 20, book -> {
+            });
+            googleBooksService.searchByTitle("Google Book");
+
+            ArgumentCaptor<URI> uri = ArgumentCaptor.forClass(URI.class);
+            verify(restTemplate, times(2)).execute(uri.capture(), eq(HttpMethod.GET), isNull(),
+                    any(ResponseExtractor.class));
+            assertTrue(uri.getAllValues().get(0).getRawQuery().contains("startIndex=20&maxResults=20"));
+            assertTrue(uri.getAllValues().get(1).getRawQuery().contains("startIndex=0&maxResults=10"));
+        }
+
+        @Test
+        void pageSizeAboveGoogleLimit_rejected() {
+            assertThrows(IllegalArgumentException.class, () -> googleBooksService.searchByTitle("x", 0, 41, book -> {
+            }));
+        }
+
+        @Test
+        void repeatedNormalizedTitle_servedFromCache() throws Exception {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            googleBooksService.searchByTitle("Google Book");
+            List<Book> cached = googleBooksService.searchByTitle("  google   BOOK ");
+
+            assertEquals("GoogleBook", cached.get(0).getTitle());
+            verifyGoogleCalled(1);
+            assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        }
+
+        @Test
+        void emptyResults_notCached() {
+            whenGoogleCalled().thenAnswer(respondWith("{}"));
+
+            assertTrue(googleBooksService.searchByTitle("Nada").isEmpty());
+            assertTrue(googleBooksService.searchByTitle("Nada").isEmpty());
+
+            verifyGoogleCalled(2);
+        }
+
+        @Test
+        void returnedBooks_doNotAlterCacheEntry() throws Exception {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            googleBooksService.searchByTitle("Google Book").get(0).setTitle("Modificado");
+
+            assertEquals("GoogleBook", googleBooksService.searchByTitle("Google Book").get(0).getTitle());
+        }
+
+        @Test
+        void consumer_notifiedOnFetchAndOnCacheHit() {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+            List<Book> streamed = new ArrayList<>();
+
+            googleBooksService.searchByTitle("Google Book", streamed::add);
+            googleBooksService.searchByTitle("Google Book", streamed::add);
+
+            assertEquals(2, streamed.size());
+            assertEquals("GoogleBook", streamed.get(1).getTitle());
+            verifyGoogleCalled(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("single-flight")
+    class SingleFlight {
+
+        @Test
+        void concurrentIdenticalSearches_shareOneRequest() throws Exception {
+            CountDownLatch requestStarted = new CountDownLatch(1);
+            CountDownLatch releaseResponse = new CountDownLatch(1);
+            Answer<Object> response = respondWith(GOOGLE_RESPONSE);
+
+            whenGoogleCalled().thenAnswer(invocation -> {
+                requestStarted.countDown();
+                releaseResponse.await(5, TimeUnit.SECONDS);
+                return response.answer(invocation);
+            });
+
+            CompletableFuture<List<Book>> leader = CompletableFuture
+                    .supplyAsync(() -> googleBooksService.searchByTitle("Popular"));
+            assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<List<Book>> follower = CompletableFuture
+                    .supplyAsync(() -> googleBooksService.searchByTitle("popular"));
+            while (meterRegistry.get("googleBooks.search.coalesced").counter().count() < 1) {
+                Thread.sleep(5);
+            }
+            releaseResponse.countDown();
+
+            assertEquals("GoogleBook", leader.get(5, TimeUnit.SECONDS).get(0).getTitle());
+            assertEquals("GoogleBook", follower.get(5, TimeUnit.SECONDS).get(0).getTitle());
+            verifyGoogleCalled(1);
+        }
+
+        @Test
+        void failedRequest_propagatesAndAllowsRetry() throws Exception {
+            whenGoogleCalled()
+                    .thenThrow(new RuntimeException("timeout"))
+                    .thenAnswer(respondWith(GOOGLE_RESPONSE));
+
+            assertThrows(RuntimeException.class, () -> googleBooksService.searchByTitle("Popular"));
+            assertEquals(1, googleBooksService.searchByTitle("Popular").size());
+        }
+    }
+
+    @Nested
+    @DisplayName("circuit breaker")
+    class Resilience {
+
+        @Test
+        void openCircuit_skipsGoogle() {
+            circuitBreakerRegistry.circuitBreaker(GoogleBooksService.RESILIENCE_INSTANCE).transitionToOpenState();
+
+            assertThrows(CallNotPermittedException.class, () -> googleBooksService.searchByTitle("Popular"));
+            verifyGoogleCalled(0);
+        }
+
+        @Test
+        void openCircuit_stillServesCache() {
+            whenGoogleCalled().thenAnswer(respondWith(GOOGLE_RESPONSE));
+            googleBooksService.searchByTitle("Popular");
+
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(GoogleBooksService.RESILIENCE_INSTANCE);
+            circuitBreaker.transitionToOpenState();
+
+            assertEquals(1, googleBooksService.searchByTitle("Popular").size());
+            verifyGoogleCalled(1);
+        }
+
+        @Test
+        void failures_areRecorded() {
+            whenGoogleCalled().thenThrow(new RuntimeException("timeout"));
+
+            assertThrows(RuntimeException.class, () -> googleBooksService.searchByTitle("Popular"));
+
+            assertEquals(1, circuitBreakerRegistry.circuitBreaker(GoogleBooksService.RESILIENCE_INSTANCE)
+                    .getMetrics().getNumberOfFailedCalls());
+        }
+    }
+
+    @Nested
+    @DisplayName("caché negativa")
+    class NegativeCache {
+
+        @Test
+        void markedTitle_isKnownUnresolvableByNormalizedTitle() {
+            assertFalse(googleBooksService.isKnownUnresolvable("Libro Inventado"));
+
+            googleBooksService.markUnresolvable("Libro Inventado");
+
+            assertTrue(googleBooksService.isKnownUnresolvable("  libro   inventado "));
+            assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "googleBooks.unresolvable")
+                    .tag("result", "hit").functionCounter().count());
+        }
+    }
+}
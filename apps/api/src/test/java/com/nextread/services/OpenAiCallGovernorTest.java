@@ -0,0 +1,122 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OpenAiCallGovernorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        alice = new User();
+        alice.setId(1L);
+        bob = new User();
+        bob.setId(2L);
+    }
+
+    private void awaitQueued(OpenAiCallGovernor governor, int expected) throws InterruptedException {
+        for (int i = 0; i < 200 && governor.queued() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, governor.queued());
+    }
+
+    private Thread waitTurn(OpenAiCallGovernor governor, User user, String name, List<String> order) {
+        Thread thread = new Thread(() -> {
+            try (OpenAiCallGovernor.Permit permit = governor.acquire(user)) {
+                order.add(name);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    @DisplayName("Concede permisos sin esperar hasta el límite de llamadas en curso")
+    void grantsImmediatelyBelowLimit() {
+        OpenAiCallGovernor governor = new OpenAiCallGovernor(meterRegistry, 2, 1000);
+
+        OpenAiCallGovernor.Permit first = governor.acquire(alice);
+        OpenAiCallGovernor.Permit second = governor.acquire(alice);
+
+        assertEquals(2.0, meterRegistry.get("recommendations.openai.in-flight").gauge().value());
+        first.close();
+        first.close();
+        assertEquals(1, governor.inFlight());
+        second.close();
+        assertEquals(0, governor.inFlight());
+    }
+
+    @Test
+    @DisplayName("Reparte los permisos liberados por turnos entre usuarios")
+    void releasesPermitsRoundRobinAcrossUsers() throws Exception {
+        OpenAiCallGovernor governor = new OpenAiCallGovernor(meterRegistry, 1, 5000);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        OpenAiCallGovernor.Permit holder = governor.acquire(bob);
+        Thread alice1 = waitTurn(governor, alice, "alice-1", order);
+        awaitQueued(governor, 1);
+        Thread alice2 = waitTurn(governor, alice, "alice-2", order);
+        awaitQueued(governor, 2);
+        Thread bob1 = waitTurn(governor, bob, "bob-1", order);
+        awaitQueued(governor, 3);
+
+        holder.close();
+        alice1.join(5000);
+        alice2.join(5000);
+        bob1.join(5000);
+
+        // bob adelanta a la segunda llamada de alice aunque llegó después
+        assertEquals(List.of("alice-1", "bob-1", "alice-2"), order);
+        assertEquals(0, governor.inFlight());
+        assertEquals(4, meterRegistry.get("recommendations.openai.queue.wait").timer().count());
+    }
+
+    @Test
+    @DisplayName("Rechaza la llamada si no obtiene permiso dentro de la espera máxima")
+    void rejectsAfterMaxWait() {
+        OpenAiCallGovernor governor = new OpenAiCallGovernor(meterRegistry, 1, 50);
+        OpenAiCallGovernor.Permit holder = governor.acquire(bob);
+
+        assertThrows(RejectedExecutionException.class, () -> governor.acquire(alice));
+
+        assertEquals(0, governor.queued());
+        assertEquals(1.0, meterRegistry.get("recommendations.openai.rejected").tag("reason", "timeout")
+                .counter().count());
+        holder.close();
+        assertEquals(0, governor.inFlight());
+    }
+
+    @Test
+    @DisplayName("Rechaza sin esperar cuando la espera estimada supera el máximo")
+    void rejectsEarlyWhenEstimatedWaitIsTooLong() throws Exception {
+        OpenAiCallGovernor governor = new OpenAiCallGovernor(meterRegistry, 1, 20);
+        try (OpenAiCallGovernor.Permit slowCall = governor.acquire(bob)) {
+            Thread.sleep(60);
+        }
+
+        OpenAiCallGovernor.Permit holder = governor.acquire(bob);
+        long start = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> governor.acquire(alice));
+
+        assertTrue(System.nanoTime() - start < 20_000_000L);
+        assertEquals(1.0, meterRegistry.get("recommendations.openai.rejected").tag("reason", "predicted")
+                .counter().count());
+        holder.close();
+    }
+}
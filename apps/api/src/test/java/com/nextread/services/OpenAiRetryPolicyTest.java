@@ -0,0 +1,165 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OpenAiRetryPolicyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<Long> sleeps;
+    private OpenAiRetryPolicy policy;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        sleeps = new ArrayList<>();
+        policy = policy(20);
+    }
+
+    // Política que registra las esperas en lugar de dormir
+    private OpenAiRetryPolicy policy(double budgetCapacity) {
+        return new OpenAiRetryPolicy(meterRegistry, 3, 100, 10_000, budgetCapacity, 0) {
+            @Override
+            void sleep(long millis) {
+                sleeps.add(millis);
+            }
+        };
+    }
+
+    private HttpStatusCodeException error(HttpStatus status, HttpHeaders headers, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return status.is5xxServerError()
+                ? HttpServerErrorException.create(status, status.getReasonPhrase(), headers, bytes,
+                        StandardCharsets.UTF_8)
+                : HttpClientErrorException.create(status, status.getReasonPhrase(), headers, bytes,
+                        StandardCharsets.UTF_8);
+    }
+
+    private HttpHeaders headers(String... namesAndValues) {
+        HttpHeaders headers = new HttpHeaders();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.add(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    @Test
+    @DisplayName("Convierte las duraciones de x-ratelimit-reset-* a milisegundos")
+    void parsesRateLimitResetDurations() {
+        assertEquals(20, OpenAiRetryPolicy.parseDurationMs("20ms"));
+        assertEquals(1500, OpenAiRetryPolicy.parseDurationMs("1.5s"));
+        assertEquals(360_000, OpenAiRetryPolicy.parseDurationMs("6m0s"));
+        assertEquals(3_723_000, OpenAiRetryPolicy.parseDurationMs("1h2m3s"));
+        assertEquals(-1, OpenAiRetryPolicy.parseDurationMs("soon"));
+        assertEquals(-1, OpenAiRetryPolicy.parseDurationMs(null));
+    }
+
+    @Test
+    @DisplayName("Espera lo que indica Retry-After antes de reintentar un 429")
+    void honorsRetryAfterOn429() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = policy.execute(100, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw error(HttpStatus.TOO_MANY_REQUESTS, headers("Retry-After", "2"), "{}");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, calls.get());
+        // 2 s más un jitter de como mucho el retardo base
+        assertEquals(1, sleeps.size());
+        assertTrue(sleeps.get(0) >= 2000 && sleeps.get(0) <= 2100);
+        assertEquals(1.0, meterRegistry.get("recommendations.openai.retries").tag("status", "429")
+                .counter().count());
+    }
+
+    @Test
+    @DisplayName("Usa el reinicio del límite agotado cuando no hay Retry-After")
+    void usesRateLimitResetWhenNoRetryAfter() {
+        HttpStatusCodeException e = error(HttpStatus.TOO_MANY_REQUESTS,
+                headers("x-ratelimit-remaining-requests", "0", "x-ratelimit-reset-requests", "1.5s",
+                        "x-ratelimit-remaining-tokens", "9000", "x-ratelimit-reset-tokens", "6m0s"),
+                "{}");
+
+        long delay = policy.retryDelayMs(e, 1);
+
+        assertTrue(delay >= 1500 && delay <= 1600);
+    }
+
+    @Test
+    @DisplayName("Aplica backoff exponencial con jitter a los 5xx y se rinde tras el máximo de intentos")
+    void backsOffExponentiallyOnServerErrors() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(HttpServerErrorException.class, () -> policy.execute(100, () -> {
+            calls.incrementAndGet();
+            throw error(HttpStatus.BAD_GATEWAY, new HttpHeaders(), "");
+        }));
+
+        assertEquals(3, calls.get());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.get(0) <= 100);
+        assertTrue(sleeps.get(1) <= 200);
+        assertEquals(2.0, meterRegistry.get("recommendations.openai.retries").tag("status", "5xx")
+                .counter().count());
+    }
+
+    @Test
+    @DisplayName("No reintenta errores 4xx ni cuotas agotadas")
+    void doesNotRetryClientErrorsOrExhaustedQuota() {
+        assertEquals(-1, policy.retryDelayMs(error(HttpStatus.BAD_REQUEST, new HttpHeaders(), ""), 1));
+        assertEquals(-1, policy.retryDelayMs(error(HttpStatus.TOO_MANY_REQUESTS, new HttpHeaders(),
+                "{\"error\": {\"code\": \"insufficient_quota\"}}"), 1));
+        // Retry-After mayor que el máximo permitido
+        assertEquals(-1, policy.retryDelayMs(error(HttpStatus.TOO_MANY_REQUESTS,
+                headers("Retry-After", "60"), "{}"), 1));
+    }
+
+    @Test
+    @DisplayName("Deja de reintentar cuando se agota el presupuesto compartido")
+    void stopsRetryingWhenBudgetIsExhausted() {
+        OpenAiRetryPolicy tightBudget = policy(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(HttpServerErrorException.class, () -> tightBudget.execute(100, () -> {
+            calls.incrementAndGet();
+            throw error(HttpStatus.SERVICE_UNAVAILABLE, new HttpHeaders(), "");
+        }));
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, meterRegistry.get("recommendations.openai.retry.budget.exhausted").counter().count());
+    }
+
+    @Test
+    @DisplayName("Espera al reinicio del límite antes de llamar si no quedan tokens")
+    void pacesCallsWhenRemainingTokensAreTooLow() {
+        policy.recordRateLimits(headers("x-ratelimit-remaining-requests", "50",
+                "x-ratelimit-remaining-tokens", "300", "x-ratelimit-reset-tokens", "2s"));
+
+        policy.execute(100, () -> "ok");
+        assertTrue(sleeps.isEmpty());
+
+        policy.execute(1000, () -> "ok");
+        assertEquals(1, sleeps.size());
+        assertTrue(sleeps.get(0) > 1000 && sleeps.get(0) <= 2000);
+        assertEquals(300.0, meterRegistry.get("recommendations.openai.ratelimit.remaining").tag("type", "tokens")
+                .gauge().value());
+    }
+}
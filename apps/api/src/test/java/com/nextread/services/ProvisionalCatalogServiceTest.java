@@ -0,0 +1,85 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.nextread.entities.Book;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ProvisionalCatalogServiceTest {
+
+    @Mock
+    private BookService bookService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProvisionalCatalogService provisionalCatalogService;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        provisionalCatalogService = new ProvisionalCatalogService(bookService, meterRegistry, 3);
+        ReflectionTestUtils.setField(provisionalCatalogService, "batchSize", 2);
+    }
+
+    private Book book(String isbn13) {
+        return Book.builder().title("Libro " + isbn13).isbn13(isbn13).build();
+    }
+
+    @Test
+    @DisplayName("flush guarda la cola en lotes acotados")
+    void flush_savesInBatches() {
+        when(bookService.saveProvisionalBooks(anyList())).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        provisionalCatalogService.enqueue(List.of(book("1"), book("2"), book("3")));
+
+        assertEquals(3, provisionalCatalogService.flush());
+
+        verify(bookService, times(2)).saveProvisionalBooks(anyList());
+        assertEquals(3.0, meterRegistry.get("books.provisional.persisted").counter().count());
+    }
+
+    @Test
+    @DisplayName("enqueue ignora libros ya encolados, persistidos o sin ISBN13")
+    void enqueue_skipsDuplicatesAndPersisted() {
+        Book persisted = book("2");
+        persisted.setId(1L);
+
+        provisionalCatalogService.enqueue(List.of(book("1"), book("1"), persisted, book(null)));
+
+        assertEquals(1.0, meterRegistry.get("books.provisional.queued").counter().count());
+        assertEquals(1.0, meterRegistry.get("books.provisional.pending").gauge().value());
+    }
+
+    @Test
+    @DisplayName("enqueue descarta libros cuando la cola está llena")
+    void enqueue_dropsWhenFull() {
+        provisionalCatalogService.enqueue(List.of(book("1"), book("2"), book("3"), book("4")));
+
+        assertEquals(1.0, meterRegistry.get("books.provisional.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("un lote fallido no impide volcar los siguientes")
+    void flush_failedBatchDoesNotStopOthers() {
+        when(bookService.saveProvisionalBooks(anyList()))
+                .thenThrow(new RuntimeException("duplicate key"))
+                .thenReturn(1);
+        provisionalCatalogService.enqueue(List.of(book("1"), book("2"), book("3")));
+
+        assertEquals(1, provisionalCatalogService.flush());
+        assertEquals(2.0, meterRegistry.get("books.provisional.failed").counter().count());
+    }
+}
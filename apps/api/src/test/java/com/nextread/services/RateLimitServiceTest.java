@@ -229,4 +229,43 @@ public class RateLimitServiceTest {
             verify(recommendationRequestRepository).deleteByRequestDateBefore(cutoffDate);
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    @DisplayName("Token Usage Tests")
+    class TokenUsageTests {
+
+        @BeforeEach
+        void setUpTokenLimit() {
+            ReflectionTestUtils.setField(rateLimitService, "rateLimitEnabled", true);
+            ReflectionTestUtils.setField(rateLimitService, "maxRecommendationsPerDay", 3);
+            ReflectionTestUtils.setField(rateLimitService, "maxTokensPerDay", 10_000L);
+        }
+
+        @Test
+        @DisplayName("Should deny requests once the daily token budget is spent")
+        void shouldDenyRequestsWhenTokenBudgetIsSpent() {
+            RecommendationRequest request = RecommendationRequest.builder()
+                    .user(testUser)
+                    .requestDate(LocalDate.now())
+                    .requestCount(1)
+                    .promptTokens(8_000L)
+                    .completionTokens(2_000L)
+                    .build();
+            when(recommendationRequestRepository.findByUserAndRequestDate(testUser, LocalDate.now()))
+                    .thenReturn(Optional.of(request));
+
+            assertFalse(rateLimitService.canMakeRequest(testUser));
+            assertEquals(0, rateLimitService.getRemainingRequests(testUser));
+        }
+
+        @Test
+        @DisplayName("Should record token usage even when rate limiting is disabled")
+        void shouldRecordUsageWhenRateLimitingIsDisabled() {
+            ReflectionTestUtils.setField(rateLimitService, "rateLimitEnabled", false);
+
+            rateLimitService.recordUsage(testUser, 900, 768, 120, 1500);
+
+            verify(recommendationRequestRepository).addUsage(1L, LocalDate.now(), 3, 900L, 768L, 120L, 1500L);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.entities.RecommendationInventory;
+import com.nextread.entities.User;
+import com.nextread.repositories.RecommendationInventoryRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class RecommendationInventoryServiceTest {
+
+    private static final String FINGERPRINT = "abc";
+
+    @Mock
+    private RecommendationInventoryRepository recommendationInventoryRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private RecommendationInventoryService inventoryService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        inventoryService = new RecommendationInventoryService(recommendationInventoryRepository, objectMapper,
+                meterRegistry, 4, 72);
+        user = new User();
+        user.setId(1L);
+    }
+
+    private GeneratedRecommendationDTO recommendation(String title) {
+        return GeneratedRecommendationDTO.builder()
+                .title(title)
+                .reason("r")
+                .authors(List.of("Autor"))
+                .enriched(true)
+                .build();
+    }
+
+    private RecommendationInventory entry(String title, Instant createdAt) throws Exception {
+        return RecommendationInventory.builder()
+                .user(user)
+                .fingerprint(FINGERPRINT)
+                .titleKey(title.toLowerCase())
+                .payload(objectMapper.writeValueAsString(recommendation(title)))
+                .createdAt(createdAt)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should serve the oldest valid entries and discard excluded or expired ones")
+    void shouldServeValidEntriesAndDiscardInvalidOnes() throws Exception {
+        Instant now = Instant.now();
+        RecommendationInventory expired = entry("Old", now.minus(100, ChronoUnit.HOURS));
+        RecommendationInventory rejected = entry("Dune", now);
+        List<RecommendationInventory> valid = List.of(entry("A", now), entry("B", now), entry("C", now),
+                entry("D", now));
+        List<RecommendationInventory> stock = new ArrayList<>(List.of(expired, rejected));
+        stock.addAll(valid);
+        when(recommendationInventoryRepository.findByUserAndFingerprintOrderByIdAsc(user, FINGERPRINT))
+                .thenReturn(stock);
+
+        List<GeneratedRecommendationDTO> served = inventoryService.take(user, FINGERPRINT, Set.of("dune"), 3);
+
+        assertEquals(List.of("A", "B", "C"), served.stream().map(GeneratedRecommendationDTO::getTitle).toList());
+        assertEquals(List.of("Autor"), served.get(0).getAuthors());
+        verify(recommendationInventoryRepository).deleteByUserAndFingerprintNot(user, FINGERPRINT);
+        verify(recommendationInventoryRepository).deleteAll(List.of(expired, rejected));
+        verify(recommendationInventoryRepository).deleteAll(valid.subList(0, 3));
+        assertEquals(1.0, meterRegistry.get("recommendations.inventory.requests").tag("result", "hit")
+                .counter().count());
+    }
+
+    @Test
+    @DisplayName("Should serve nothing and keep the stock when there are not enough valid entries")
+    void shouldServeNothingWithoutEnoughEntries() throws Exception {
+        when(recommendationInventoryRepository.findByUserAndFingerprintOrderByIdAsc(user, FINGERPRINT))
+                .thenReturn(List.of(entry("A", Instant.now()), entry("a", Instant.now())));
+
+        List<GeneratedRecommendationDTO> served = inventoryService.take(user, FINGERPRINT, Set.of(), 2);
+
+        assertTrue(served.isEmpty());
+        // Solo se elimina el duplicado
+        verify(recommendationInventoryRepository, times(1)).deleteAll(argThat(entries -> entries.iterator().hasNext()));
+        assertEquals(1.0, meterRegistry.get("recommendations.inventory.requests").tag("result", "miss")
+                .counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Should store new enriched titles up to the per user limit")
+    void shouldStoreNewTitlesUpToLimit() throws Exception {
+        when(recommendationInventoryRepository.findByUserAndFingerprintOrderByIdAsc(user, FINGERPRINT))
+                .thenReturn(List.of(entry("A", Instant.now())));
+        GeneratedRecommendationDTO notEnriched = GeneratedRecommendationDTO.builder().title("X").build();
+
+        inventoryService.store(user, FINGERPRINT, List.of(recommendation("a"), notEnriched, recommendation("B"),
+                recommendation("C"), recommendation("D"), recommendation("E")));
+
+        ArgumentCaptor<List<RecommendationInventory>> saved = ArgumentCaptor.forClass(List.class);
+        verify(recommendationInventoryRepository).saveAll(saved.capture());
+        assertEquals(List.of("b", "c", "d"), saved.getValue().stream().map(RecommendationInventory::getTitleKey)
+                .toList());
+        assertEquals(3.0, meterRegistry.get("recommendations.inventory.banked").counter().count());
+    }
+}
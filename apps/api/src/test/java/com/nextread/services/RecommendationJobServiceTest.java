@@ -0,0 +1,117 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.dto.RecommendationJobDTO;
+import com.nextread.dto.RecommendationJobDTO.Status;
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class RecommendationJobServiceTest {
+
+    @Mock
+    private RecommendationService recommendationService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private List<Runnable> pendingTasks;
+    private RecommendationJobService recommendationJobService;
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        pendingTasks = new ArrayList<>();
+        // Executor manual: las tareas se ejecutan cuando el test lo decide
+        Executor executor = pendingTasks::add;
+        recommendationJobService = new RecommendationJobService(recommendationService, executor, meterRegistry, 30);
+
+        user = new User();
+        user.setId(1L);
+    }
+
+    private void runPendingTasks() {
+        pendingTasks.forEach(Runnable::run);
+        pendingTasks.clear();
+    }
+
+    @Test
+    @DisplayName("submit encola el trabajo en estado PENDING y lo completa al ejecutarse")
+    void submit_completesJob() {
+        List<GeneratedRecommendationDTO> recommendations = List.of(
+                GeneratedRecommendationDTO.builder().title("Dune").build());
+        when(recommendationService.generateRecommendations(user)).thenReturn(recommendations);
+
+        RecommendationJobDTO job = recommendationJobService.submit(user);
+
+        assertEquals(Status.PENDING, job.getStatus());
+        assertEquals(1.0, meterRegistry.get("recommendations.jobs.queued").gauge().value());
+
+        runPendingTasks();
+
+        RecommendationJobDTO finished = recommendationJobService.findJob(job.getJobId(), user).orElseThrow();
+        assertEquals(Status.COMPLETED, finished.getStatus());
+        assertEquals(recommendations, finished.getRecommendations());
+        assertNotNull(finished.getCompletedAt());
+        assertEquals(0.0, meterRegistry.get("recommendations.jobs.queued").gauge().value());
+        assertEquals(1, meterRegistry.get("recommendations.jobs.latency").tag("outcome", "completed").timer().count());
+    }
+
+    @Test
+    @DisplayName("Un error del generador deja el trabajo en FAILED con el mensaje")
+    void submit_failedJob() {
+        when(recommendationService.generateRecommendations(user))
+                .thenThrow(new RuntimeException("Error al generar recomendaciones: timeout"));
+
+        RecommendationJobDTO job = recommendationJobService.submit(user);
+        runPendingTasks();
+
+        RecommendationJobDTO finished = recommendationJobService.findJob(job.getJobId(), user).orElseThrow();
+        assertEquals(Status.FAILED, finished.getStatus());
+        assertEquals("Error al generar recomendaciones: timeout", finished.getError());
+        assertEquals(1, meterRegistry.get("recommendations.jobs.latency").tag("outcome", "failed").timer().count());
+    }
+
+    @Test
+    @DisplayName("findJob no devuelve trabajos de otro usuario")
+    void findJob_hidesForeignJobs() {
+        RecommendationJobDTO job = recommendationJobService.submit(user);
+
+        User other = new User();
+        other.setId(2L);
+
+        assertTrue(recommendationJobService.findJob(job.getJobId(), other).isEmpty());
+        assertTrue(recommendationJobService.findJob("desconocido", user).isEmpty());
+    }
+
+    @Test
+    @DisplayName("submit propaga el rechazo si la cola está llena y no guarda el trabajo")
+    void submit_rejectedWhenQueueFull() {
+        Executor fullExecutor = task -> {
+            throw new RejectedExecutionException("cola llena");
+        };
+        RecommendationJobService saturated = new RecommendationJobService(recommendationService, fullExecutor,
+                meterRegistry = new SimpleMeterRegistry(), 30);
+
+        assertThrows(RejectedExecutionException.class, () -> saturated.submit(user));
+
+        assertEquals(1.0, meterRegistry.get("recommendations.jobs.rejected").counter().count());
+        assertEquals(0.0, meterRegistry.get("recommendations.jobs.queued").gauge().value());
+        verifyNoInteractions(recommendationService);
+    }
+}
@@ -0,0 +1,146 @@
+package com.nextread.services;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.client.RestTemplate;
+
+import com.nextread.entities.Author;
+import com.nextread.entities.Book;
+import com.nextread.entities.Genre;
+import com.nextread.entities.GenreSelection;
+import com.nextread.entities.PaceSelection;
+import com.nextread.entities.ReadingStatus;
+import com.nextread.entities.Survey;
+import com.nextread.entities.User;
+import com.nextread.entities.UserBook;
+import com.nextread.repositories.AuthorRepository;
+import com.nextread.repositories.BookRepository;
+import com.nextread.repositories.RecommendationInventoryRepository;
+import com.nextread.repositories.SurveyRepository;
+import com.nextread.repositories.UserBookRepository;
+import com.nextread.repositories.UserRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Pre-generación contra una base de datos real (H2 en memoria). La encuesta y
+ * la biblioteca tienen asociaciones perezosas y la pre-generación corre fuera
+ * de cualquier petición, sin sesión de Hibernate abierta.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:prefetch;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "security.jwt.secret-key=dGVzdC1zZWNyZXQta2V5LWZvci1pbnRlZ3JhdGlvbi10ZXN0cy0xMjM0NTY3ODkw",
+        "spring.mail.username=test@nextread.com",
+        "spring.mail.password=test",
+        "openai.api.key=test-key",
+        "openai.api.url=http://localhost/openai",
+        "app.rate-limit.enabled=false",
+        "app.rate-limit.recommendations-per-day=999",
+        "app.rate-limit.tokens-per-day=0",
+        "app.recommendations.prefetch.enabled=false",
+        "app.recommendations.hedging.enabled=false"
+})
+class RecommendationPrefetchServiceIntegrationTest {
+
+    @Autowired
+    private RecommendationPrefetchService prefetchService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private SurveyRepository surveyRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private UserBookRepository userBookRepository;
+    @Autowired
+    private RecommendationInventoryRepository recommendationInventoryRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean(name = "openAiRestTemplate")
+    private RestTemplate openAiRestTemplate;
+
+    private Book book(Author author, int id, String title) {
+        return bookRepository.save(Book.builder()
+                .title(title)
+                .isbn13("978000000000" + id)
+                .isbn10("000000000" + id)
+                .publisher("Editorial")
+                .pages(300)
+                .publishedYear("1965")
+                .authors(List.of(author))
+                .build());
+    }
+
+    private ResponseEntity<String> completion(String... titles) {
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i < titles.length; i++) {
+            content.append(i > 0 ? "," : "")
+                    .append("{\\\"title\\\": \\\"").append(titles[i])
+                    .append("\\\", \\\"reason\\\": \\\"r\\\"}");
+        }
+        content.append("]");
+        return ResponseEntity.ok("{\"choices\": [{\"message\": {\"content\": \"" + content + "\"}}]}");
+    }
+
+    @Test
+    @DisplayName("Should fill the inventory from a thread without a Hibernate session")
+    void shouldFillInventoryWithoutSession() {
+        User user = new User();
+        user.setNickname("reader");
+        user.setEmail("reader@nextread.com");
+        user.setAvatarUrl("https://nextread.com/avatar.png");
+        user.setPassword("secret");
+        user.setEnabled(true);
+        user = userRepository.save(user);
+
+        // El género se guarda en cascada con la encuesta
+        Genre genre = new Genre();
+        genre.setSelectedGenre(GenreSelection.SCIENCE_FICTION);
+        surveyRepository.save(Survey.builder()
+                .user(user)
+                .pace(PaceSelection.FAST)
+                .firstTime(false)
+                .selectedGenres(List.of(genre))
+                .build());
+
+        Author author = authorRepository.save(Author.builder().name("Frank Herbert").build());
+        Book read = book(author, 1, "Dune");
+        book(author, 2, "Dune Messiah");
+        book(author, 3, "Children of Dune");
+        book(author, 4, "God Emperor of Dune");
+        userBookRepository.save(UserBook.builder().user(user).book(read).status(ReadingStatus.READ).build());
+
+        when(openAiRestTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(completion("Dune Messiah", "Children of Dune", "God Emperor of Dune"));
+
+        prefetchService.prefetch(user);
+
+        assertEquals(0.0, meterRegistry.get("recommendations.prefetch.runs").tag("result", "failed")
+                .counter().count());
+        assertEquals(1.0, meterRegistry.get("recommendations.prefetch.runs").tag("result", "completed")
+                .counter().count());
+        // El inventario se guarda en segundo plano al terminar los enriquecimientos
+        await().atMost(Duration.ofSeconds(5)).until(() -> recommendationInventoryRepository.count() == 3);
+    }
+}
@@ -0,0 +1,122 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nextread.entities.User;
+import com.nextread.events.PreferencesChangedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class RecommendationPrefetchServiceTest {
+
+    private static final long DEBOUNCE_MS = 50;
+
+    @Mock
+    private ChatGPTService chatGPTService;
+
+    @Mock
+    private RecommendationService recommendationService;
+
+    @Mock
+    private SurveyService surveyService;
+
+    @Mock
+    private RateLimitService rateLimitService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        user = new User();
+        user.setId(1L);
+    }
+
+    // Las pre-generaciones se ejecutan en el hilo que vence el debounce
+    private RecommendationPrefetchService prefetchService(Executor executor) {
+        return new RecommendationPrefetchService(chatGPTService, recommendationService, surveyService,
+                rateLimitService, executor, meterRegistry, true, DEBOUNCE_MS);
+    }
+
+    private double runs(String result) {
+        return meterRegistry.get("recommendations.prefetch.runs").tag("result", result).counter().count();
+    }
+
+    @Test
+    @DisplayName("Collapses a burst of changes into one pre-generation")
+    void collapsesBurstIntoOnePrefetch() throws Exception {
+        RecommendationPrefetchService prefetchService = prefetchService(Runnable::run);
+        when(surveyService.hasCompletedSurvey(user)).thenReturn(true);
+        when(rateLimitService.canMakeRequest(user)).thenReturn(true);
+        when(recommendationService.getRecentlyRejectedBooks(user, 30)).thenReturn(List.of());
+        when(chatGPTService.prefillInventory(user, List.of())).thenReturn(true);
+
+        for (int i = 0; i < 3; i++) {
+            prefetchService.onPreferencesChanged(new PreferencesChangedEvent(user));
+        }
+
+        verify(chatGPTService, timeout(2000)).prefillInventory(user, List.of());
+        Thread.sleep(DEBOUNCE_MS * 3);
+        verify(chatGPTService, times(1)).prefillInventory(any(), any());
+        assertEquals(1.0, runs("completed"));
+        assertEquals(2.0, meterRegistry.get("recommendations.prefetch.debounced").counter().count());
+    }
+
+    @Test
+    @DisplayName("Reschedules when a background generation is already running for the user")
+    void reschedulesWhenUserIsBusy() {
+        RecommendationPrefetchService prefetchService = prefetchService(Runnable::run);
+        when(surveyService.hasCompletedSurvey(user)).thenReturn(true);
+        when(rateLimitService.canMakeRequest(user)).thenReturn(true);
+        when(recommendationService.getRecentlyRejectedBooks(user, 30)).thenReturn(List.of());
+        when(chatGPTService.prefillInventory(user, List.of())).thenReturn(false).thenReturn(true);
+
+        prefetchService.onPreferencesChanged(new PreferencesChangedEvent(user));
+
+        verify(chatGPTService, timeout(2000).times(2)).prefillInventory(user, List.of());
+    }
+
+    @Test
+    @DisplayName("Skips users without daily requests left and drops work when the pool is full")
+    void skipsExhaustedUsersAndDropsWhenPoolIsFull() {
+        when(surveyService.hasCompletedSurvey(user)).thenReturn(true);
+        when(rateLimitService.canMakeRequest(user)).thenReturn(false, true);
+        prefetchService(Runnable::run).onPreferencesChanged(new PreferencesChangedEvent(user));
+
+        prefetchService(task -> {
+            throw new RejectedExecutionException("lleno");
+        }).onPreferencesChanged(new PreferencesChangedEvent(user));
+
+        verify(chatGPTService, after(DEBOUNCE_MS * 3).never()).prefillInventory(any(), any());
+        assertEquals(1.0, runs("skipped"));
+        assertEquals(1.0, runs("rejected"));
+    }
+
+    @Test
+    @DisplayName("Does not pre-generate while the user is still onboarding")
+    void ignoresOnboardingUsers() {
+        when(surveyService.hasCompletedSurvey(user)).thenReturn(false);
+
+        prefetchService(Runnable::run).onPreferencesChanged(new PreferencesChangedEvent(user));
+
+        verify(chatGPTService, after(DEBOUNCE_MS * 3).never()).prefillInventory(any(), any());
+        verifyNoInteractions(rateLimitService, recommendationService);
+        assertEquals(0.0, runs("failed"));
+        assertEquals(0.0, runs("skipped"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.nextread.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.nextread.controller.RecommendationController;
+import com.nextread.dto.GeneratedRecommendationDTO;
+import com.nextread.entities.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class RecommendationStreamServiceTest {
+
+    @Mock
+    private RecommendationService recommendationService;
+    @Mock
+    private ChatGPTService chatGPTService;
+    @Mock
+    private RateLimitService rateLimitService;
+    @Mock
+    private RecommendationJobService recommendationJobService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MockMvc mockMvc;
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        // La generación se ejecuta en el hilo del test
+        RecommendationStreamService streamService = new RecommendationStreamService(recommendationService,
+                chatGPTService, (Executor) Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(streamService, "streamTimeoutMs", 5000L);
+        mockMvc = MockMvcBuilders.standaloneSetup(new RecommendationController(recommendationService,
+                rateLimitService, recommendationJobService, streamService)).build();
+
+        user = new User();
+        user.setId(1L);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+        when(rateLimitService.canMakeRequest(user)).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private GeneratedRecommendationDTO recommendation(String title) {
+        return GeneratedRecommendationDTO.builder().title(title).reason("r").enriched(true).build();
+    }
+
+    private String stream() throws Exception {
+        return mockMvc.perform(post("/recommendations/generate/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    @DisplayName("envía cada recomendación según llega y termina con complete")
+    void sendsEachRecommendationThenComplete() throws Exception {
+        List<GeneratedRecommendationDTO> generated = List.of(recommendation("Dune"), recommendation("1984"));
+        when(recommendationService.getRecentlyRejectedBooks(user, 30)).thenReturn(List.of());
+        when(chatGPTService.streamRecommendations(eq(user), eq(List.of()), any())).thenAnswer(invocation -> {
+            Consumer<GeneratedRecommendationDTO> onRecommendation = invocation.getArgument(2);
+            generated.forEach(onRecommendation);
+            return generated;
+        });
+
+        String body = stream();
+
+        int first = body.indexOf("Dune");
+        int second = body.indexOf("1984");
+        int complete = body.indexOf("event:complete");
+        assertTrue(first >= 0 && first < second && second < complete, body);
+        assertTrue(body.contains("\"count\":2"), body);
+        verify(recommendationService).saveGeneratedRecommendations(user, generated);
+        verify(rateLimitService).recordRequest(user);
+        assertEquals(1, meterRegistry.get("recommendations.stream.first").timer().count());
+    }
+
+    @Test
+    @DisplayName("si la generación falla envía un evento error y no guarda nada")
+    void sendsErrorEventOnFailure() throws Exception {
+        when(recommendationService.getRecentlyRejectedBooks(user, 30)).thenReturn(List.of());
+        when(chatGPTService.streamRecommendations(eq(user), eq(List.of()), any()))
+                .thenThrow(new RuntimeException("Error al generar recomendaciones: timeout"));
+
+        String body = stream();
+
+        assertTrue(body.contains("event:error"), body);
+        assertTrue(body.contains("Error al generar recomendaciones: timeout"), body);
+        verify(recommendationService, never()).saveGeneratedRecommendations(any(), any());
+        assertEquals(0, meterRegistry.get("recommendations.stream.first").timer().count());
+    }
+}
@@ -15,6 +15,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import com.nextread.dto.SurveyResponseDTO;
 import com.nextread.entities.Genre;
@@ -23,6 +24,7 @@ import com.nextread.entities.PaceSelection;
 import com.nextread.entities.Survey;
 import com.nextread.entities.User;
 import com.nextread.entities.UserBook;
+import com.nextread.events.PreferencesChangedEvent;
 import com.nextread.repositories.SurveyRepository;
 import com.nextread.repositories.UserBookRepository;
 
@@ -35,6 +37,8 @@ class SurveyServiceTest {
     private UserBookRepository userBookRepository;
     @Mock
     private GenreService genreService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private SurveyService surveyService;
@@ -127,6 +131,8 @@ class SurveyServiceTest {
             when(surveyRepository.save(any(Survey.class))).thenAnswer(inv -> inv.getArgument(0));
             SurveyResponseDTO dto = surveyService.updatePaceGenreSurvey(PaceSelection.SLOW, null, u);
             assertEquals(PaceSelection.SLOW, dto.getPace());
+            verify(eventPublisher).publishEvent(argThat((Object e) -> e instanceof PreferencesChangedEvent event
+                    && event.getUser() == u));
         }
 
         @Test
@@ -163,6 +169,36 @@ class SurveyServiceTest {
         }
     }
 
+    @Test
+    void hasCompletedSurvey_onlyAfterOnboarding() {
+        User u = newUser();
+        when(surveyRepository.findByUser(u)).thenReturn(Optional.of(sampleSurvey(true)),
+                Optional.of(sampleSurvey(false)), Optional.empty());
+        assertFalse(surveyService.hasCompletedSurvey(u));
+        assertTrue(surveyService.hasCompletedSurvey(u));
+        assertFalse(surveyService.hasCompletedSurvey(u));
+    }
+
+    @Nested
+    @DisplayName("findSurveyWithGenresByUser")
+    class FindWithGenresByUser {
+        @Test
+        void usesFetchJoinQuery() {
+            Survey s = sampleSurvey(false);
+            User u = newUser();
+            when(surveyRepository.findWithGenresByUser(u)).thenReturn(Optional.of(s));
+            assertEquals(s, surveyService.findSurveyWithGenresByUser(u));
+            verify(surveyRepository, never()).findByUser(any());
+        }
+
+        @Test
+        void surveyNotFoundThrows() {
+            User u = newUser();
+            when(surveyRepository.findWithGenresByUser(u)).thenReturn(Optional.empty());
+            assertThrows(RuntimeException.class, () -> surveyService.findSurveyWithGenresByUser(u));
+        }
+    }
+
     @Test
     void hasUserBooks_returnsBoolean() {
         User u = newUser();
@@ -17,11 +17,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import com.nextread.dto.UserBookDTO;
 import com.nextread.entities.Book;
 import com.nextread.entities.ReadingStatus;
 import com.nextread.entities.Survey;
+import com.nextread.events.PreferencesChangedEvent;
 import com.nextread.entities.User;
 import com.nextread.entities.UserBook;
 import com.nextread.repositories.UserBookRepository;
@@ -35,6 +37,8 @@ class UserBookServiceTest {
     private BookService bookService;
     @Mock
     private SurveyService surveyService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private UserBookService service;
@@ -96,6 +100,20 @@ class UserBookServiceTest {
         UserBookDTO dto = UserBookDTO.builder().rating(4.5f).build();
         UserBookDTO res = service.updateUserBook(1L, user, dto);
         assertEquals(4.5f, res.getRating());
+        verify(eventPublisher).publishEvent(any(PreferencesChangedEvent.class));
+    }
+
+    @Test
+    @DisplayName("updateUserBook does not schedule pre-generation when status and rating are unchanged")
+    void updateBookWithoutPreferenceChanges() {
+        UserBook ub = entity(1L);
+        when(userBookRepository.findByIdAndUser(1L, user)).thenReturn(Optional.of(ub));
+        when(userBookRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        UserBookDTO dto = UserBookDTO.builder().rating(ub.getRating()).status(ub.getStatus())
+                .startedAt(Instant.now()).build();
+        service.updateUserBook(1L, user, dto);
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Nested
@@ -0,0 +1,74 @@
+package com.nextread.utils.fingerprints;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.nextread.entities.Book;
+import com.nextread.entities.Genre;
+import com.nextread.entities.GenreSelection;
+import com.nextread.entities.PaceSelection;
+import com.nextread.entities.ReadingStatus;
+import com.nextread.entities.Survey;
+import com.nextread.entities.UserBook;
+
+class PreferenceFingerprintTest {
+
+    private Survey survey(PaceSelection pace, GenreSelection... genres) {
+        return Survey.builder()
+                .pace(pace)
+                .selectedGenres(Arrays.stream(genres)
+                        .map(genre -> {
+                            Genre selected = new Genre();
+                            selected.setSelectedGenre(genre);
+                            return selected;
+                        })
+                        .toList())
+                .build();
+    }
+
+    private UserBook userBook(String title, ReadingStatus status, Float rating) {
+        return UserBook.builder()
+                .book(Book.builder().title(title).build())
+                .status(status)
+                .rating(rating)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should not depend on the order of genres, books or rejections")
+    void shouldNotDependOnOrder() {
+        UserBook dune = userBook("Dune", ReadingStatus.READ, 4.5f);
+        UserBook hobbit = userBook("The Hobbit", ReadingStatus.ABANDONED, null);
+
+        String first = PreferenceFingerprint.of(survey(PaceSelection.FAST, GenreSelection.FANTASY,
+                GenreSelection.HORROR), List.of(dune, hobbit), List.of("1984", "Emma"));
+        String second = PreferenceFingerprint.of(survey(PaceSelection.FAST, GenreSelection.HORROR,
+                GenreSelection.FANTASY), List.of(hobbit, dune), List.of("  emma ", "1984"));
+
+        assertEquals(first, second);
+        assertEquals(64, first.length());
+    }
+
+    @Test
+    @DisplayName("Should change when any prompt input changes")
+    void shouldChangeWhenAnyInputChanges() {
+        Survey survey = survey(PaceSelection.FAST, GenreSelection.FANTASY);
+        List<UserBook> books = List.of(userBook("Dune", ReadingStatus.READ, 4.5f));
+        String base = PreferenceFingerprint.of(survey, books, List.of());
+
+        assertNotEquals(base, PreferenceFingerprint.of(survey(PaceSelection.SLOW, GenreSelection.FANTASY), books,
+                List.of()));
+        assertNotEquals(base, PreferenceFingerprint.of(survey(PaceSelection.FAST, GenreSelection.HORROR), books,
+                List.of()));
+        assertNotEquals(base, PreferenceFingerprint.of(survey,
+                List.of(userBook("Dune", ReadingStatus.READ, 3.0f)), List.of()));
+        assertNotEquals(base, PreferenceFingerprint.of(survey,
+                List.of(userBook("Dune", ReadingStatus.ABANDONED, 4.5f)), List.of()));
+        assertNotEquals(base, PreferenceFingerprint.of(survey, books, List.of("1984")));
+    }
+}
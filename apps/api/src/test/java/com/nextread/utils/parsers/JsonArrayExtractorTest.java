@@ -0,0 +1,49 @@
+package com.nextread.utils.parsers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JsonArrayExtractorTest {
+
+    @Test
+    @DisplayName("Should return a plain array unchanged")
+    void shouldReturnPlainArray() {
+        String json = "[{\"title\": \"A\"}, {\"title\": \"B\"}]";
+
+        assertEquals(json, JsonArrayExtractor.extract(json));
+    }
+
+    @Test
+    @DisplayName("Should extract the array from a structured output wrapper")
+    void shouldExtractArrayFromWrapperObject() {
+        String json = "{\"recommendations\": [{\"title\": \"A\", \"reason\": \"r\"}]}";
+
+        assertEquals("[{\"title\": \"A\", \"reason\": \"r\"}]", JsonArrayExtractor.extract(json));
+    }
+
+    @Test
+    @DisplayName("Should skip markdown fences and explanatory text")
+    void shouldSkipMarkdownAndProse() {
+        String response = "Aquí tienes \"tus\" libros:\n```json\n[{\"title\": \"A\"}]\n```\nEspero que te gusten [:)]";
+
+        assertEquals("[{\"title\": \"A\"}]", JsonArrayExtractor.extract(response));
+    }
+
+    @Test
+    @DisplayName("Should ignore brackets and escaped quotes inside strings")
+    void shouldIgnoreBracketsInsideStrings() {
+        String json = "[{\"reason\": \"un ] raro y \\\"citas\\\" con [\", \"tags\": [\"x\"]}]";
+
+        assertEquals(json, JsonArrayExtractor.extract(json + " fin"));
+    }
+
+    @Test
+    @DisplayName("Should return null when there is no complete array")
+    void shouldReturnNullWithoutCompleteArray() {
+        assertNull(JsonArrayExtractor.extract("invalid json"));
+        assertNull(JsonArrayExtractor.extract("[{\"title\": \"A\"}"));
+        assertNull(JsonArrayExtractor.extract(null));
+    }
+}
@@ -0,0 +1,65 @@
+package com.nextread.utils.parsers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JsonArrayStreamParserTest {
+
+    private List<String> objects;
+    private JsonArrayStreamParser parser;
+
+    @BeforeEach
+    void setUp() {
+        objects = new ArrayList<>();
+        parser = new JsonArrayStreamParser(objects::add);
+    }
+
+    @Test
+    @DisplayName("Should emit each object as soon as it closes")
+    void shouldEmitEachObjectAsSoonAsItCloses() {
+        parser.feed("[{\"title\": \"A\"");
+        assertTrue(objects.isEmpty());
+
+        parser.feed("}, {\"title\"");
+        assertEquals(List.of("{\"title\": \"A\"}"), objects);
+
+        parser.feed(": \"B\"}]");
+        assertEquals(List.of("{\"title\": \"A\"}", "{\"title\": \"B\"}"), objects);
+        assertTrue(parser.isFinished());
+    }
+
+    @Test
+    @DisplayName("Should ignore braces and escaped quotes inside strings")
+    void shouldIgnoreBracesAndEscapedQuotesInsideStrings() {
+        parser.feed("[{\"reason\": \"un } raro y \\\"citas\\\" con ]\", \"n\": {\"x\": [1]}}]");
+
+        assertEquals(List.of("{\"reason\": \"un } raro y \\\"citas\\\" con ]\", \"n\": {\"x\": [1]}}"), objects);
+    }
+
+    @Test
+    @DisplayName("Should ignore text before the array and after it closes")
+    void shouldIgnoreTextOutsideTheArray() {
+        parser.feed("```json\nAquí tienes {las} \"recomendaciones\": [{\"title\": \"A\"}]\n```");
+        parser.feed("[{\"title\": \"B\"}]");
+
+        assertEquals(List.of("{\"title\": \"A\"}"), objects);
+        assertTrue(parser.isFinished());
+    }
+
+    @Test
+    @DisplayName("Should handle input split one character at a time")
+    void shouldHandleInputSplitOneCharacterAtATime() {
+        String json = "[{\"title\": \"A\\\\\"}, {\"title\": \"B\"}]";
+        for (char c : json.toCharArray()) {
+            parser.feed(String.valueOf(c));
+        }
+
+        assertEquals(List.of("{\"title\": \"A\\\\\"}", "{\"title\": \"B\"}"), objects);
+    }
+}
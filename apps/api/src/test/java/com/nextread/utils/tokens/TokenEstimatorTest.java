@@ -0,0 +1,32 @@
+package com.nextread.utils.tokens;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TokenEstimatorTest {
+
+    @Test
+    @DisplayName("Should return zero for null or blank text")
+    void shouldReturnZeroForNullOrBlankText() {
+        assertEquals(0, TokenEstimator.estimate(null));
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(0, TokenEstimator.estimate("   \n"));
+    }
+
+    @Test
+    @DisplayName("Should count one token per four word characters and one per symbol")
+    void shouldCountWordsAndSymbols() {
+        // "El" = 1, "Hobbit" = 2, "(" = 1, "4.5" = 1 + 1 + 1, "/" = 1, "5" = 1, ")" = 1
+        assertEquals(10, TokenEstimator.estimate("El Hobbit (4.5/5)"));
+    }
+
+    @Test
+    @DisplayName("Should grow linearly with repeated text")
+    void shouldGrowLinearly() {
+        int once = TokenEstimator.estimate("- Dune (LEÍDO COMPLETAMENTE)\n");
+
+        assertEquals(once * 10, TokenEstimator.estimate("- Dune (LEÍDO COMPLETAMENTE)\n".repeat(10)));
+    }
+}